@@ -0,0 +1,18 @@
+#!/usr/bin/env bash
+# Runs the JMH benchmarks against a throwaway PostgreSQL cluster, so results don't depend on the state of a local database.
+# Needs initdb/pg_ctl of PostgreSQL with the contrib extensions (uuid-ossp, pgcrypto) on the PATH.
+# Extra arguments are passed on to JMH, e.g. "./run-benchmarks.sh QueryBenchmark -p mode=prepared".
+set -euo pipefail
+cd "$(dirname "$0")"
+
+PORT=${PORT:-54329}
+DATA_DIR=$(mktemp -d)
+
+initdb -D "$DATA_DIR" -U postgres --auth=trust >/dev/null
+pg_ctl -D "$DATA_DIR" -o "-p $PORT -k $DATA_DIR" -l "$DATA_DIR/server.log" -w start >/dev/null
+trap 'pg_ctl -D "$DATA_DIR" -m fast stop >/dev/null; rm -rf "$DATA_DIR"' EXIT
+createdb -h localhost -p "$PORT" -U postgres DatabaseTestDatabase
+
+mvn -B -q package
+java -jar target/benchmarks.jar -prof gc -rf json -rff results.json \
+    -jvmArgsAppend "-Devenue.url=jdbc:postgresql://localhost:$PORT/DatabaseTestDatabase" "$@"
@@ -0,0 +1,155 @@
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+// Workload of ActivityBenchmark: "heavy" users (default 16) that each already have a history of "history" attended
+// parties, stored either as user_activity rows ("model=edges", UserActivity) or like the former user_activity table as
+// one row per user with a UUID[] of parties and a GIN index on it ("model=arrays", in the table user_activity_arrays).
+// Every call runs one "operation": "append" records a new attendance of the next heavy user, "has-attended" checks a
+// random party of a user's history, "attended" reads a user's whole history.
+public class ActivityWorkload implements Callable<Object>, AutoCloseable
+{
+    private final Connection connection;
+    private final boolean arrays;
+    private final String operation;
+    private final List<String> emails = new ArrayList<>();
+    private final List<List<UUID>> histories = new ArrayList<>();
+    private final Random random = new Random(42);
+    private final UserActivity activity;
+    private final PreparedStatement append;
+    private final PreparedStatement contains;
+    private final PreparedStatement read;
+    private int next;
+
+    public ActivityWorkload(Map<String, String> options) throws SQLException
+    {
+        this.connection = DatabaseTest.connect(PartyRepository.driverProperties());
+        this.arrays = "arrays".equals(options.getOrDefault("model", "edges"));
+        this.operation = options.getOrDefault("operation", "append");
+        int heavyUsers = Integer.parseInt(options.getOrDefault("heavyUsers", "16"));
+        int history = Integer.parseInt(options.getOrDefault("history", "5000"));
+        BenchmarkData.ensureLoaded(connection, options);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS user_activity_arrays (email VARCHAR(255) PRIMARY KEY REFERENCES user_info(email), "
+                    + "parties_hosted UUID[] NOT NULL DEFAULT '{}', parties_attended UUID[] NOT NULL DEFAULT '{}')");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS user_activity_arrays_attended_idx ON user_activity_arrays USING gin (parties_attended)");
+            try (ResultSet rs = statement.executeQuery("SELECT email FROM user_info ORDER BY email LIMIT " + heavyUsers)) {
+                while (rs.next()) {
+                    emails.add(rs.getString(1));
+                }
+            }
+        }
+
+        // Every trial starts from the same histories
+        this.activity = new UserActivity(connection);
+        try (PreparedStatement deleteEdges = connection.prepareStatement("DELETE FROM user_activity WHERE email = ?");
+             PreparedStatement deleteArrays = connection.prepareStatement("DELETE FROM user_activity_arrays WHERE email = ?");
+             PreparedStatement insertArrays = connection.prepareStatement("INSERT INTO user_activity_arrays (email, parties_attended) VALUES (?, ?)")) {
+            for (String email : emails) {
+                List<UUID> parties = new ArrayList<>(history);
+                for (int i = 0; i < history; i++) {
+                    parties.add(new UUID(random.nextLong(), random.nextLong()));
+                }
+                histories.add(parties);
+                deleteEdges.setString(1, email);
+                deleteEdges.executeUpdate();
+                deleteArrays.setString(1, email);
+                deleteArrays.executeUpdate();
+                if (arrays) {
+                    Array ids = connection.createArrayOf("uuid", parties.toArray());
+                    insertArrays.setString(1, email);
+                    insertArrays.setArray(2, ids);
+                    insertArrays.executeUpdate();
+                    ids.free();
+                } else {
+                    activity.recordAttendances(email, parties);
+                }
+            }
+            statement(connection, "VACUUM ANALYZE user_activity");
+            statement(connection, "VACUUM ANALYZE user_activity_arrays");
+        }
+
+        // What appending and reading looked like with the array columns
+        this.append = connection.prepareStatement("UPDATE user_activity_arrays SET parties_attended = array_append(parties_attended, ?) "
+                + "WHERE email = ? AND NOT parties_attended @> ARRAY[?::uuid]");
+        this.contains = connection.prepareStatement("SELECT EXISTS (SELECT 1 FROM user_activity_arrays WHERE email = ? AND parties_attended @> ARRAY[?::uuid])");
+        this.read = connection.prepareStatement("SELECT parties_attended FROM user_activity_arrays WHERE email = ?");
+    }
+
+    @Override
+    public Object call() throws SQLException
+    {
+        int user = next++ % emails.size();
+        String email = emails.get(user);
+        return switch (operation) {
+            case "append" -> append(email, new UUID(random.nextLong(), random.nextLong()));
+            case "has-attended" -> {
+                List<UUID> history = histories.get(user);
+                yield hasAttended(email, history.get(random.nextInt(history.size())));
+            }
+            case "attended" -> attended(email);
+            default -> throw new IllegalArgumentException("Unknown operation " + operation);
+        };
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        activity.close();
+        append.close();
+        contains.close();
+        read.close();
+        connection.close();
+    }
+
+    private boolean append(String email, UUID partyId) throws SQLException
+    {
+        if (!arrays) {
+            return activity.recordAttendance(email, partyId);
+        }
+        append.setObject(1, partyId);
+        append.setString(2, email);
+        append.setObject(3, partyId);
+        return append.executeUpdate() == 1;
+    }
+
+    private boolean hasAttended(String email, UUID partyId) throws SQLException
+    {
+        if (!arrays) {
+            return activity.hasAttended(email, partyId);
+        }
+        contains.setString(1, email);
+        contains.setObject(2, partyId);
+        try (ResultSet rs = contains.executeQuery()) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    private int attended(String email) throws SQLException
+    {
+        if (!arrays) {
+            return activity.partiesAttended(email).size();
+        }
+        read.setString(1, email);
+        try (ResultSet rs = read.executeQuery()) {
+            return rs.next() ? ((Object[]) rs.getArray(1).getArray()).length : 0;
+        }
+    }
+
+    private static void statement(Connection connection, String sql) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// Workload of AggregateBenchmark: every call reads the top "k" parties by attendees ("board=parties", query 8)
+// or hosts by hosted parties ("board=hosts", query 10).
+// "mode=group-by" runs the original query, which aggregates the whole table, and reads its first k rows,
+// "mode=maintained" reads the top k from the counters of AttendanceAggregates.
+public class AggregateWorkload implements Callable<Object>, AutoCloseable
+{
+    private final Connection connection;
+    private final boolean maintained;
+    private final boolean parties;
+    private final int k;
+    private final PreparedStatement groupBy;
+
+    public AggregateWorkload(Map<String, String> options) throws SQLException
+    {
+        this.connection = DatabaseTest.connect(PartyRepository.driverProperties());
+        this.maintained = "maintained".equals(options.getOrDefault("mode", "maintained"));
+        this.parties = "parties".equals(options.getOrDefault("board", "parties"));
+        this.k = Integer.parseInt(options.getOrDefault("k", "10"));
+        BenchmarkData.ensureLoaded(connection, options);
+        AttendanceAggregates.install(connection);
+        // Query 10 has no ORDER BY, it needs one to have a top k
+        this.groupBy = connection.prepareStatement(parties ? EvenueQuery.ATTENDEE_COUNTS.sql
+                : EvenueQuery.HOST_COUNTS.sql + " ORDER BY 2 DESC");
+    }
+
+    @Override
+    public Object call() throws SQLException
+    {
+        if (maintained) {
+            return parties ? AttendanceAggregates.topParties(connection, k) : AttendanceAggregates.topHosts(connection, k);
+        }
+        long checksum = 0;
+        try (ResultSet rs = groupBy.executeQuery()) {
+            for (int i = 0; i < k && rs.next(); i++) {
+                checksum += rs.getLong(parties ? 3 : 2);
+            }
+        }
+        return checksum;
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        groupBy.close();
+        connection.close();
+    }
+}
@@ -0,0 +1,47 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// Workload of LoadBenchmark: every call loads the generated data set into the tables emptied by run().
+// Options are those of LoadComparison, with a single "loader" instead of "modes".
+public class LoadWorkload implements Callable<Object>, Runnable, AutoCloseable
+{
+    private final Map<String, String> options;
+    private final Connection connection;
+    private final DataGenerator generator;
+
+    public LoadWorkload(Map<String, String> options) throws SQLException
+    {
+        this.options = new HashMap<>(options);
+        String loader = options.getOrDefault("loader", "insert");
+        this.options.put("loader", loader.startsWith("batch") ? "batch" : loader);
+        if (loader.equals("batch-rewrite")) {
+            this.options.put("pg.reWriteBatchedInserts", "true");
+        }
+        this.connection = DatabaseTest.connect(DatabaseTest.driverProperties(this.options));
+        this.generator = new DataGenerator(DataGenerator.Config.from(this.options));
+        DatabaseTest.structureDatabase(connection);
+    }
+
+    @Override
+    public void run()
+    {
+        DatabaseTest.truncateTables(connection);
+    }
+
+    @Override
+    public Object call() throws SQLException
+    {
+        LoadStats stats = new LoadStats(options.get("loader"));
+        generator.generate(DatabaseTest.createLoader(connection, options, stats));
+        return stats.totalRows();
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        connection.close();
+    }
+}
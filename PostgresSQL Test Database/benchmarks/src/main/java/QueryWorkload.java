@@ -0,0 +1,82 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+// Workload of QueryBenchmark: every call runs one EvenueQuery with random sampled parameters and reads all rows.
+// "mode=statement" inlines the values as SQL literals and sends a plain Statement, so the server parses and plans every call.
+// "mode=prepared" binds them to the cached server-side prepared statement of PartyRepository.
+public class QueryWorkload implements Callable<Object>, AutoCloseable
+{
+    private final Connection connection;
+    private final EvenueQuery query;
+    private final boolean prepared;
+    private final PartyRepository repository;
+    private final QueryParameters parameters;
+    private final Random random = new Random(42);
+
+    public QueryWorkload(Map<String, String> options) throws SQLException
+    {
+        this.connection = DatabaseTest.connect(PartyRepository.driverProperties());
+        this.query = EvenueQuery.byNumber(Integer.parseInt(options.getOrDefault("query", "1")));
+        this.prepared = "prepared".equals(options.getOrDefault("mode", "prepared"));
+        this.repository = new PartyRepository(connection);
+        BenchmarkData.ensureLoaded(connection, options);
+        this.parameters = QueryParameters.load(connection, 1000);
+    }
+
+    @Override
+    public Object call() throws SQLException
+    {
+        Object[] values = parameters.values(query, random);
+        if (prepared) {
+            PreparedStatement statement = repository.statement(query);
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                return count(rs);
+            }
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(inline(query.sql, values))) {
+            return count(rs);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        repository.close();
+        connection.close();
+    }
+
+    private static long count(ResultSet rs) throws SQLException
+    {
+        long rows = 0;
+        while (rs.next()) {
+            rows++;
+        }
+        return rows;
+    }
+
+    // Replaces the ? placeholders with quoted literals, the query texts contain no other question marks
+    private static String inline(String sql, Object[] values)
+    {
+        StringBuilder sb = new StringBuilder(sql.length() + 64);
+        int value = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '?') {
+                sb.append('\'').append(values[value++].toString().replace("'", "''")).append('\'');
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,91 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// Workload of ResultMappingBenchmark: every call reads the first "rows" attendees joined with their party and user.
+// "mode=legacy" maps them with the resultToList() that DatabaseTest used before ResultStreamer,
+// "mode=streaming" formats the same tab separated lines through a ResultStreamer cursor without keeping them.
+public class ResultMappingWorkload implements Callable<Object>, AutoCloseable
+{
+    private static final String SQL = "SELECT pa.party_id, pa.attendee_email, pa.attendee_status, u.first_name, u.last_name, u.age, p.title, p.attendance_fee "
+            + "FROM party_attendees pa JOIN user_info u ON u.email = pa.attendee_email JOIN party_info p ON p.party_id = pa.party_id "
+            + "LIMIT ";
+
+    private final Connection connection;
+    private final boolean streaming;
+    private final String sql;
+
+    public ResultMappingWorkload(Map<String, String> options) throws SQLException
+    {
+        this.connection = DatabaseTest.connect(PartyRepository.driverProperties());
+        this.streaming = "streaming".equals(options.getOrDefault("mode", "streaming"));
+        this.sql = SQL + Integer.parseInt(options.getOrDefault("rows", "1000"));
+        BenchmarkData.ensureLoaded(connection, options);
+    }
+
+    @Override
+    public Object call() throws SQLException
+    {
+        if (streaming) {
+            StringBuilder sb = new StringBuilder();
+            long[] length = new long[1];
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                ResultStreamer.forEach(connection, statement, 1000, row -> {
+                    sb.setLength(0);
+                    for (int i = 1; i <= row.columnCount(); i++) {
+                        sb.append(row.getObject(i)).append('\t');
+                    }
+                    sb.setLength(sb.length() - 1);
+                    length[0] += sb.length();
+                });
+            }
+            return length[0];
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            return resultToList(rs);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        connection.close();
+    }
+
+    // Verbatim copy of the former DatabaseTest.resultToList(), the baseline of the comparison
+    private static List<String> resultToList(ResultSet rs)
+    {
+        List<String> sl = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        try
+        {
+            while (rs.next())
+            {
+                sb.setLength(0);
+                for (int I = 1; true; I++)
+                    try
+                    {
+                        sb.append(rs.getObject(I)).append('\t');
+                    }
+                    catch (Exception ignored)
+                    {
+                        sb.deleteCharAt(sb.length() - 1);
+                        break;
+                    }
+                sl.add(sb.toString());
+            }
+        }
+        catch (SQLException E)
+        {
+            System.out.println("Exception: " + E.getMessage());
+        }
+        return sl;
+    }
+}
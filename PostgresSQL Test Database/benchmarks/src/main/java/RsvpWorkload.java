@@ -0,0 +1,115 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Workload of RsvpBenchmark: many clients join and leave one hot party with "capacity" guests, over a pool of "poolSize"
+// connections. Each call picks one of 2 * capacity users, so about half of the calls find the user already in the party,
+// who then leaves again and frees a place. Returns "JOINED", "FULL" or "LEFT".
+// "mode=slots" uses RsvpService, "mode=row-lock" counts the attendees while holding a lock on the party_info row.
+public class RsvpWorkload implements Callable<Object>, AutoCloseable
+{
+    private final ConnectionPool pool;
+    private final boolean slots;
+    private final RsvpService service;
+    private final List<String> emails = new ArrayList<>();
+    private final UUID party;
+
+    public RsvpWorkload(Map<String, String> options) throws SQLException
+    {
+        int capacity = Integer.parseInt(options.getOrDefault("capacity", "500"));
+        this.pool = new ConnectionPool(Integer.parseInt(options.getOrDefault("poolSize", "64")), PartyRepository.driverProperties(), 60_000);
+        this.slots = "slots".equals(options.getOrDefault("mode", "slots"));
+        this.service = new RsvpService(pool);
+        try (Connection connection = pool.borrow(); Statement statement = connection.createStatement()) {
+            BenchmarkData.ensureLoaded(connection, options);
+            RsvpService.install(connection);
+            try (ResultSet rs = statement.executeQuery("SELECT email FROM user_info ORDER BY email LIMIT " + (2 * capacity + 1))) {
+                while (rs.next()) {
+                    emails.add(rs.getString(1));
+                }
+            }
+            // A new party per trial, so every trial starts empty
+            this.party = RsvpService.createParty(connection, emails.remove(0), capacity);
+        } catch (SQLException e) {
+            pool.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public Object call() throws SQLException
+    {
+        String email = emails.get(ThreadLocalRandom.current().nextInt(emails.size()));
+        if (slots) {
+            RsvpService.Result result = service.join(party, email);
+            if (result == RsvpService.Result.ALREADY_JOINED) {
+                service.decline(party, email);
+                return "LEFT";
+            }
+            return result.name();
+        }
+        try (Connection connection = pool.borrow()) {
+            return joinWithRowLock(connection, email);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        pool.close();
+    }
+
+    private String joinWithRowLock(Connection connection, String email) throws SQLException
+    {
+        connection.setAutoCommit(false);
+        int maxGuests;
+        try (PreparedStatement lock = connection.prepareStatement("SELECT max_guests FROM party_info WHERE party_id = ? FOR UPDATE")) {
+            lock.setObject(1, party);
+            try (ResultSet rs = lock.executeQuery()) {
+                rs.next();
+                maxGuests = rs.getInt(1);
+            }
+        }
+        long attendees;
+        boolean member;
+        try (PreparedStatement count = connection.prepareStatement("SELECT count(*), coalesce(bool_or(attendee_email = ?), false) "
+                + "FROM party_attendees WHERE party_id = ? AND attendee_status <> 'declined'")) {
+            count.setString(1, email);
+            count.setObject(2, party);
+            try (ResultSet rs = count.executeQuery()) {
+                rs.next();
+                attendees = rs.getLong(1);
+                member = rs.getBoolean(2);
+            }
+        }
+        String result;
+        if (member) {
+            try (PreparedStatement leave = connection.prepareStatement("DELETE FROM party_attendees WHERE party_id = ? AND attendee_email = ?")) {
+                leave.setObject(1, party);
+                leave.setString(2, email);
+                leave.executeUpdate();
+            }
+            result = "LEFT";
+        } else if (attendees >= maxGuests) {
+            result = "FULL";
+        } else {
+            try (PreparedStatement join = connection.prepareStatement("INSERT INTO party_attendees (party_id, attendee_email, attendee_status) "
+                    + "VALUES (?, ?, 'attending')")) {
+                join.setObject(1, party);
+                join.setString(2, email);
+                join.executeUpdate();
+            }
+            result = "JOINED";
+        }
+        connection.commit();
+        return result;
+    }
+}
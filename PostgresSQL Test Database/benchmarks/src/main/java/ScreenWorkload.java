@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Workload of ScreenBenchmark: every call loads the ProfileScreen of a random user with a ScreenExecutor in "mode"
+// (sequential, pipelined or parallel), over "poolSize" connections that go through a DelayProxy with "rttMillis"
+// of round trip time (0 connects directly).
+public class ScreenWorkload implements Callable<Object>, AutoCloseable
+{
+    private final DelayProxy proxy;
+    private final ConnectionPool pool;
+    private final ExecutorService executor = ClientExecutors.newClientExecutor();
+    private final ScreenExecutor screenExecutor;
+    private final List<String> emails;
+
+    public ScreenWorkload(Map<String, String> options) throws SQLException, IOException
+    {
+        long rttMillis = Long.parseLong(options.getOrDefault("rttMillis", "5"));
+        int poolSize = Integer.parseInt(options.getOrDefault("poolSize", "8"));
+        this.proxy = rttMillis == 0 ? null : new DelayProxy(DelayProxy.databaseAddress(), Duration.ofMillis(rttMillis));
+        try {
+            this.pool = new ConnectionPool(poolSize, proxy == null ? PartyRepository.driverProperties()
+                    : proxy.route(PartyRepository.driverProperties()), 60_000);
+            try (Connection connection = pool.borrow()) {
+                BenchmarkData.ensureLoaded(connection, options);
+            }
+            this.emails = ProfileScreen.sampleEmails(pool, 1000);
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+        this.screenExecutor = new ScreenExecutor(pool, ScreenExecutor.Mode.valueOf(options.getOrDefault("mode", "pipelined").toUpperCase()), executor);
+    }
+
+    @Override
+    public Object call() throws SQLException
+    {
+        return ProfileScreen.load(screenExecutor, emails.get(ThreadLocalRandom.current().nextInt(emails.size())));
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdown();
+        if (pool != null) {
+            pool.close();
+        }
+        if (proxy != null) {
+            proxy.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package evenue.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+// Appends to and lookups in the history of users with thousands of attended parties, for user_activity edge rows
+// against the former UUID[] columns with a GIN index. Reports throughput and the latency distribution of every operation.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ActivityBenchmark
+{
+    @Param({"edges", "arrays"})
+    public String model;
+
+    @Param({"append", "has-attended", "attended"})
+    public String operation;
+
+    @Param({"1000", "10000"})
+    public String history;
+
+    @Param({"20000"})
+    public String users;
+
+    @Param({"4000"})
+    public String parties;
+
+    private Callable<Object> workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        workload = Workloads.create("ActivityWorkload", Map.of("model", model, "operation", operation, "history", history,
+                "users", users, "parties", parties));
+    }
+
+    @Benchmark
+    public Object run() throws Exception
+    {
+        return workload.call();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        Workloads.close(workload);
+    }
+}
@@ -0,0 +1,65 @@
+package evenue.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+// Top k leaderboards of query 8 (parties by attendees) and query 10 (hosts by parties) computed with the original
+// GROUP BY over all rows against reading the counters that AttendanceAggregates maintains with triggers.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AggregateBenchmark
+{
+    @Param({"group-by", "maintained"})
+    public String mode;
+
+    @Param({"parties", "hosts"})
+    public String board;
+
+    @Param({"10", "100"})
+    public String k;
+
+    @Param({"20000"})
+    public String users;
+
+    @Param({"4000"})
+    public String parties;
+
+    private Callable<Object> workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        workload = Workloads.create("AggregateWorkload", Map.of("mode", mode, "board", board, "k", k, "users", users, "parties", parties));
+    }
+
+    @Benchmark
+    public Object read() throws Exception
+    {
+        return workload.call();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        Workloads.close(workload);
+    }
+}
@@ -0,0 +1,68 @@
+package evenue.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+// Loads one generated data set per operation into truncated tables: per-row executeUpdate (the insertData() path)
+// against JDBC batches, batches rewritten to multi-row INSERTs and COPY in text and binary format.
+// Users share a few cheap password hashes, which the generator computes once per trial,
+// so the operations measure the loaders instead of bcrypt.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class LoadBenchmark
+{
+    @Param({"insert", "batch", "batch-rewrite", "copy", "copy-binary"})
+    public String loader;
+
+    @Param({"2000"})
+    public String users;
+
+    @Param({"200"})
+    public String parties;
+
+    private Callable<Object> workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        workload = Workloads.create("LoadWorkload", Map.of("loader", loader, "users", users, "parties", parties,
+                "distinctPasswords", "16", "passwordCost", "4"));
+    }
+
+    @Setup(Level.Invocation)
+    public void truncate()
+    {
+        Workloads.reset(workload);
+    }
+
+    @Benchmark
+    public Object load() throws Exception
+    {
+        return workload.call();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        Workloads.close(workload);
+    }
+}
@@ -0,0 +1,63 @@
+package evenue.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+// Runs the queryDatabase() queries with random parameters, either with the values concatenated into the SQL
+// and sent through a Statement (how queryDatabase() did it) or bound to the cached PreparedStatements of PartyRepository.
+// The data set is generated once if the database is empty.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryBenchmark
+{
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9", "10"})
+    public String query;
+
+    @Param({"statement", "prepared"})
+    public String mode;
+
+    @Param({"20000"})
+    public String users;
+
+    @Param({"4000"})
+    public String parties;
+
+    private Callable<Object> workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        workload = Workloads.create("QueryWorkload", Map.of("query", query, "mode", mode, "users", users, "parties", parties));
+    }
+
+    @Benchmark
+    public Object run() throws Exception
+    {
+        return workload.call();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        Workloads.close(workload);
+    }
+}
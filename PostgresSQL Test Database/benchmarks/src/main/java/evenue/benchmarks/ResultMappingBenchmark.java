@@ -0,0 +1,63 @@
+package evenue.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+// Reads the same result of "rows" attendee rows either with the original resultToList(), which probes the column count
+// with one exception per row and keeps every row as a String, or with the ResultStreamer cursor.
+// Run with -prof gc to compare the allocation rates.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ResultMappingBenchmark
+{
+    @Param({"legacy", "streaming"})
+    public String mode;
+
+    @Param({"1000", "100000"})
+    public String rows;
+
+    @Param({"20000"})
+    public String users;
+
+    @Param({"4000"})
+    public String parties;
+
+    private Callable<Object> workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        workload = Workloads.create("ResultMappingWorkload", Map.of("mode", mode, "rows", rows, "users", users, "parties", parties));
+    }
+
+    @Benchmark
+    public Object read() throws Exception
+    {
+        return workload.call();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        Workloads.close(workload);
+    }
+}
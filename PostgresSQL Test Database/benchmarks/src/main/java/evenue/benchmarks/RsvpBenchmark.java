@@ -0,0 +1,101 @@
+package evenue.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+// 1000 concurrent clients joining and leaving one hot party: claiming pre-created slots with SKIP LOCKED (RsvpService)
+// against counting the attendees under a lock on the party row. "join" reports the accepted joins, full parties and
+// leaves per second as secondary results, "joinLatency" the latency distribution of the same calls.
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Threads(1000)
+@Fork(1)
+public class RsvpBenchmark
+{
+    @Param({"slots", "row-lock"})
+    public String mode;
+
+    @Param({"500"})
+    public String capacity;
+
+    @Param({"64"})
+    public String poolSize;
+
+    @Param({"20000"})
+    public String users;
+
+    @Param({"4000"})
+    public String parties;
+
+    private Callable<Object> workload;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Outcomes
+    {
+        public long joined;
+        public long full;
+        public long left;
+
+        @Setup(Level.Iteration)
+        public void clear()
+        {
+            joined = 0;
+            full = 0;
+            left = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        workload = Workloads.create("RsvpWorkload", Map.of("mode", mode, "capacity", capacity, "poolSize", poolSize,
+                "users", users, "parties", parties));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public Object join(Outcomes outcomes) throws Exception
+    {
+        Object result = workload.call();
+        switch (result.toString()) {
+            case "JOINED" -> outcomes.joined++;
+            case "FULL" -> outcomes.full++;
+            default -> outcomes.left++;
+        }
+        return result;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object joinLatency() throws Exception
+    {
+        return workload.call();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        Workloads.close(workload);
+    }
+}
@@ -0,0 +1,35 @@
+package evenue.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// JMH only accepts benchmark classes in a named package, but the test database sources live in the default package,
+// which code in a named package cannot refer to. Every benchmark therefore delegates to a workload class in the default
+// package of this module, created here by name. A workload implements Callable for the measured operation and optionally
+// Runnable for the reset before each invocation and AutoCloseable for the teardown. Its constructor takes the options map.
+final class Workloads
+{
+    private Workloads()
+    {
+    }
+
+    @SuppressWarnings("unchecked")
+    static Callable<Object> create(String className, Map<String, String> options) throws Exception
+    {
+        return (Callable<Object>) Class.forName(className).getConstructor(Map.class).newInstance(options);
+    }
+
+    static void reset(Callable<Object> workload)
+    {
+        if (workload instanceof Runnable runnable) {
+            runnable.run();
+        }
+    }
+
+    static void close(Callable<Object> workload) throws Exception
+    {
+        if (workload instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Incrementally maintained versions of query 8 (attendees per party) and query 10 (parties hosted per user).
+// party_attendee_counts holds the attendees of every party split by ATTENDEE_STATUS, host_party_counts the number of
+// parties of every host. Statement level triggers with transition tables keep them current: per INSERT, UPDATE, DELETE
+// or COPY the changed rows are grouped into one delta per party or host, so bulk loads cost one extra statement, not one per row.
+// Host deltas are added with a single upsert, sorted by key so concurrent writers lock the counter rows in the same order.
+// Attendee deltas are only appended to party_attendee_count_deltas: an upsert would lock the counter row of the party
+// until commit, and concurrent joins of a popular party would queue behind it, which is exactly what the party_slots of
+// RsvpService avoid. fold() moves the pending deltas into the counters, topParties() folds before reading, so readers
+// take the row locks instead of the joins. A TRUNCATE of the source table empties the counters.
+// The leaderboards read the top k from an index on the count, so they touch k rows instead of aggregating everything.
+// Arguments of main(): "action=install" (default, creates tables and triggers and fills them), "refresh" (recomputes
+// everything) or "check" (compares the counters with a fresh GROUP BY and prints the differences), "top" (default 10).
+public class AttendanceAggregates
+{
+    public record PartyCount(UUID partyId, String title, int accepted, int attending, int declined, int total)
+    {
+    }
+
+    public record HostCount(String email, int parties)
+    {
+    }
+
+    // Counts per key of a set of rows, formatted with the transition table (or source table) and the sign.
+    // The upserts add up the deltas, formatted with the delta query. They skip keys that were deleted in the meantime
+    // (e.g. parties of a user deleted with ON DELETE CASCADE), whose counter rows are already gone with them.
+    private static final String ATTENDEE_DELTAS = """
+            SELECT party_id,
+                   %2$s * count(*) FILTER (WHERE attendee_status = 'accepted') AS accepted,
+                   %2$s * count(*) FILTER (WHERE attendee_status = 'attending') AS attending,
+                   %2$s * count(*) FILTER (WHERE attendee_status = 'declined') AS declined,
+                   %2$s * count(*) AS total
+            FROM %1$s GROUP BY party_id""";
+    private static final String ATTENDEE_UPSERT = """
+            INSERT INTO party_attendee_counts AS c (party_id, accepted, attending, declined, total)
+            SELECT party_id, sum(accepted), sum(attending), sum(declined), sum(total) FROM (%s) deltas
+            WHERE party_id IN (SELECT party_id FROM party_info)
+            GROUP BY party_id ORDER BY party_id
+            ON CONFLICT (party_id) DO UPDATE SET accepted = c.accepted + EXCLUDED.accepted, attending = c.attending + EXCLUDED.attending,
+                declined = c.declined + EXCLUDED.declined, total = c.total + EXCLUDED.total""";
+    // Appends the deltas of one statement, formatted with the delta query, without touching the counter rows
+    private static final String ATTENDEE_LOG = """
+            INSERT INTO party_attendee_count_deltas (party_id, accepted, attending, declined, total)
+            SELECT party_id, sum(accepted), sum(attending), sum(declined), sum(total) FROM (%s) deltas GROUP BY party_id""";
+    // Deletes the committed deltas and adds them to the counters in one statement. Deltas of uncommitted transactions
+    // are not visible yet and stay for the next fold, deltas another fold is moving at the same time are skipped.
+    private static final String ATTENDEE_FOLD = "WITH moved AS (DELETE FROM party_attendee_count_deltas "
+            + "RETURNING party_id, accepted, attending, declined, total) "
+            + ATTENDEE_UPSERT.formatted("SELECT * FROM moved");
+    private static final String HOST_DELTAS = "SELECT host, %2$s * count(*) AS parties FROM %1$s GROUP BY host";
+    private static final String HOST_UPSERT = """
+            INSERT INTO host_party_counts AS c (host, parties)
+            SELECT host, sum(parties) FROM (%s) deltas
+            WHERE host IN (SELECT email FROM user_info)
+            GROUP BY host ORDER BY host
+            ON CONFLICT (host) DO UPDATE SET parties = c.parties + EXCLUDED.parties""";
+
+    // Creates the counter tables and triggers if they don't exist yet and fills the counters.
+    public static void install(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("""
+                    CREATE TABLE IF NOT EXISTS party_attendee_counts
+                    (party_id UUID PRIMARY KEY REFERENCES party_info(party_id) ON DELETE CASCADE,
+                    accepted INTEGER NOT NULL DEFAULT 0,
+                    attending INTEGER NOT NULL DEFAULT 0,
+                    declined INTEGER NOT NULL DEFAULT 0,
+                    total INTEGER NOT NULL DEFAULT 0)
+                    """);
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS party_attendee_counts_total_idx ON party_attendee_counts (total DESC, party_id)");
+            // No key and no foreign key, so appending never waits for another writer
+            statement.executeUpdate("""
+                    CREATE TABLE IF NOT EXISTS party_attendee_count_deltas
+                    (party_id UUID NOT NULL,
+                    accepted INTEGER NOT NULL,
+                    attending INTEGER NOT NULL,
+                    declined INTEGER NOT NULL,
+                    total INTEGER NOT NULL)
+                    """);
+            statement.executeUpdate("""
+                    CREATE TABLE IF NOT EXISTS host_party_counts
+                    (host VARCHAR(255) PRIMARY KEY REFERENCES user_info(email) ON DELETE CASCADE,
+                    parties INTEGER NOT NULL DEFAULT 0)
+                    """);
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS host_party_counts_parties_idx ON host_party_counts (parties DESC, host)");
+
+            statement.executeUpdate(maintainFunction("party_attendee_counts_maintain",
+                    "DELETE FROM party_attendee_counts; DELETE FROM party_attendee_count_deltas", ATTENDEE_LOG, ATTENDEE_DELTAS));
+            statement.executeUpdate(maintainFunction("host_party_counts_maintain", "DELETE FROM host_party_counts", HOST_UPSERT, HOST_DELTAS));
+            createTriggers(statement, "party_attendees", "party_attendee_counts_maintain");
+            createTriggers(statement, "party_info", "host_party_counts_maintain");
+        }
+        refresh(connection);
+    }
+
+    // Recomputes all counters from scratch. Writers to the source tables wait until it is done.
+    public static void refresh(Connection connection) throws SQLException
+    {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("LOCK TABLE party_attendees, party_info IN SHARE MODE");
+            statement.executeUpdate("DELETE FROM party_attendee_counts");
+            statement.executeUpdate("DELETE FROM party_attendee_count_deltas");
+            statement.executeUpdate("INSERT INTO party_attendee_counts (party_id, accepted, attending, declined, total) "
+                    + ATTENDEE_DELTAS.formatted("party_attendees", 1));
+            statement.executeUpdate("DELETE FROM host_party_counts");
+            statement.executeUpdate("INSERT INTO host_party_counts (host, parties) " + HOST_DELTAS.formatted("party_info", 1));
+            statement.executeUpdate("ANALYZE party_attendee_counts, host_party_counts");
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Adds the pending attendee deltas to the counters and returns the number of deltas moved.
+    public static int fold(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            return statement.executeUpdate(ATTENDEE_FOLD);
+        }
+    }
+
+    // Compares the counters (plus the pending deltas) with a GROUP BY over the source tables in one snapshot and returns
+    // the differing rows, described as "<key>: counters ... != actual ...". An empty list means the counters are consistent.
+    public static List<String> check(Connection connection) throws SQLException
+    {
+        List<String> differences = new ArrayList<>();
+        boolean autoCommit = connection.getAutoCommit();
+        int isolation = connection.getTransactionIsolation();
+        connection.setAutoCommit(false);
+        connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+        try (Statement statement = connection.createStatement()) {
+            String actualAttendees = ATTENDEE_DELTAS.formatted("party_attendees", 1);
+            try (ResultSet rs = statement.executeQuery("""
+                    SELECT coalesce(c.party_id, a.party_id)::text, c.accepted, c.attending, c.declined, c.total,
+                           a.accepted, a.attending, a.declined, a.total
+                    FROM (SELECT party_id, sum(accepted) AS accepted, sum(attending) AS attending, sum(declined) AS declined, sum(total) AS total
+                          FROM (SELECT party_id, accepted, attending, declined, total FROM party_attendee_counts
+                                UNION ALL
+                                SELECT party_id, accepted, attending, declined, total FROM party_attendee_count_deltas
+                                WHERE party_id IN (SELECT party_id FROM party_info)) counted
+                          GROUP BY party_id
+                          HAVING sum(total) <> 0 OR sum(accepted) <> 0 OR sum(attending) <> 0 OR sum(declined) <> 0) c
+                    FULL JOIN (%s) a ON a.party_id = c.party_id
+                    WHERE (c.accepted, c.attending, c.declined, c.total) IS DISTINCT FROM (a.accepted, a.attending, a.declined, a.total)
+                    """.formatted(actualAttendees))) {
+                while (rs.next()) {
+                    differences.add(String.format("party %s: counters %s/%s/%s/%s != actual %s/%s/%s/%s (accepted/attending/declined/total)",
+                            rs.getString(1), rs.getObject(2), rs.getObject(3), rs.getObject(4), rs.getObject(5),
+                            rs.getObject(6), rs.getObject(7), rs.getObject(8), rs.getObject(9)));
+                }
+            }
+            try (ResultSet rs = statement.executeQuery("""
+                    SELECT coalesce(c.host, a.host), c.parties, a.parties
+                    FROM (SELECT * FROM host_party_counts WHERE parties <> 0) c
+                    FULL JOIN (%s) a ON a.host = c.host
+                    WHERE c.parties IS DISTINCT FROM a.parties
+                    """.formatted(HOST_DELTAS.formatted("party_info", 1)))) {
+                while (rs.next()) {
+                    differences.add(String.format("host %s: counter %s != actual %s", rs.getString(1), rs.getObject(2), rs.getObject(3)));
+                }
+            }
+        } finally {
+            // Only read, nothing to commit
+            connection.rollback();
+            connection.setTransactionIsolation(isolation);
+            connection.setAutoCommit(autoCommit);
+        }
+        return differences;
+    }
+
+    // The k parties with the most attendees, like query 8 but without aggregating party_attendees.
+    // Folds the pending deltas first, so the result includes every committed change.
+    public static List<PartyCount> topParties(Connection connection, int k) throws SQLException
+    {
+        fold(connection);
+        List<PartyCount> parties = new ArrayList<>(k);
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT c.party_id, p.title, c.accepted, c.attending, c.declined, c.total
+                FROM party_attendee_counts c JOIN party_info p ON p.party_id = c.party_id
+                WHERE c.total > 0 ORDER BY c.total DESC, c.party_id LIMIT ?""")) {
+            statement.setInt(1, k);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    parties.add(new PartyCount(rs.getObject(1, UUID.class), rs.getString(2), rs.getInt(3), rs.getInt(4), rs.getInt(5), rs.getInt(6)));
+                }
+            }
+        }
+        return parties;
+    }
+
+    // The k users hosting the most parties, like query 10 but without the self join.
+    public static List<HostCount> topHosts(Connection connection, int k) throws SQLException
+    {
+        List<HostCount> hosts = new ArrayList<>(k);
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT host, parties FROM host_party_counts WHERE parties > 0 ORDER BY parties DESC, host LIMIT ?")) {
+            statement.setInt(1, k);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    hosts.add(new HostCount(rs.getString(1), rs.getInt(2)));
+                }
+            }
+        }
+        return hosts;
+    }
+
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        String action = options.getOrDefault("action", "install");
+        int top = Integer.parseInt(options.getOrDefault("top", "10"));
+
+        try (Connection connection = DatabaseTest.connect(DatabaseTest.driverProperties(options))) {
+            long start = System.nanoTime();
+            switch (action) {
+                case "install" -> install(connection);
+                case "refresh" -> refresh(connection);
+                case "check" -> {
+                    List<String> differences = check(connection);
+                    differences.forEach(System.out::println);
+                    System.out.println(differences.isEmpty() ? "Counters are consistent" : differences.size() + " counters differ, run action=refresh");
+                }
+                default -> throw new IllegalArgumentException("Unknown action " + action + ", expected install, refresh or check");
+            }
+            System.out.println(action + " took " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+            System.out.println("Top parties:");
+            for (PartyCount party : topParties(connection, top)) {
+                System.out.println(party.partyId() + "\t" + party.title() + "\t" + party.total());
+            }
+            System.out.println("Top hosts:");
+            for (HostCount host : topHosts(connection, top)) {
+                System.out.println(host.email() + "\t" + host.parties());
+            }
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+
+    // One trigger function per counter table, handling INSERT (new rows count +1), DELETE (old rows -1),
+    // UPDATE (both) and TRUNCATE (runs the given statements).
+    private static String maintainFunction(String name, String truncate, String upsert, String deltas)
+    {
+        return """
+                CREATE OR REPLACE FUNCTION %1$s() RETURNS trigger LANGUAGE plpgsql AS $$
+                BEGIN
+                    IF TG_OP = 'INSERT' THEN
+                        %2$s;
+                    ELSIF TG_OP = 'DELETE' THEN
+                        %3$s;
+                    ELSIF TG_OP = 'UPDATE' THEN
+                        %4$s;
+                    ELSE
+                        DELETE FROM %5$s;
+                    END IF;
+                    RETURN NULL;
+                END
+                $$""".formatted(name,
+                upsert.formatted(deltas.formatted("new_rows", 1)),
+                upsert.formatted(deltas.formatted("old_rows", -1)),
+                upsert.formatted(deltas.formatted("new_rows", 1) + " UNION ALL " + deltas.formatted("old_rows", -1)),
+                truncate);
+    }
+
+    // Transition tables are only allowed on triggers for a single event, so there is one trigger per event.
+    private static void createTriggers(Statement statement, String table, String function) throws SQLException
+    {
+        String[][] triggers = {
+                {"insert", "INSERT", "REFERENCING NEW TABLE AS new_rows"},
+                {"delete", "DELETE", "REFERENCING OLD TABLE AS old_rows"},
+                {"update", "UPDATE", "REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows"},
+                {"truncate", "TRUNCATE", ""}};
+        for (String[] trigger : triggers) {
+            String name = function + "_" + trigger[0];
+            statement.executeUpdate("DROP TRIGGER IF EXISTS " + name + " ON " + table);
+            statement.executeUpdate("CREATE TRIGGER " + name + " AFTER " + trigger[1] + " ON " + table + " " + trigger[2]
+                    + " FOR EACH STATEMENT EXECUTE FUNCTION " + function + "()");
+        }
+    }
+}
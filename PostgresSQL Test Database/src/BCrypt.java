@@ -0,0 +1,265 @@
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+// bcrypt password hashing compatible with pgcrypto's crypt(password, gen_salt('bf')), so user_login hashes can be
+// created and checked in the application instead of holding a database backend for every hash.
+// Hashes have the usual form "$2a$<cost>$<22 character salt><31 character hash>", $2b$ and $2y$ hashes are accepted too
+// (they only differ for passwords longer than 255 bytes). Like every bcrypt, only the first 72 bytes of a password count.
+// Blowfish starts from the fractional hex digits of pi. Instead of a table of 1042 constants they are computed once
+// with Machin's formula when the class is loaded, which takes a few milliseconds.
+public final class BCrypt
+{
+    public static final int MIN_COST = 4;
+    public static final int MAX_COST = 31;
+
+    private static final int SALT_LENGTH = 16;
+    private static final int ROUNDS = 16;
+    private static final String BASE64 = "./ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    // "OrpheanBeholderScryDoubt" as big-endian words, encrypted 64 times to produce the hash
+    private static final int[] MAGIC = {0x4f727068, 0x65616e42, 0x65686f6c, 0x64657253, 0x63727944, 0x6f756274};
+    private static final int[] P_INIT;
+    private static final int[] S_INIT;
+
+    static {
+        int[] pi = piWords(18 + 4 * 256);
+        P_INIT = Arrays.copyOfRange(pi, 0, 18);
+        S_INIT = Arrays.copyOfRange(pi, 18, pi.length);
+    }
+
+    private static final SecureRandom SALTS = new SecureRandom();
+
+    private final int[] p = P_INIT.clone();
+    private final int[] s = S_INIT.clone();
+
+    private BCrypt()
+    {
+    }
+
+    // Hashes the password with a random salt. Every cost step doubles the time, pgcrypto's gen_salt('bf') uses 6.
+    public static String hash(String password, int cost)
+    {
+        byte[] salt = new byte[SALT_LENGTH];
+        SALTS.nextBytes(salt);
+        return hash(password, cost, salt);
+    }
+
+    // Hashes the password with the given 16 byte salt, e.g. to generate reproducible test data.
+    public static String hash(String password, int cost, byte[] salt)
+    {
+        return hash(password, 'a', cost, salt);
+    }
+
+    // Checks the password against a hash in constant time. Malformed hashes don't match anything.
+    public static boolean verify(String password, String hash)
+    {
+        if (hash == null || hash.length() != 60 || !hash.startsWith("$2") || hash.charAt(3) != '$' || hash.charAt(6) != '$'
+                || "aby".indexOf(hash.charAt(2)) < 0) {
+            return false;
+        }
+        int cost;
+        try {
+            cost = Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        byte[] salt = decode(hash.substring(7, 29), SALT_LENGTH);
+        if (cost < MIN_COST || cost > MAX_COST || salt.length != SALT_LENGTH) {
+            return false;
+        }
+        String computed = hash(password, hash.charAt(2), cost, salt);
+        return MessageDigest.isEqual(computed.getBytes(StandardCharsets.US_ASCII), hash.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String hash(String password, char version, int cost, byte[] salt)
+    {
+        if (cost < MIN_COST || cost > MAX_COST) {
+            throw new IllegalArgumentException("bcrypt cost must be between " + MIN_COST + " and " + MAX_COST + ", got " + cost);
+        }
+        if (salt.length != SALT_LENGTH) {
+            throw new IllegalArgumentException("bcrypt salt must be " + SALT_LENGTH + " bytes, got " + salt.length);
+        }
+        // The key includes the terminating zero byte of the C string
+        byte[] key = (password + "\u0000").getBytes(StandardCharsets.UTF_8);
+        byte[] raw = new BCrypt().cryptRaw(key, salt, cost);
+
+        StringBuilder sb = new StringBuilder(60);
+        sb.append("$2").append(version).append('$');
+        if (cost < 10) {
+            sb.append('0');
+        }
+        sb.append(cost).append('$');
+        encode(salt, salt.length, sb);
+        // Only 23 of the 24 bytes are encoded, for historical reasons
+        encode(raw, 23, sb);
+        return sb.toString();
+    }
+
+    // Expensive key setup (EksBlowfishSetup), then encrypts the magic text 64 times.
+    private byte[] cryptRaw(byte[] key, byte[] salt, int cost)
+    {
+        expandKey(salt, key);
+        long rounds = 1L << cost;
+        for (long i = 0; i < rounds; i++) {
+            expandKey(null, key);
+            expandKey(null, salt);
+        }
+
+        int[] text = MAGIC.clone();
+        for (int i = 0; i < 64; i++) {
+            for (int j = 0; j < text.length; j += 2) {
+                encipher(text, j);
+            }
+        }
+        byte[] raw = new byte[text.length * 4];
+        for (int i = 0; i < text.length; i++) {
+            raw[4 * i] = (byte) (text[i] >>> 24);
+            raw[4 * i + 1] = (byte) (text[i] >>> 16);
+            raw[4 * i + 2] = (byte) (text[i] >>> 8);
+            raw[4 * i + 3] = (byte) text[i];
+        }
+        return raw;
+    }
+
+    // Mixes the key into the P-array, then re-encrypts P and S. With a salt, the salt is mixed into every block first.
+    private void expandKey(byte[] salt, byte[] key)
+    {
+        int[] keyOffset = {0};
+        for (int i = 0; i < p.length; i++) {
+            p[i] ^= streamToWord(key, keyOffset);
+        }
+        int[] block = {0, 0};
+        int[] saltOffset = {0};
+        for (int i = 0; i < p.length; i += 2) {
+            if (salt != null) {
+                block[0] ^= streamToWord(salt, saltOffset);
+                block[1] ^= streamToWord(salt, saltOffset);
+            }
+            encipher(block, 0);
+            p[i] = block[0];
+            p[i + 1] = block[1];
+        }
+        for (int i = 0; i < s.length; i += 2) {
+            if (salt != null) {
+                block[0] ^= streamToWord(salt, saltOffset);
+                block[1] ^= streamToWord(salt, saltOffset);
+            }
+            encipher(block, 0);
+            s[i] = block[0];
+            s[i + 1] = block[1];
+        }
+    }
+
+    private void encipher(int[] block, int offset)
+    {
+        int l = block[offset] ^ p[0];
+        int r = block[offset + 1];
+        for (int i = 1; i <= ROUNDS; i += 2) {
+            r ^= f(l) ^ p[i];
+            l ^= f(r) ^ p[i + 1];
+        }
+        block[offset] = r ^ p[ROUNDS + 1];
+        block[offset + 1] = l;
+    }
+
+    private int f(int x)
+    {
+        return ((s[x >>> 24] + s[0x100 | ((x >>> 16) & 0xff)]) ^ s[0x200 | ((x >>> 8) & 0xff)]) + s[0x300 | (x & 0xff)];
+    }
+
+    // Next 4 bytes of data as big-endian word, cycling through data
+    private static int streamToWord(byte[] data, int[] offset)
+    {
+        int word = 0;
+        for (int i = 0; i < 4; i++) {
+            word = (word << 8) | (data[offset[0]] & 0xff);
+            offset[0] = (offset[0] + 1) % data.length;
+        }
+        return word;
+    }
+
+    // bcrypt's own base64 alphabet, without padding
+    private static void encode(byte[] data, int length, StringBuilder sb)
+    {
+        for (int i = 0; i < length; ) {
+            int c1 = data[i++] & 0xff;
+            sb.append(BASE64.charAt(c1 >>> 2));
+            c1 = (c1 & 0x03) << 4;
+            if (i >= length) {
+                sb.append(BASE64.charAt(c1));
+                break;
+            }
+            int c2 = data[i++] & 0xff;
+            sb.append(BASE64.charAt(c1 | (c2 >>> 4)));
+            c1 = (c2 & 0x0f) << 2;
+            if (i >= length) {
+                sb.append(BASE64.charAt(c1));
+                break;
+            }
+            c2 = data[i++] & 0xff;
+            sb.append(BASE64.charAt(c1 | (c2 >>> 6)));
+            sb.append(BASE64.charAt(c2 & 0x3f));
+        }
+    }
+
+    private static byte[] decode(String text, int maxLength)
+    {
+        byte[] data = new byte[maxLength];
+        int length = 0;
+        for (int i = 0; i + 1 < text.length() && length < maxLength; ) {
+            int c1 = BASE64.indexOf(text.charAt(i++));
+            int c2 = BASE64.indexOf(text.charAt(i++));
+            if (c1 < 0 || c2 < 0) {
+                break;
+            }
+            data[length++] = (byte) ((c1 << 2) | ((c2 & 0x30) >>> 4));
+            if (length >= maxLength || i >= text.length()) {
+                break;
+            }
+            int c3 = BASE64.indexOf(text.charAt(i++));
+            if (c3 < 0) {
+                break;
+            }
+            data[length++] = (byte) (((c2 & 0x0f) << 4) | ((c3 & 0x3c) >>> 2));
+            if (length >= maxLength || i >= text.length()) {
+                break;
+            }
+            int c4 = BASE64.indexOf(text.charAt(i++));
+            if (c4 < 0) {
+                break;
+            }
+            data[length++] = (byte) (((c3 & 0x03) << 6) | c4);
+        }
+        return Arrays.copyOf(data, length);
+    }
+
+    // The first count 32 bit words of the fractional part of pi, pi = 16 arctan(1/5) - 4 arctan(1/239).
+    private static int[] piWords(int count)
+    {
+        int guardBits = 64;
+        int bits = count * 32 + guardBits;
+        BigInteger pi = arctan(5, bits).shiftLeft(4).subtract(arctan(239, bits).shiftLeft(2));
+        BigInteger fraction = pi.subtract(BigInteger.valueOf(3).shiftLeft(bits)).shiftRight(guardBits);
+        int[] words = new int[count];
+        for (int i = 0; i < count; i++) {
+            words[i] = fraction.shiftRight((count - 1 - i) * 32).intValue();
+        }
+        return words;
+    }
+
+    // arctan(1/x) scaled by 2^bits, from its Taylor series
+    private static BigInteger arctan(int x, int bits)
+    {
+        BigInteger xSquared = BigInteger.valueOf((long) x * x);
+        BigInteger power = BigInteger.ONE.shiftLeft(bits).divide(BigInteger.valueOf(x));
+        BigInteger sum = power;
+        for (int k = 1; power.signum() != 0; k++) {
+            power = power.divide(xSquared);
+            BigInteger term = power.divide(BigInteger.valueOf(2L * k + 1));
+            sum = k % 2 == 1 ? sum.subtract(term) : sum.add(term);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,131 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+// Inserts generated rows with PreparedStatement.addBatch/executeBatch, for servers where COPY is not allowed.
+// The driver sends all statements of a batch in one go and only then reads the results, so a batch costs a single round trip.
+// When the connection was opened with reWriteBatchedInserts=true the driver additionally rewrites each batch
+// into multi-row INSERT ... VALUES (...), (...) statements, which saves most of the per-statement work on the server.
+// Autocommit is switched off while loading and the rows are committed every batchesPerCommit batches,
+// instead of one transaction (and one WAL flush) per row as in insertData().
+// If the connection is already in a transaction (autocommit off), the batches become part of it and the caller
+// commits or rolls back, like ReportIngestor does to write each flush atomically.
+public class BatchLoader implements RowSink
+{
+    private final Connection connection;
+    private final int batchSize;
+    private final int batchesPerCommit;
+    private final LoadStats stats;
+
+    private PreparedStatement statement;
+    private boolean autoCommit;
+    private boolean ownsTransaction;
+    private String table;
+    private int pending;
+    private int uncommittedBatches;
+    private long rows;
+    private long commits;
+    private long start;
+
+    public BatchLoader(Connection connection, int batchSize, int batchesPerCommit, LoadStats stats)
+    {
+        if (batchSize < 1 || batchesPerCommit < 1) {
+            throw new IllegalArgumentException("batchSize and batchesPerCommit must be positive");
+        }
+        this.connection = connection;
+        this.batchSize = batchSize;
+        this.batchesPerCommit = batchesPerCommit;
+        this.stats = stats;
+    }
+
+    @Override
+    public void begin(TableSpec table) throws SQLException
+    {
+        autoCommit = connection.getAutoCommit();
+        ownsTransaction = autoCommit;
+        connection.setAutoCommit(false);
+        statement = connection.prepareStatement(table.insertSql());
+        this.table = table.name();
+        this.rows = 0;
+        this.start = System.nanoTime();
+    }
+
+    @Override
+    public void row(Object[] values) throws SQLException
+    {
+        for (int i = 0; i < values.length; i++) {
+            statement.setObject(i + 1, values[i]);
+        }
+        statement.addBatch();
+        rows++;
+        if (++pending == batchSize) {
+            try {
+                executeBatch();
+            } catch (SQLException e) {
+                abort();
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void end() throws SQLException
+    {
+        try {
+            executeBatch();
+            if (ownsTransaction && uncommittedBatches > 0) {
+                commit();
+            }
+            statement.close();
+        } catch (SQLException e) {
+            abort();
+            throw e;
+        } finally {
+            statement = null;
+            connection.setAutoCommit(autoCommit);
+        }
+        stats.record(table, rows, System.nanoTime() - start);
+    }
+
+    // Rolls back the uncommitted batches and restores autocommit, so a caller that reuses the connection
+    // after a failed row() does not get it back in an aborted transaction. Batches committed before stay in the table.
+    // A transaction of the caller is left to the caller.
+    private void abort() throws SQLException
+    {
+        try {
+            pending = 0;
+            uncommittedBatches = 0;
+            if (ownsTransaction) {
+                connection.rollback();
+            }
+            statement.close();
+        } finally {
+            statement = null;
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    public long commits()
+    {
+        return commits;
+    }
+
+    private void executeBatch() throws SQLException
+    {
+        if (pending == 0) {
+            return;
+        }
+        statement.executeBatch();
+        pending = 0;
+        if (++uncommittedBatches == batchesPerCommit && ownsTransaction) {
+            commit();
+        }
+    }
+
+    private void commit() throws SQLException
+    {
+        connection.commit();
+        uncommittedBatches = 0;
+        commits++;
+    }
+}
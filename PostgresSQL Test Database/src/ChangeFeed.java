@@ -0,0 +1,578 @@
+import org.postgresql.PGConnection;
+import org.postgresql.PGProperty;
+import org.postgresql.replication.LogSequenceNumber;
+import org.postgresql.replication.PGReplicationStream;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Streams the changes of party_info, party_datetime and party_attendees to subscribers through logical replication,
+// so consumers like push notifications, feed ranking or the PartyViewCache don't have to poll the tables.
+// install() creates a publication of the three tables and a replication slot with the pgoutput plugin, which needs
+// wal_level = logical. The feed reads the slot over a replication connection, decodes the pgoutput messages into typed
+// events and hands them in batches to every subscriber. A batch only ever ends at the end of a transaction, except when
+// a transaction alone is larger than a batch. Each subscriber has its own thread and a bounded queue of batches, a slow
+// subscriber fills its queue and then stops the feed from reading (the server keeps the WAL meanwhile).
+// The position of the slot is only acknowledged up to the last transaction that every subscriber has received, so after
+// a crash or restart the feed continues from there and events may be delivered twice, but are never lost.
+// A subscriber that throws gets the same batch again a second later.
+// The slot holds back WAL while the feed isn't running, drop() removes it when it is no longer needed.
+// party_datetime and party_attendees have no primary key, install() gives them REPLICA IDENTITY FULL so their updates and
+// deletes can be published (with the complete old row).
+public class ChangeFeed implements AutoCloseable
+{
+    static final String PUBLICATION = "party_changes";
+    private static final String[] TABLES = {"party_info", "party_datetime", "party_attendees"};
+    // Run by DatabaseTest.structureDatabase() after recreating the tables: dropping them removed them from the publication
+    // and reset their replica identity, an installed feed gets both back and keeps reading from its slot.
+    static final String REPUBLISH = """
+            DO $$
+            BEGIN
+                IF EXISTS (SELECT 1 FROM pg_publication WHERE pubname = '%s') THEN
+                    ALTER TABLE party_datetime REPLICA IDENTITY FULL;
+                    ALTER TABLE party_attendees REPLICA IDENTITY FULL;
+                    ALTER PUBLICATION %s SET TABLE %s;
+                END IF;
+            END $$
+            """.formatted(PUBLICATION, PUBLICATION, String.join(", ", TABLES));
+    // Microseconds between 1970-01-01 and 2000-01-01, the epoch of the commit timestamps
+    private static final long POSTGRES_EPOCH_MICROS = 946_684_800_000_000L;
+
+    public enum Operation
+    {
+        INSERT, UPDATE, DELETE, TRUNCATE
+    }
+
+    // One changed row. Deletes of party_info only carry the party_id, truncates have no party_id at all.
+    // lsn and committedAt belong to the commit of the transaction.
+    public sealed interface Event permits PartyEvent, ScheduleEvent, AttendeeEvent
+    {
+        Operation operation();
+
+        UUID partyId();
+
+        LogSequenceNumber lsn();
+
+        Instant committedAt();
+    }
+
+    public record PartyEvent(Operation operation, UUID partyId, String title, String type, Integer maxGuests, String host,
+                             LogSequenceNumber lsn, Instant committedAt) implements Event
+    {
+    }
+
+    public record ScheduleEvent(Operation operation, UUID partyId, LocalDate startDate, LocalDate endDate,
+                                LogSequenceNumber lsn, Instant committedAt) implements Event
+    {
+    }
+
+    public record AttendeeEvent(Operation operation, UUID partyId, String email, String status,
+                                LogSequenceNumber lsn, Instant committedAt) implements Event
+    {
+    }
+
+    public interface Subscriber
+    {
+        void deliver(List<Event> events) throws Exception;
+    }
+
+    // ackLsn is the end of the last transaction completed in the batch, or 0 if no transaction ends in it
+    private record Batch(List<Event> events, long ackLsn)
+    {
+    }
+
+    // A table as described by a pgoutput Relation message
+    private record Relation(String table, String[] columns)
+    {
+        int column(String name)
+        {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private final class Subscription
+    {
+        final String name;
+        final Subscriber subscriber;
+        final BlockingQueue<Batch> queue;
+        // Highest ackLsn delivered so far
+        volatile long delivered;
+        final Thread thread;
+
+        Subscription(String name, Subscriber subscriber, int capacity)
+        {
+            this.name = name;
+            this.subscriber = subscriber;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = new Thread(this::run, "change-feed-" + name);
+            this.thread.setDaemon(true);
+        }
+
+        private void run()
+        {
+            try {
+                while (!closed || !queue.isEmpty()) {
+                    Batch batch = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        continue;
+                    }
+                    while (true) {
+                        try {
+                            subscriber.deliver(batch.events());
+                            break;
+                        } catch (Exception e) {
+                            System.out.println("Exception: " + name + " failed to take " + batch.events().size() + " events: " + e.getMessage());
+                            if (closed) {
+                                return;
+                            }
+                            Thread.sleep(1000);
+                        }
+                    }
+                    if (batch.ackLsn() != 0) {
+                        delivered = batch.ackLsn();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final String slot;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private final Map<Integer, Relation> relations = new HashMap<>();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    // The transaction being decoded and the batch being filled
+    private List<Event> transaction = new ArrayList<>();
+    private LogSequenceNumber transactionLsn;
+    private Instant transactionTime;
+    private List<Event> batch = new ArrayList<>();
+    private long batchAckLsn;
+    // Highest ackLsn handed to the subscribers and highest one confirmed to the server
+    private long dispatched;
+    private long acknowledged;
+
+    private Connection connection;
+    private PGReplicationStream stream;
+    private Thread reader;
+    private volatile boolean closed;
+
+    public ChangeFeed(String slot, int batchSize, int queueCapacity)
+    {
+        this.slot = slot;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    // Creates the publication and the replication slot if they don't exist yet.
+    public static void install(Connection connection, String slot) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("SHOW wal_level")) {
+                rs.next();
+                if (!rs.getString(1).equals("logical")) {
+                    throw new SQLException("The change feed needs wal_level = logical, the server runs with " + rs.getString(1));
+                }
+            }
+            statement.executeUpdate("ALTER TABLE party_datetime REPLICA IDENTITY FULL");
+            statement.executeUpdate("ALTER TABLE party_attendees REPLICA IDENTITY FULL");
+            try (ResultSet rs = statement.executeQuery("SELECT 1 FROM pg_publication WHERE pubname = '" + PUBLICATION + "'")) {
+                if (!rs.next()) {
+                    statement.executeUpdate("CREATE PUBLICATION " + PUBLICATION + " FOR TABLE " + String.join(", ", TABLES));
+                }
+            }
+        }
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT pg_create_logical_replication_slot(?, 'pgoutput')
+                WHERE NOT EXISTS (SELECT 1 FROM pg_replication_slots WHERE slot_name = ?)
+                """)) {
+            statement.setString(1, slot);
+            statement.setString(2, slot);
+            statement.executeQuery().close();
+        }
+    }
+
+    // Removes the replication slot and the publication, so the server no longer keeps WAL for the feed.
+    public static void drop(Connection connection, String slot) throws SQLException
+    {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_drop_replication_slot(slot_name) FROM pg_replication_slots WHERE slot_name = ?")) {
+            statement.setString(1, slot);
+            statement.executeQuery().close();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP PUBLICATION IF EXISTS " + PUBLICATION);
+        }
+    }
+
+    // Subscribers have to be added before start()
+    public void subscribe(String name, Subscriber subscriber)
+    {
+        if (reader != null) {
+            throw new IllegalStateException("The change feed is already running");
+        }
+        subscriptions.add(new Subscription(name, subscriber, queueCapacity));
+    }
+
+    // Opens the replication connection and starts reading from the position the slot was last acknowledged at.
+    public void start() throws SQLException
+    {
+        Properties properties = new Properties();
+        PGProperty.ASSUME_MIN_SERVER_VERSION.set(properties, "10");
+        PGProperty.REPLICATION.set(properties, "database");
+        PGProperty.PREFER_QUERY_MODE.set(properties, "simple");
+        connection = DatabaseTest.connect(properties);
+        try {
+            stream = connection.unwrap(PGConnection.class).getReplicationAPI().replicationStream().logical()
+                    .withSlotName(slot)
+                    .withSlotOption("proto_version", 1)
+                    .withSlotOption("publication_names", PUBLICATION)
+                    .withStatusInterval(1, TimeUnit.SECONDS)
+                    .start();
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.thread.start();
+        }
+        reader = new Thread(this::read, "change-feed-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public long events()
+    {
+        return events.get();
+    }
+
+    public long batches()
+    {
+        return batches.get();
+    }
+
+    private void read()
+    {
+        try {
+            while (!closed) {
+                ByteBuffer message = stream.readPending();
+                if (message == null) {
+                    // Nothing more to read right now, hands out what has been collected
+                    dispatch();
+                    acknowledge();
+                    Thread.sleep(5);
+                    continue;
+                }
+                decode(message);
+                if (batch.size() >= batchSize) {
+                    dispatch();
+                    // Under sustained load readPending() never runs dry, the slot would hold back WAL until it does
+                    acknowledge();
+                }
+            }
+        } catch (SQLException e) {
+            if (!closed) {
+                System.out.println("Exception: " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Passes the current batch to every subscriber, waiting while a queue is full
+    private void dispatch() throws SQLException, InterruptedException
+    {
+        if (batch.isEmpty() && batchAckLsn == 0) {
+            return;
+        }
+        Batch full = new Batch(List.copyOf(batch), batchAckLsn);
+        for (Subscription subscription : subscriptions) {
+            while (!subscription.queue.offer(full, 100, TimeUnit.MILLISECONDS)) {
+                // Keeps the connection alive while the subscriber catches up
+                stream.forceUpdateStatus();
+                if (closed) {
+                    return;
+                }
+            }
+        }
+        events.addAndGet(full.events().size());
+        batches.incrementAndGet();
+        dispatched = Math.max(dispatched, full.ackLsn());
+        batch = new ArrayList<>();
+        batchAckLsn = 0;
+    }
+
+    // Confirms the slot position up to the transaction that every subscriber has delivered
+    private void acknowledge() throws SQLException
+    {
+        long lsn = dispatched;
+        for (Subscription subscription : subscriptions) {
+            lsn = Math.min(lsn, subscription.delivered);
+        }
+        if (lsn > acknowledged) {
+            acknowledged = lsn;
+            stream.setAppliedLSN(LogSequenceNumber.valueOf(lsn));
+            stream.setFlushedLSN(LogSequenceNumber.valueOf(lsn));
+        }
+    }
+
+    // ### pgoutput protocol version 1 ###
+
+    private void decode(ByteBuffer message)
+    {
+        byte type = message.get();
+        switch (type) {
+            case 'B' -> {
+                transactionLsn = LogSequenceNumber.valueOf(message.getLong());
+                long micros = message.getLong() + POSTGRES_EPOCH_MICROS;
+                transactionTime = Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000), Math.floorMod(micros, 1_000_000) * 1000);
+                transaction.clear();
+            }
+            case 'C' -> {
+                message.get();
+                message.getLong();
+                long endLsn = message.getLong();
+                batch.addAll(transaction);
+                transaction.clear();
+                batchAckLsn = endLsn;
+            }
+            case 'R' -> {
+                int id = message.getInt();
+                readCString(message);
+                String table = readCString(message);
+                message.get();
+                String[] columns = new String[message.getShort()];
+                for (int i = 0; i < columns.length; i++) {
+                    message.get();
+                    columns[i] = readCString(message);
+                    message.getInt();
+                    message.getInt();
+                }
+                relations.put(id, new Relation(table, columns));
+            }
+            case 'I' -> {
+                Relation relation = relations.get(message.getInt());
+                message.get();
+                add(relation, Operation.INSERT, readTuple(message));
+            }
+            case 'U' -> {
+                Relation relation = relations.get(message.getInt());
+                byte tuple = message.get();
+                if (tuple == 'K' || tuple == 'O') {
+                    readTuple(message);
+                    message.get();
+                }
+                add(relation, Operation.UPDATE, readTuple(message));
+            }
+            case 'D' -> {
+                Relation relation = relations.get(message.getInt());
+                message.get();
+                add(relation, Operation.DELETE, readTuple(message));
+            }
+            case 'T' -> {
+                int count = message.getInt();
+                message.get();
+                for (int i = 0; i < count; i++) {
+                    Relation relation = relations.get(message.getInt());
+                    add(relation, Operation.TRUNCATE, new String[relation.columns().length]);
+                }
+            }
+            default -> {
+                // Origin and type messages carry nothing the events need
+            }
+        }
+        // Large transactions are handed out in parts, only the last part acknowledges the transaction
+        if (transaction.size() >= batchSize) {
+            batch.addAll(transaction);
+            transaction.clear();
+        }
+    }
+
+    private void add(Relation relation, Operation operation, String[] values)
+    {
+        UUID partyId = uuid(value(relation, values, "party_id"));
+        Event event = switch (relation.table()) {
+            case "party_info" -> {
+                String maxGuests = value(relation, values, "max_guests");
+                yield new PartyEvent(operation, partyId, value(relation, values, "title"), value(relation, values, "type"),
+                        maxGuests == null ? null : Integer.valueOf(maxGuests), value(relation, values, "host"), transactionLsn, transactionTime);
+            }
+            case "party_datetime" -> new ScheduleEvent(operation, partyId, date(value(relation, values, "start_date")),
+                    date(value(relation, values, "end_date")), transactionLsn, transactionTime);
+            default -> new AttendeeEvent(operation, partyId, value(relation, values, "attendee_email"),
+                    value(relation, values, "attendee_status"), transactionLsn, transactionTime);
+        };
+        transaction.add(event);
+    }
+
+    // Column values in text format, null for NULL and for unchanged TOASTed values
+    private static String[] readTuple(ByteBuffer message)
+    {
+        String[] values = new String[message.getShort()];
+        for (int i = 0; i < values.length; i++) {
+            if (message.get() == 't') {
+                byte[] bytes = new byte[message.getInt()];
+                message.get(bytes);
+                values[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return values;
+    }
+
+    private static String readCString(ByteBuffer message)
+    {
+        int start = message.position();
+        while (message.get() != 0) {
+        }
+        byte[] bytes = new byte[message.position() - start - 1];
+        message.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String value(Relation relation, String[] values, String column)
+    {
+        int index = relation.column(column);
+        return index < 0 || index >= values.length ? null : values[index];
+    }
+
+    private static UUID uuid(String value)
+    {
+        return value == null ? null : UUID.fromString(value);
+    }
+
+    private static LocalDate date(String value)
+    {
+        return value == null ? null : LocalDate.parse(value);
+    }
+
+    // Stops reading, lets the subscribers take what is already queued and acknowledges what they delivered.
+    @Override
+    public void close()
+    {
+        closed = true;
+        try {
+            if (reader != null) {
+                reader.join();
+            }
+            for (Subscription subscription : subscriptions) {
+                subscription.thread.join();
+            }
+            if (stream != null) {
+                acknowledge();
+                stream.forceUpdateStatus();
+                stream.close();
+            }
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Bulk loads "parties" (default 100000) parties with a schedule and one attendee each, "perTransaction" (default 1000)
+    // per transaction, while the feed delivers the changes to one subscriber. Prints events per second and the lag between
+    // commit and delivery. Other arguments: "slot" (default party_changes), "batchSize" (default 500), "queue" (default 16),
+    // "drop=false" keeps the slot and publication afterwards.
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        String slot = options.getOrDefault("slot", "party_changes");
+        int parties = Integer.parseInt(options.getOrDefault("parties", "100000"));
+        int perTransaction = Integer.parseInt(options.getOrDefault("perTransaction", "1000"));
+        int batchSize = Integer.parseInt(options.getOrDefault("batchSize", "500"));
+        int queue = Integer.parseInt(options.getOrDefault("queue", "16"));
+
+        try (Connection connection = DatabaseTest.connect(DatabaseTest.driverProperties(options))) {
+            install(connection, slot);
+            String email;
+            try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("SELECT email FROM user_info ORDER BY email LIMIT 1")) {
+                rs.next();
+                email = rs.getString(1);
+            }
+
+            LatencyHistogram lag = new LatencyHistogram();
+            AtomicLong delivered = new AtomicLong();
+            AtomicLong firstDelivery = new AtomicLong();
+            long expected = 3L * parties;
+            try (ChangeFeed feed = new ChangeFeed(slot, batchSize, queue)) {
+                feed.subscribe("lag", events -> {
+                    long now = System.currentTimeMillis() * 1000;
+                    firstDelivery.compareAndSet(0, System.nanoTime());
+                    for (Event event : events) {
+                        Instant committed = event.committedAt();
+                        lag.record((now - (committed.getEpochSecond() * 1_000_000 + committed.getNano() / 1000)) * 1000);
+                    }
+                    delivered.addAndGet(events.size());
+                });
+                feed.start();
+
+                long start = System.nanoTime();
+                try (PreparedStatement statement = connection.prepareStatement("""
+                        WITH p AS (INSERT INTO party_info (title, type, party_description, guest_description, max_guests, host)
+                                   SELECT 'Change feed ' || g, 'RAVE', 'A party that only exists to measure how fast the change feed is.',
+                                          'Everybody who wants to come', 100, ? FROM generate_series(1, ?) g RETURNING party_id),
+                             d AS (INSERT INTO party_datetime (party_id, start_date, start_time_tz, end_date, end_time_tz)
+                                   SELECT party_id, CURRENT_DATE + 7, '20:00+02', CURRENT_DATE + 8, '04:00+02' FROM p)
+                        INSERT INTO party_attendees (party_id, attendee_email, attendee_status) SELECT party_id, ?, 'attending' FROM p
+                        """)) {
+                    for (int loaded = 0; loaded < parties; loaded += perTransaction) {
+                        statement.setString(1, email);
+                        statement.setInt(2, Math.min(perTransaction, parties - loaded));
+                        statement.setString(3, email);
+                        statement.executeUpdate();
+                    }
+                }
+                long loadNanos = System.nanoTime() - start;
+                System.out.printf("Loaded %d parties in %d ms%n", parties, loadNanos / 1_000_000);
+
+                long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+                while (delivered.get() < expected && System.nanoTime() < deadline) {
+                    Thread.sleep(10);
+                }
+                long nanos = System.nanoTime() - start;
+                System.out.printf("Delivered %d of %d events in %d batches, %.0f events/s since the load started, %.0f events/s since the first delivery%n",
+                        delivered.get(), expected, feed.batches(), delivered.get() * 1e9 / nanos,
+                        delivered.get() * 1e9 / Math.max(1, System.nanoTime() - firstDelivery.get()));
+                System.out.println("Commit to delivery lag: " + lag.summary());
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM party_attendees WHERE party_id IN (SELECT party_id FROM party_info WHERE title LIKE 'Change feed %')");
+                statement.executeUpdate("DELETE FROM party_info WHERE title LIKE 'Change feed %'");
+            }
+            if (!"false".equals(options.get("drop"))) {
+                drop(connection, slot);
+            }
+        } catch (SQLException | InterruptedException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Executor for simulated app clients that spend most of their time waiting on the database.
+// The project targets JDK 17, so virtual threads are looked up reflectively: on a JDK 21+ runtime every client
+// gets its own virtual thread, on older runtimes it falls back to one platform thread per client.
+public final class ClientExecutors
+{
+    private ClientExecutors()
+    {
+    }
+
+    public static ExecutorService newClientExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public static boolean virtualThreadsAvailable()
+    {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
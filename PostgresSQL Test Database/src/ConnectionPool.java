@@ -0,0 +1,120 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Minimal fixed-size connection pool for the test database.
+// All connections are opened up front. borrow() hands out a wrapper whose close() returns the connection to the pool
+// instead of closing it, so callers can keep using try-with-resources like with a plain connection.
+public class ConnectionPool implements AutoCloseable
+{
+    private final BlockingQueue<Connection> idle;
+    private final List<Connection> all = new ArrayList<>();
+    private final long timeoutMillis;
+
+    public ConnectionPool(int size, Properties driverProperties, long timeoutMillis) throws SQLException
+    {
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.timeoutMillis = timeoutMillis;
+        try {
+            for (int i = 0; i < size; i++) {
+                Connection connection = DatabaseTest.connect(driverProperties);
+                all.add(connection);
+                idle.add(connection);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int size()
+    {
+        return all.size();
+    }
+
+    // Waits up to the pool timeout for an idle connection.
+    public Connection borrow() throws SQLException
+    {
+        Connection connection;
+        try {
+            connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", e);
+        }
+        if (connection == null) {
+            throw new SQLException("No pooled connection available after " + timeoutMillis + " ms");
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new PooledConnection(connection));
+    }
+
+    @Override
+    public void close()
+    {
+        for (Connection connection : all) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.out.println("Exception: " + e.getMessage());
+            }
+        }
+        all.clear();
+        idle.clear();
+    }
+
+    // Forwards everything to the real connection, except close() which resets the connection and puts it back.
+    private class PooledConnection implements InvocationHandler
+    {
+        private final Connection connection;
+        private boolean returned;
+
+        PooledConnection(Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName()) {
+                case "close" -> {
+                    if (!returned) {
+                        returned = true;
+                        if (!connection.getAutoCommit()) {
+                            connection.rollback();
+                            connection.setAutoCommit(true);
+                        }
+                        idle.add(connection);
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return returned || connection.isClosed();
+                }
+                case "unwrap" -> {
+                    return ((Class<?>) args[0]).isInstance(proxy) ? proxy : connection.unwrap((Class<?>) args[0]);
+                }
+                default -> {
+                    if (returned) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }
+            }
+        }
+    }
+}
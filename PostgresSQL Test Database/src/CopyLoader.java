@@ -0,0 +1,405 @@
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.geometric.PGpoint;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.util.UUID;
+
+// Bulk loads generated rows with COPY ... FROM STDIN through the driver's CopyManager.
+// Every row is encoded straight into a reusable byte buffer that is handed to the open CopyIn whenever it fills up,
+// so there is one COPY per table instead of one round trip per row, and no intermediate strings or files.
+// Both the text and the binary COPY format are supported. Binary skips the text parsing on the server,
+// but needs Java values of exactly the column types (Short for SMALLINT, BigDecimal for NUMERIC, ...), which the DataGenerator produces.
+public class CopyLoader implements RowSink
+{
+    private static final byte[] BINARY_HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0, 0, 0, 0, 0, 0, 0, 0, 0};
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // Days between 1970-01-01 (Java epoch) and 2000-01-01 (PostgreSQL epoch)
+    private static final long POSTGRES_EPOCH_DAYS = 10_957;
+    private static final BigInteger NBASE = BigInteger.valueOf(10_000);
+
+    private final Connection connection;
+    private final boolean binary;
+    private final LoadStats stats;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position;
+
+    private TableSpec table;
+    private CopyIn copy;
+    private long rows;
+    private long start;
+
+    public CopyLoader(Connection connection, boolean binary, LoadStats stats)
+    {
+        this.connection = connection;
+        this.binary = binary;
+        this.stats = stats;
+    }
+
+    @Override
+    public void begin(TableSpec table) throws SQLException
+    {
+        this.table = table;
+        this.rows = 0;
+        this.start = System.nanoTime();
+        copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn("COPY " + table.name() + " (" + String.join(", ", table.columns())
+                + ") FROM STDIN" + (binary ? " (FORMAT binary)" : ""));
+        position = 0;
+        if (binary) {
+            System.arraycopy(BINARY_HEADER, 0, buffer, 0, BINARY_HEADER.length);
+            position = BINARY_HEADER.length;
+        }
+    }
+
+    @Override
+    public void row(Object[] values) throws SQLException
+    {
+        try {
+            if (binary) {
+                ensure(2);
+                putShort(values.length);
+                for (Object value : values) {
+                    writeBinary(value);
+                }
+            } else {
+                for (int i = 0; i < values.length; i++) {
+                    ensure(1);
+                    if (i > 0) {
+                        buffer[position++] = '\t';
+                    }
+                    writeText(values[i]);
+                }
+                ensure(1);
+                buffer[position++] = '\n';
+            }
+        } catch (SQLException e) {
+            // A COPY that failed mid-stream is not ended by the caller, the connection can only be used again once it is cancelled
+            cancel();
+            throw e;
+        }
+        rows++;
+    }
+
+    @Override
+    public void end() throws SQLException
+    {
+        try {
+            if (binary) {
+                ensure(2);
+                putShort(-1);
+            }
+            flush();
+            copy.endCopy();
+        } finally {
+            // A failed flush or endCopy would leave the connection inside the COPY otherwise
+            cancel();
+        }
+        stats.record(table.name(), rows, System.nanoTime() - start);
+    }
+
+    private void cancel() throws SQLException
+    {
+        try {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        } finally {
+            copy = null;
+        }
+    }
+
+    // ### Text format: tab separated columns, \N for NULL, backslash escapes in strings ###
+
+    private void writeText(Object value) throws SQLException
+    {
+        if (value == null) {
+            ensure(2);
+            buffer[position++] = '\\';
+            buffer[position++] = 'N';
+        } else if (value instanceof String s) {
+            writeUtf8(s, true);
+        } else if (value instanceof Short || value instanceof Integer || value instanceof Long) {
+            ensure(20);
+            putDecimal(((Number) value).longValue());
+        } else if (value instanceof UUID uuid) {
+            ensure(36);
+            putHex(uuid.getMostSignificantBits() >>> 32, 8);
+            buffer[position++] = '-';
+            putHex(uuid.getMostSignificantBits() >>> 16, 4);
+            buffer[position++] = '-';
+            putHex(uuid.getMostSignificantBits(), 4);
+            buffer[position++] = '-';
+            putHex(uuid.getLeastSignificantBits() >>> 48, 4);
+            buffer[position++] = '-';
+            putHex(uuid.getLeastSignificantBits(), 12);
+        } else if (value instanceof LocalDate date) {
+            ensure(16);
+            putDate(date);
+        } else if (value instanceof OffsetTime time) {
+            ensure(32);
+            putTime(time.getHour(), time.getMinute(), time.getSecond(), time.getNano());
+            putOffset(time.getOffset().getTotalSeconds());
+        } else if (value instanceof OffsetDateTime dateTime) {
+            ensure(48);
+            putDate(dateTime.toLocalDate());
+            buffer[position++] = ' ';
+            putTime(dateTime.getHour(), dateTime.getMinute(), dateTime.getSecond(), dateTime.getNano());
+            putOffset(dateTime.getOffset().getTotalSeconds());
+        } else if (value instanceof BigDecimal decimal && decimal.scale() >= 0 && decimal.precision() < 19) {
+            ensure(24);
+            long unscaled = decimal.unscaledValue().longValue();
+            if (unscaled < 0) {
+                buffer[position++] = '-';
+                unscaled = -unscaled;
+            }
+            long factor = 1;
+            for (int i = 0; i < decimal.scale(); i++) {
+                factor *= 10;
+            }
+            putDecimal(unscaled / factor);
+            if (decimal.scale() > 0) {
+                buffer[position++] = '.';
+                putPadded(unscaled % factor, decimal.scale());
+            }
+        } else if (value instanceof PGpoint point) {
+            ensure(1);
+            buffer[position++] = '(';
+            writeUtf8(Double.toString(point.x), false);
+            ensure(1);
+            buffer[position++] = ',';
+            writeUtf8(Double.toString(point.y), false);
+            ensure(1);
+            buffer[position++] = ')';
+        } else {
+            writeUtf8(value.toString(), true);
+        }
+    }
+
+    // ### Binary format: int32 length followed by the type's binary send representation, -1 for NULL ###
+
+    private void writeBinary(Object value) throws SQLException
+    {
+        if (value == null) {
+            ensure(4);
+            putInt(-1);
+        } else if (value instanceof String s) {
+            // Reserves the worst case UTF-8 length up front, so the length prefix can be patched in after encoding
+            ensure(5 + s.length() * 3);
+            int lengthPosition = position;
+            position += 4;
+            writeUtf8(s, false);
+            int length = position - lengthPosition - 4;
+            int end = position;
+            position = lengthPosition;
+            putInt(length);
+            position = end;
+        } else if (value instanceof Short s) {
+            ensure(6);
+            putInt(2);
+            putShort(s);
+        } else if (value instanceof Integer i) {
+            ensure(8);
+            putInt(4);
+            putInt(i);
+        } else if (value instanceof Long l) {
+            ensure(12);
+            putInt(8);
+            putLong(l);
+        } else if (value instanceof UUID uuid) {
+            ensure(20);
+            putInt(16);
+            putLong(uuid.getMostSignificantBits());
+            putLong(uuid.getLeastSignificantBits());
+        } else if (value instanceof LocalDate date) {
+            ensure(8);
+            putInt(4);
+            putInt((int) (date.toEpochDay() - POSTGRES_EPOCH_DAYS));
+        } else if (value instanceof OffsetTime time) {
+            // timetz: microseconds since midnight followed by the zone offset in seconds west of UTC
+            ensure(16);
+            putInt(12);
+            putLong(time.toLocalTime().toNanoOfDay() / 1000);
+            putInt(-time.getOffset().getTotalSeconds());
+        } else if (value instanceof OffsetDateTime dateTime) {
+            // timestamptz: microseconds since 2000-01-01 00:00:00 UTC
+            ensure(12);
+            putInt(8);
+            long seconds = dateTime.toEpochSecond() - POSTGRES_EPOCH_DAYS * 86_400;
+            putLong(seconds * 1_000_000 + dateTime.getNano() / 1000);
+        } else if (value instanceof BigDecimal decimal) {
+            writeNumeric(decimal);
+        } else if (value instanceof PGpoint point) {
+            ensure(20);
+            putInt(16);
+            putLong(Double.doubleToLongBits(point.x));
+            putLong(Double.doubleToLongBits(point.y));
+        } else {
+            throw new SQLException("No binary COPY encoding for " + value.getClass().getName() + " in table " + table.name());
+        }
+    }
+
+    // numeric: ndigits, weight, sign and display scale as int16, followed by ndigits base 10000 digits
+    private void writeNumeric(BigDecimal decimal) throws SQLException
+    {
+        int scale = Math.max(decimal.scale(), 0);
+        BigInteger unscaled = decimal.setScale(scale).unscaledValue();
+        // Aligns the fraction to whole base 10000 digits
+        int fractionDigits = (scale + 3) / 4;
+        BigInteger value = unscaled.abs().multiply(BigInteger.TEN.pow(fractionDigits * 4 - scale));
+        short[] digits = new short[value.bitLength() / 13 + 2];
+        int count = 0;
+        while (value.signum() > 0) {
+            BigInteger[] divided = value.divideAndRemainder(NBASE);
+            digits[count++] = divided[1].shortValue();
+            value = divided[0];
+        }
+        // Digits are collected least significant first, trailing zeros of the fraction can be dropped
+        int lowest = 0;
+        while (lowest < count && digits[lowest] == 0) {
+            lowest++;
+        }
+        int weight = count - 1 - fractionDigits;
+        int ndigits = count - lowest;
+        ensure(12 + ndigits * 2);
+        putInt(8 + ndigits * 2);
+        putShort(ndigits);
+        putShort(ndigits == 0 ? 0 : weight);
+        putShort(unscaled.signum() < 0 ? 0x4000 : 0);
+        putShort(scale);
+        for (int i = count - 1; i >= lowest; i--) {
+            putShort(digits[i]);
+        }
+    }
+
+    // ### Buffer helpers ###
+
+    private void ensure(int bytes) throws SQLException
+    {
+        if (position + bytes > buffer.length) {
+            flush();
+        }
+    }
+
+    private void flush() throws SQLException
+    {
+        if (position > 0) {
+            copy.writeToCopy(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    // Encodes a string as UTF-8 directly into the buffer, escaping the characters that are special in the text format.
+    private void writeUtf8(String s, boolean escape) throws SQLException
+    {
+        for (int i = 0; i < s.length(); i++) {
+            ensure(4);
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (escape && (c == '\\' || c == '\t' || c == '\n' || c == '\r')) {
+                    buffer[position++] = '\\';
+                    c = c == '\t' ? 't' : c == '\n' ? 'n' : c == '\r' ? 'r' : '\\';
+                }
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | cp >> 18);
+                buffer[position++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buffer[position++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | cp & 0x3F);
+            } else {
+                buffer[position++] = (byte) (0xE0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void putDate(LocalDate date)
+    {
+        putPadded(date.getYear(), 4);
+        buffer[position++] = '-';
+        putPadded(date.getMonthValue(), 2);
+        buffer[position++] = '-';
+        putPadded(date.getDayOfMonth(), 2);
+    }
+
+    private void putTime(int hour, int minute, int second, int nano)
+    {
+        putPadded(hour, 2);
+        buffer[position++] = ':';
+        putPadded(minute, 2);
+        buffer[position++] = ':';
+        putPadded(second, 2);
+        if (nano != 0) {
+            buffer[position++] = '.';
+            putPadded(nano / 1000, 6);
+        }
+    }
+
+    private void putOffset(int totalSeconds)
+    {
+        buffer[position++] = (byte) (totalSeconds < 0 ? '-' : '+');
+        totalSeconds = Math.abs(totalSeconds);
+        putPadded(totalSeconds / 3600, 2);
+        buffer[position++] = ':';
+        putPadded(totalSeconds / 60 % 60, 2);
+    }
+
+    private void putDecimal(long value)
+    {
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        putPadded(value, digits);
+    }
+
+    private void putPadded(long value, int digits)
+    {
+        for (int i = position + digits - 1; i >= position; i--, value /= 10) {
+            buffer[i] = (byte) ('0' + value % 10);
+        }
+        position += digits;
+    }
+
+    private void putHex(long value, int digits)
+    {
+        for (int i = position + digits - 1; i >= position; i--, value >>>= 4) {
+            buffer[i] = (byte) HEX[(int) (value & 0xF)];
+        }
+        position += digits;
+    }
+
+    private void putShort(int value)
+    {
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putInt(int value)
+    {
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putLong(long value)
+    {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+}
@@ -0,0 +1,462 @@
+import org.postgresql.geometric.PGpoint;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.UUID;
+
+// Generates a synthetic but consistent Evenue data set of any size as a replacement for the hard-coded rows in insertData().
+// Every row is derived only from the seed and its own key (user index, party index or report index) using SeededRandom,
+// so foreign keys such as party_attendees.party_id can be recomputed instead of being looked up or kept in memory,
+// and any key range of any table can be generated on its own. Rows are handed to a RowSink one at a time.
+// The same seed and configuration always produce the same data set (as long as "today" is the same day,
+// because party_datetime only allows dates in the future).
+public class DataGenerator
+{
+    // Increment whenever a change to the generator changes the rows it produces, so templates built with the old code are rebuilt
+    static final int VERSION = 1;
+
+    // ### Tables in foreign key order: parents are always generated before their children ###
+    static final TableSpec USER_INFO = new TableSpec("user_info",
+            new String[]{"email", "first_name", "last_name", "age", "country"},
+            new String[]{"?", "?", "?", "?", "?"});
+    static final TableSpec USER_LOGIN = new TableSpec("user_login",
+            new String[]{"email", "password"},
+            new String[]{"?", "?"});
+    static final TableSpec PARTY_INFO = new TableSpec("party_info",
+            new String[]{"party_id", "title", "type", "party_description", "guest_description", "max_guests", "host", "attendance_fee"},
+            new String[]{"?", "?", "?::PARTY_TYPE", "?", "?", "?", "?", "?"});
+    static final TableSpec PARTY_DATETIME = new TableSpec("party_datetime",
+            new String[]{"party_id", "start_date", "start_time_tz", "end_date", "end_time_tz"},
+            new String[]{"?", "?", "?", "?", "?"});
+    static final TableSpec PARTY_LOCATION = new TableSpec("party_location",
+            new String[]{"party_id", "coordinates"},
+            new String[]{"?", "?"});
+    static final TableSpec PARTY_ADDRESS = new TableSpec("party_address",
+            new String[]{"party_id", "street_name", "street_number", "zip_code"},
+            new String[]{"?", "?", "?", "?"});
+    static final TableSpec ZIP_CODE = new TableSpec("zip_code",
+            new String[]{"zip_code", "city", "state", "country"},
+            new String[]{"?", "?", "?", "?"});
+    static final TableSpec PARTY_ATTENDEES = new TableSpec("party_attendees",
+            new String[]{"party_id", "attendee_email", "attendee_status"},
+            new String[]{"?", "?", "?::ATTENDEE_STATUS"});
+    static final TableSpec FAVOURITES = new TableSpec("favourites",
+            new String[]{"email", "party_id"},
+            new String[]{"?", "?"});
+    static final TableSpec USER_REPORTS = new TableSpec("user_reports",
+            new String[]{"user_report_id", "user_reporter_email", "user_reported_email", "user_report_time", "user_report_reason"},
+            new String[]{"?", "?", "?", "?", "?"});
+    static final TableSpec PARTY_REPORTS = new TableSpec("party_reports",
+            new String[]{"party_report_id", "party_id", "party_reporter_email", "party_report_time", "party_report_reason"},
+            new String[]{"?", "?", "?", "?", "?"});
+
+    static final TableSpec[] TABLES = {USER_INFO, USER_LOGIN, PARTY_INFO, PARTY_DATETIME, PARTY_LOCATION, PARTY_ADDRESS,
+            ZIP_CODE, PARTY_ATTENDEES, FAVOURITES, USER_REPORTS, PARTY_REPORTS};
+
+    // Independent random streams, one per generated attribute that has to be recomputable on its own.
+    private static final long USER_STREAM = 1, LOGIN_STREAM = 2, PARTY_ID_STREAM = 3, PARTY_STREAM = 4, HOST_STREAM = 5,
+            MAX_GUESTS_STREAM = 6, DATETIME_STREAM = 7, CITY_STREAM = 8, ADDRESS_STREAM = 9, ATTENDEES_STREAM = 10,
+            FAVOURITES_STREAM = 11, USER_REPORTS_STREAM = 12, PARTY_REPORTS_STREAM = 13, LOCATION_STREAM = 14;
+
+    // 2654435761 is prime and larger than any int key count, so (k * SCATTER) mod n visits every key in [0, n) exactly once.
+    private static final long SCATTER = 2654435761L;
+
+    private static final String[] FIRST_NAMES = {"Anna", "Ben", "Clara", "David", "Emma", "Felix", "Greta", "Hannah", "Jonas", "Julia",
+            "Lena", "Leon", "Lukas", "Marie", "Max", "Mia", "Noah", "Paul", "Sophie", "Tim", "Laura", "Elias", "Lea", "Finn"};
+    private static final String[] LAST_NAMES = {"Mueller", "Schmidt", "Schneider", "Fischer", "Weber", "Meyer", "Wagner", "Becker",
+            "Schulz", "Hoffmann", "Koch", "Richter", "Klein", "Wolf", "Neumann", "Schwarz", "Braun", "Zimmermann", "Krueger", "Hartmann"};
+    private static final String[] DOMAINS = {"gmail.com", "web.de", "gmx.de", "outlook.com", "t-online.de", "uni-regensburg.de"};
+    private static final String[] USER_COUNTRIES = {"DE", "DE", "DE", "DE", "DE", "DE", "AT", "CH", "US", "GB", "FR", "NL"};
+
+    private static final String[] PARTY_TYPES = {"HAUSPARTY", "GARTENPARTY", "MOTTOPARTY", "GRILLPARTY", "RAVE", "CLUB", "ROOFTOPPARTY"};
+    private static final String[] TITLE_ADJECTIVES = {"Epic", "Chill", "Legendary", "Cozy", "Wild", "Late Night", "Sunday", "Secret", "Neon", "Retro"};
+    private static final String[] TITLE_NOUNS = {"House Party", "Garden Party", "Theme Night", "BBQ", "Rave", "Club Night", "Rooftop Session"};
+    private static final String[] DESCRIPTION_SENTENCES = {"Bring your friends and your best mood.",
+            "There will be drinks, snacks and good music all night long.",
+            "The DJ plays house, techno and some classics.",
+            "Please be respectful to the neighbours after midnight.",
+            "We have a big garden with a fire pit and plenty of seats.",
+            "Costumes are welcome but not required.",
+            "Food is provided, drinks are bring your own."};
+    private static final String[] GUEST_DESCRIPTIONS = {"Everybody is welcome and accepted", "Students and young professionals",
+            "Music lovers who like to dance", "Friends of friends, no strangers please", "People who enjoy a relaxed evening"};
+    private static final String[] STREETS = {"Hauptstraße", "Schulstraße", "Gartenstraße", "Bahnhofstraße", "Dorfstraße",
+            "Bergstraße", "Lindenstraße", "Agnesstraße", "Adlershelmstraße", "Kirchstraße"};
+    private static final String[] REPORT_REASONS = {"Spamming", "Being obnoxious", "Cyberbullying", "Fake profile",
+            "Inappropriate messages", "Party did not take place", "Misleading party description", "Way too crowded"};
+    private static final String[] ATTENDEE_STATUSES = {"accepted", "accepted", "accepted", "accepted", "attending", "attending", "declined"};
+
+    // City, state, country and centre coordinates (longitude, latitude) used for party addresses and locations.
+    private static final String[][] CITIES = {
+            {"Berlin", "Berlin", "de", "13.404954", "52.520008"},
+            {"Hamburg", "Hamburg", "de", "9.993682", "53.551086"},
+            {"München", "Bavaria", "de", "11.576124", "48.137154"},
+            {"Köln", "North Rhine-Westphalia", "de", "6.953101", "50.935173"},
+            {"Frankfurt am Main", "Hesse", "de", "8.682127", "50.110924"},
+            {"Stuttgart", "Baden-Württemberg", "de", "9.182932", "48.775845"},
+            {"Düsseldorf", "North Rhine-Westphalia", "de", "6.773456", "51.227741"},
+            {"Leipzig", "Saxony", "de", "12.373075", "51.339695"},
+            {"Regensburg", "Bavaria", "de", "12.101624", "49.013432"},
+            {"Dresden", "Saxony", "de", "13.737262", "51.050409"},
+            {"Wien", "Vienna", "at", "16.373819", "48.208174"},
+            {"Zürich", "Zurich", "ch", "8.541694", "47.376887"}};
+
+    public static final class Config
+    {
+        long seed = 42;
+        int users = 10_000;
+        int parties = 2_000;
+        // Attendees per party follow a Zipf distribution over 1..maxAttendees (further capped by max_guests).
+        int maxAttendees = 1000;
+        double attendeeSkew = 1.1;
+        // Party hosts are drawn with Zipf skew over all users, so a few users host many parties.
+        double hostSkew = 0.8;
+        // Favourites per user are Zipf distributed over 0..maxFavourites, favourited parties are Zipf skewed by popularity.
+        int maxFavourites = 20;
+        double favouriteSkew = 1.0;
+        int userReports = 500;
+        int partyReports = 500;
+        // Passwords are bcrypt hashed here instead of with crypt(?, gen_salt('bf')) in the database. 6 is the cost of
+        // gen_salt('bf'), 4 is 4 times faster. With distinctPasswords > 0 users share that many passwords (user % distinctPasswords),
+        // so only that many hashes have to be computed, no matter how many users are generated.
+        int passwordCost = 6;
+        int distinctPasswords = 0;
+        LocalDate today = LocalDate.now();
+
+        // Reads the configuration from "key=value" program arguments, unknown keys are ignored.
+        static Config from(Map<String, String> options)
+        {
+            Config config = new Config();
+            config.seed = Long.parseLong(options.getOrDefault("seed", String.valueOf(config.seed)));
+            config.users = Integer.parseInt(options.getOrDefault("users", String.valueOf(config.users)));
+            config.parties = Integer.parseInt(options.getOrDefault("parties", String.valueOf(config.parties)));
+            config.maxAttendees = Integer.parseInt(options.getOrDefault("maxAttendees", String.valueOf(config.maxAttendees)));
+            config.attendeeSkew = Double.parseDouble(options.getOrDefault("attendeeSkew", String.valueOf(config.attendeeSkew)));
+            config.hostSkew = Double.parseDouble(options.getOrDefault("hostSkew", String.valueOf(config.hostSkew)));
+            config.maxFavourites = Integer.parseInt(options.getOrDefault("maxFavourites", String.valueOf(config.maxFavourites)));
+            config.favouriteSkew = Double.parseDouble(options.getOrDefault("favouriteSkew", String.valueOf(config.favouriteSkew)));
+            config.userReports = Integer.parseInt(options.getOrDefault("userReports", String.valueOf(config.userReports)));
+            config.partyReports = Integer.parseInt(options.getOrDefault("partyReports", String.valueOf(config.partyReports)));
+            config.passwordCost = Integer.parseInt(options.getOrDefault("passwordCost", String.valueOf(config.passwordCost)));
+            config.distinctPasswords = Integer.parseInt(options.getOrDefault("distinctPasswords", String.valueOf(config.distinctPasswords)));
+            return config;
+        }
+
+        // Every setting that decides what is generated, to tell whether data loaded earlier matches this configuration
+        @Override
+        public String toString()
+        {
+            return "seed=" + seed + " users=" + users + " parties=" + parties + " maxAttendees=" + maxAttendees
+                    + " attendeeSkew=" + attendeeSkew + " hostSkew=" + hostSkew + " maxFavourites=" + maxFavourites
+                    + " favouriteSkew=" + favouriteSkew + " userReports=" + userReports + " partyReports=" + partyReports
+                    + " passwordCost=" + passwordCost + " distinctPasswords=" + distinctPasswords + " today=" + today;
+        }
+    }
+
+    private final Config config;
+    private final ZipfSampler attendeeCount;
+    private final ZipfSampler hostRank;
+    private final ZipfSampler favouriteCount;
+    private final ZipfSampler favouriteRank;
+    private final int zipWidth;
+    private final String[] passwordHashes;
+    private final SeededRandom random = new SeededRandom(0);
+    private final SeededRandom keyRandom = new SeededRandom(0);
+
+    public DataGenerator(Config config)
+    {
+        if (config.users < 2 || config.parties < 1) {
+            throw new IllegalArgumentException("At least 2 users and 1 party are needed, got " + config.users + " and " + config.parties);
+        }
+        this.config = config;
+        this.attendeeCount = new ZipfSampler(Math.min(config.maxAttendees, config.users), config.attendeeSkew);
+        this.hostRank = new ZipfSampler(config.users, config.hostSkew);
+        this.favouriteCount = new ZipfSampler(config.maxFavourites + 1, config.favouriteSkew);
+        this.favouriteRank = new ZipfSampler(config.parties, config.favouriteSkew);
+        this.zipWidth = Math.max(5, String.valueOf(config.parties - 1).length());
+        this.passwordHashes = config.distinctPasswords > 0 ? new String[config.distinctPasswords] : null;
+    }
+
+    public Config config()
+    {
+        return config;
+    }
+
+    // Generates every table in foreign key order.
+    public void generate(RowSink sink) throws SQLException
+    {
+        for (TableSpec table : TABLES) {
+            generate(table, 0, keyCount(table), sink);
+        }
+    }
+
+    // Number of keys a table is generated from. Tables with a variable amount of rows per key
+    // (party_attendees per party, favourites per user) produce more rows than keys.
+    public int keyCount(TableSpec table)
+    {
+        if (table == USER_INFO || table == USER_LOGIN || table == FAVOURITES) {
+            return config.users;
+        } else if (table == USER_REPORTS) {
+            return config.userReports;
+        } else if (table == PARTY_REPORTS) {
+            return config.partyReports;
+        }
+        return config.parties;
+    }
+
+    // Generates the rows of a table that belong to the keys from (inclusive) to to (exclusive).
+    // Not thread safe, concurrent callers need their own DataGenerator instance.
+    public void generate(TableSpec table, int from, int to, RowSink sink) throws SQLException
+    {
+        Object[] row = new Object[table.columns().length];
+        sink.begin(table);
+        for (int key = from; key < to; key++) {
+            if (table == PARTY_ATTENDEES) {
+                attendeeRows(key, row, sink);
+            } else if (table == FAVOURITES) {
+                favouriteRows(key, row, sink);
+            } else {
+                fillRow(table, key, row);
+                sink.row(row);
+            }
+        }
+        sink.end();
+    }
+
+    private void fillRow(TableSpec table, int key, Object[] row)
+    {
+        if (table == USER_INFO) {
+            random.reset(config.seed, USER_STREAM, key);
+            int first = random.nextInt(FIRST_NAMES.length);
+            int last = random.nextInt(LAST_NAMES.length);
+            row[0] = email(key);
+            row[1] = FIRST_NAMES[first];
+            row[2] = LAST_NAMES[last];
+            row[3] = (short) (18 + random.nextInt(15) + random.nextInt(30) * random.nextInt(2));
+            row[4] = USER_COUNTRIES[random.nextInt(USER_COUNTRIES.length)];
+        } else if (table == USER_LOGIN) {
+            row[0] = email(key);
+            row[1] = passwordHash(key);
+        } else if (table == PARTY_INFO) {
+            random.reset(config.seed, PARTY_STREAM, key);
+            int type = random.nextInt(PARTY_TYPES.length);
+            row[0] = partyId(key);
+            row[1] = TITLE_ADJECTIVES[random.nextInt(TITLE_ADJECTIVES.length)] + " " + TITLE_NOUNS[type] + " #" + key;
+            row[2] = PARTY_TYPES[type];
+            row[3] = partyDescription(random);
+            row[4] = GUEST_DESCRIPTIONS[random.nextInt(GUEST_DESCRIPTIONS.length)];
+            row[5] = maxGuests(key);
+            row[6] = email(host(key));
+            row[7] = random.nextInt(10) < 7 ? BigDecimal.ZERO : BigDecimal.valueOf(100 + random.nextInt(4900), 2);
+        } else if (table == PARTY_DATETIME) {
+            random.reset(config.seed, DATETIME_STREAM, key);
+            LocalDate start = config.today.plusDays(1 + random.nextInt(365));
+            ZoneOffset offset = ZoneOffset.ofHours(1 + random.nextInt(2));
+            row[0] = partyId(key);
+            row[1] = start;
+            row[2] = OffsetTime.of(LocalTime.of(12 + random.nextInt(11), 15 * random.nextInt(4)), offset);
+            row[3] = start.plusDays(1);
+            row[4] = OffsetTime.of(LocalTime.of(random.nextInt(9), 15 * random.nextInt(4)), offset);
+        } else if (table == PARTY_LOCATION) {
+            String[] city = CITIES[city(key)];
+            random.reset(config.seed, LOCATION_STREAM, key);
+            // Sum of uniforms approximates a normal distribution, so parties cluster around the city centre
+            double dx = (random.nextDouble() + random.nextDouble() + random.nextDouble() - 1.5) * 0.1;
+            double dy = (random.nextDouble() + random.nextDouble() + random.nextDouble() - 1.5) * 0.06;
+            row[0] = partyId(key);
+            row[1] = new PGpoint(Double.parseDouble(city[3]) + dx, Double.parseDouble(city[4]) + dy);
+        } else if (table == PARTY_ADDRESS) {
+            random.reset(config.seed, ADDRESS_STREAM, key);
+            row[0] = partyId(key);
+            row[1] = STREETS[random.nextInt(STREETS.length)];
+            row[2] = String.valueOf(1 + random.nextInt(120));
+            row[3] = zipCode(key);
+        } else if (table == ZIP_CODE) {
+            String[] city = CITIES[city(key)];
+            row[0] = zipCode(key);
+            row[1] = city[0];
+            row[2] = city[1];
+            row[3] = city[2];
+        } else if (table == USER_REPORTS) {
+            random.reset(config.seed, USER_REPORTS_STREAM, key);
+            int reporter = random.nextInt(config.users);
+            int reported = (reporter + 1 + random.nextInt(config.users - 1)) % config.users;
+            OffsetDateTime time = reportTime(random);
+            row[0] = Uuid7.of(time.toInstant().toEpochMilli(), key & 0xFFF, random.nextLong());
+            row[1] = email(reporter);
+            row[2] = email(reported);
+            row[3] = time;
+            row[4] = REPORT_REASONS[random.nextInt(REPORT_REASONS.length)];
+        } else if (table == PARTY_REPORTS) {
+            random.reset(config.seed, PARTY_REPORTS_STREAM, key);
+            int party = random.nextInt(config.parties);
+            int reporter = random.nextInt(config.users);
+            OffsetDateTime time = reportTime(random);
+            row[0] = Uuid7.of(time.toInstant().toEpochMilli(), key & 0xFFF, random.nextLong());
+            row[1] = partyId(party);
+            row[2] = email(reporter);
+            row[3] = time;
+            row[4] = REPORT_REASONS[random.nextInt(REPORT_REASONS.length)];
+        } else {
+            throw new IllegalArgumentException("Unknown table " + table.name());
+        }
+    }
+
+    // Attendees of a party are users start, start + SCATTER, start + 2 * SCATTER, ... (mod users),
+    // which are guaranteed to be distinct without remembering who was already picked.
+    private void attendeeRows(int party, Object[] row, RowSink sink) throws SQLException
+    {
+        random.reset(config.seed, ATTENDEES_STREAM, party);
+        int count = Math.min(attendeeCount.sample(random), maxGuests(party));
+        long start = random.nextInt(config.users);
+        UUID partyId = partyId(party);
+        for (int i = 0; i < count; i++) {
+            row[0] = partyId;
+            row[1] = email((int) ((start + i * SCATTER) % config.users));
+            row[2] = ATTENDEE_STATUSES[random.nextInt(ATTENDEE_STATUSES.length)];
+            sink.row(row);
+        }
+    }
+
+    // Favourited parties are drawn by popularity rank, duplicates within one user are skipped.
+    private void favouriteRows(int user, Object[] row, RowSink sink) throws SQLException
+    {
+        random.reset(config.seed, FAVOURITES_STREAM, user);
+        int count = Math.min(favouriteCount.sample(random) - 1, config.parties);
+        int[] picked = new int[count];
+        String email = email(user);
+        for (int i = 0; i < count; i++) {
+            int party = scatter(favouriteRank.sample(random) - 1, config.parties);
+            boolean duplicate = false;
+            for (int j = 0; j < i && !duplicate; j++) {
+                duplicate = picked[j] == party;
+            }
+            picked[i] = party;
+            if (!duplicate) {
+                row[0] = email;
+                row[1] = partyId(party);
+                sink.row(row);
+            }
+        }
+    }
+
+    public String email(int user)
+    {
+        keyRandom.reset(config.seed, USER_STREAM, user);
+        String first = FIRST_NAMES[keyRandom.nextInt(FIRST_NAMES.length)];
+        String last = LAST_NAMES[keyRandom.nextInt(LAST_NAMES.length)];
+        return new StringBuilder(48).append(first.toLowerCase()).append('.').append(last.toLowerCase()).append(user)
+                .append('@').append(DOMAINS[user % DOMAINS.length]).toString();
+    }
+
+    // The plain text password of a user, for logging in as generated users.
+    public String password(int user)
+    {
+        keyRandom.reset(config.seed, LOGIN_STREAM, passwordKey(user));
+        return randomPassword(keyRandom);
+    }
+
+    // Random version 4 UUID that is stable for a given seed and party index.
+    public UUID partyId(int party)
+    {
+        keyRandom.reset(config.seed, PARTY_ID_STREAM, party);
+        long most = (keyRandom.nextLong() & ~0xF000L) | 0x4000L;
+        long least = (keyRandom.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(most, least);
+    }
+
+    // Zip codes have to be unique per party, as party_address.zip_code is UNIQUE and zip_code references it.
+    public String zipCode(int party)
+    {
+        char[] digits = new char[zipWidth];
+        for (int i = zipWidth - 1; i >= 0; i--, party /= 10) {
+            digits[i] = (char) ('0' + party % 10);
+        }
+        return new String(digits);
+    }
+
+    private int passwordKey(int user)
+    {
+        return config.distinctPasswords > 0 ? user % config.distinctPasswords : user;
+    }
+
+    // bcrypt hash of the user's password with a salt from the same random stream, so hashes are reproducible too
+    private String passwordHash(int user)
+    {
+        int key = passwordKey(user);
+        if (passwordHashes != null && passwordHashes[key] != null) {
+            return passwordHashes[key];
+        }
+        random.reset(config.seed, LOGIN_STREAM, key);
+        String password = randomPassword(random);
+        byte[] salt = new byte[16];
+        for (int i = 0; i < salt.length; i++) {
+            salt[i] = (byte) random.nextInt(256);
+        }
+        String hash = BCrypt.hash(password, config.passwordCost, salt);
+        if (passwordHashes != null) {
+            passwordHashes[key] = hash;
+        }
+        return hash;
+    }
+
+    private int host(int party)
+    {
+        keyRandom.reset(config.seed, HOST_STREAM, party);
+        return scatter(hostRank.sample(keyRandom) - 1, config.users);
+    }
+
+    // Log-uniform between 2 and 1000, so small parties are far more common than big ones.
+    private short maxGuests(int party)
+    {
+        keyRandom.reset(config.seed, MAX_GUESTS_STREAM, party);
+        return (short) Math.max(2, Math.exp(keyRandom.nextDouble() * Math.log(1000)));
+    }
+
+    private int city(int party)
+    {
+        keyRandom.reset(config.seed, CITY_STREAM, party);
+        return keyRandom.nextInt(CITIES.length);
+    }
+
+    private static int scatter(int rank, int n)
+    {
+        return (int) (rank * SCATTER % n);
+    }
+
+    private static String randomPassword(SeededRandom random)
+    {
+        char[] password = new char[12];
+        for (int i = 0; i < password.length; i++) {
+            password[i] = (char) ('!' + random.nextInt(94));
+        }
+        return new String(password);
+    }
+
+    private static String partyDescription(SeededRandom random)
+    {
+        StringBuilder sb = new StringBuilder(300);
+        while (sb.length() < 100) {
+            String sentence = DESCRIPTION_SENTENCES[random.nextInt(DESCRIPTION_SENTENCES.length)];
+            if (sb.length() + sentence.length() + 1 > 300) {
+                break;
+            }
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(sentence);
+        }
+        return sb.toString();
+    }
+
+    private OffsetDateTime reportTime(SeededRandom random)
+    {
+        return config.today.atStartOfDay().atOffset(ZoneOffset.UTC).minusSeconds(1 + random.nextInt(365 * 24 * 3600));
+    }
+}
@@ -0,0 +1,689 @@
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.PGCopyInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// Saves the data of every table in the current schema to a compact columnar file and loads it back with binary COPY,
+// so a seeded data set can be restored in seconds and identically on every run instead of being inserted again.
+// export() reads each table with COPY ... TO STDOUT (FORMAT binary) and stores it column by column: UUIDs and the text key
+// columns (emails and other primary, unique and foreign key columns) as int32 references into dictionaries shared by
+// all tables, enums as one byte per value, points as two packed doubles and everything else in its binary COPY
+// representation. restore() memory maps the column blocks and dictionaries with FileChannel.map and writes the rows as
+// binary COPY straight from the mapped buffers into one reusable buffer, without creating objects per row.
+// Like pg_restore --disable-triggers it truncates the tables and loads them with session_replication_role = replica,
+// so triggers and foreign keys don't fire and the tables can be loaded in any order. That needs a superuser.
+// Missing partitions are created from the bounds in the file. Tables of the file that don't exist are skipped,
+// generated columns are left out and recomputed by the server.
+// The file records the day of the export and a description of the data, e.g. the generator options, which callers can
+// compare before restoring. party_datetime only accepts parties from today on, so restore() moves every date and
+// timestamp by the days passed since the export and the parties keep their distance to today.
+//
+// File layout (big endian): "EVSNAP02", int64 dictionary offset, int32 table count, int32 export day (days since 1970-01-01),
+// the description, the tables and then the dictionaries.
+// Table: name, int16 partition count, (name, bound) per partition, int16 column count, (name, kind, enum labels) per column,
+// int64 row count, then per column an int64 length and the column block. Strings are an int16 length and UTF-8 bytes.
+// Dictionaries: int32 UUID count and 16 bytes per UUID, int32 string count, int32 end offset per string and the UTF-8 bytes.
+public class DataSnapshot
+{
+    private static final byte[] MAGIC = "EVSNAP02".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BINARY_HEADER = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    // Column encodings, null is -1 for RAW, UUID and STRING, 0xFF for ENUM and a 0 flag byte for POINT
+    private static final byte RAW = 0;      // int32 length and the binary COPY value
+    private static final byte UUID_REF = 1; // int32 index into the UUID dictionary
+    private static final byte STRING = 2;   // int32 index into the string dictionary
+    private static final byte ENUM = 3;     // one byte, the index of the label
+    private static final byte POINT = 4;    // flag byte, then x and y as float8
+    private static final byte DATE = 5;     // like RAW, int32 days, moved on restore
+    private static final byte TIMESTAMP = 6; // like RAW, int64 microseconds, moved on restore
+
+    private record Column(String name, byte kind, String[] labels)
+    {
+    }
+
+    private record Partition(String name, String bound)
+    {
+    }
+
+    // A table as read from the header of the file, with the position of each column block
+    private record Table(String name, List<Partition> partitions, Column[] columns, long rows, long[] offsets, long[] lengths)
+    {
+    }
+
+    // The day of the export and the description of the data the file was written with
+    public record Header(LocalDate exported, String data)
+    {
+    }
+
+    // Writes the data of all tables of the current schema to the file and returns the number of rows.
+    // "description" tells what the tables contain and is stored in the file unchanged.
+    public static long export(Connection connection, Path file, String description) throws SQLException, IOException
+    {
+        List<String> tableNames = tables(connection);
+        Map<UUID, Integer> uuids = new HashMap<>();
+        Map<String, Integer> strings = new HashMap<>();
+        CopyManager copyApi = connection.unwrap(PGConnection.class).getCopyAPI();
+        Path directory = file.toAbsolutePath().getParent();
+        long totalRows = 0;
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(header);
+            data.write(MAGIC);
+            data.writeLong(0);
+            data.writeInt(tableNames.size());
+            data.writeInt((int) currentDate(connection).toEpochDay());
+            writeString(data, description);
+            write(out, header);
+
+            for (String tableName : tableNames) {
+                Column[] columns = columns(connection, tableName);
+                List<Partition> partitions = partitions(connection, tableName);
+
+                // Every column goes to its own temporary file first, the blocks are appended to the snapshot once the table is read
+                Path[] blockFiles = new Path[columns.length];
+                DataOutputStream[] blocks = new DataOutputStream[columns.length];
+                List<Map<String, Integer>> labels = new ArrayList<>();
+                try {
+                    for (int i = 0; i < columns.length; i++) {
+                        blockFiles[i] = Files.createTempFile(directory, "snapshot-", ".column");
+                        blocks[i] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(blockFiles[i]), 1 << 16));
+                        Map<String, Integer> indexes = new HashMap<>();
+                        if (columns[i].labels() != null) {
+                            for (int label = 0; label < columns[i].labels().length; label++) {
+                                indexes.put(columns[i].labels()[label], label);
+                            }
+                        }
+                        labels.add(indexes);
+                    }
+
+                    String[] names = Arrays.stream(columns).map(column -> quote(column.name())).toArray(String[]::new);
+                    String sql = "COPY (SELECT " + String.join(", ", names) + " FROM " + quote(tableName) + ") TO STDOUT (FORMAT binary)";
+                    long rows = 0;
+                    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new PGCopyInputStream(copyApi.copyOut(sql)), 1 << 16))) {
+                        byte[] signature = new byte[11];
+                        in.readFully(signature);
+                        if (!Arrays.equals(signature, 0, 11, BINARY_HEADER, 0, 11)) {
+                            throw new IOException("Unexpected binary COPY signature for " + tableName);
+                        }
+                        in.readInt();
+                        in.skipNBytes(in.readInt());
+                        byte[] value = new byte[256];
+                        while (in.readShort() != -1) {
+                            for (int i = 0; i < columns.length; i++) {
+                                int length = in.readInt();
+                                if (length > value.length) {
+                                    value = new byte[Math.max(length, value.length * 2)];
+                                }
+                                if (length > 0) {
+                                    in.readFully(value, 0, length);
+                                }
+                                encode(columns[i].kind(), value, length, blocks[i], uuids, strings, labels.get(i));
+                            }
+                            rows++;
+                        }
+                        // Reads up to the end of the COPY, closing the stream earlier would cancel it
+                        while (in.read() != -1) {
+                        }
+                    }
+                    for (DataOutputStream block : blocks) {
+                        block.close();
+                    }
+
+                    header.reset();
+                    writeString(data, tableName);
+                    data.writeShort(partitions.size());
+                    for (Partition partition : partitions) {
+                        writeString(data, partition.name());
+                        writeString(data, partition.bound());
+                    }
+                    data.writeShort(columns.length);
+                    for (Column column : columns) {
+                        writeString(data, column.name());
+                        data.writeByte(column.kind());
+                        if (column.kind() == ENUM) {
+                            data.writeByte(column.labels().length);
+                            for (String label : column.labels()) {
+                                writeString(data, label);
+                            }
+                        }
+                    }
+                    data.writeLong(rows);
+                    write(out, header);
+                    for (Path blockFile : blockFiles) {
+                        try (FileChannel block = FileChannel.open(blockFile, StandardOpenOption.READ)) {
+                            header.reset();
+                            data.writeLong(block.size());
+                            write(out, header);
+                            for (long position = 0; position < block.size(); ) {
+                                position += block.transferTo(position, block.size() - position, out);
+                            }
+                        }
+                    }
+                    totalRows += rows;
+                } finally {
+                    for (int i = 0; i < columns.length; i++) {
+                        if (blocks[i] != null) {
+                            blocks[i].close();
+                        }
+                        if (blockFiles[i] != null) {
+                            Files.deleteIfExists(blockFiles[i]);
+                        }
+                    }
+                }
+            }
+
+            long dictionaryOffset = out.position();
+            header.reset();
+            UUID[] uuidDictionary = new UUID[uuids.size()];
+            uuids.forEach((uuid, index) -> uuidDictionary[index] = uuid);
+            data.writeInt(uuidDictionary.length);
+            for (UUID uuid : uuidDictionary) {
+                data.writeLong(uuid.getMostSignificantBits());
+                data.writeLong(uuid.getLeastSignificantBits());
+            }
+            byte[][] stringDictionary = new byte[strings.size()][];
+            strings.forEach((string, index) -> stringDictionary[index] = string.getBytes(StandardCharsets.UTF_8));
+            data.writeInt(stringDictionary.length);
+            int end = 0;
+            for (byte[] string : stringDictionary) {
+                end += string.length;
+                data.writeInt(end);
+            }
+            for (byte[] string : stringDictionary) {
+                data.write(string);
+            }
+            write(out, header);
+
+            ByteBuffer offset = ByteBuffer.allocate(8).putLong(0, dictionaryOffset);
+            out.write(offset, MAGIC.length);
+        }
+        return totalRows;
+    }
+
+    // Reads the header of the file without restoring it
+    public static Header header(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer start = readStart(file, channel);
+            start.position(MAGIC.length + 12);
+            return new Header(LocalDate.ofEpochDay(start.getInt()), readString(start));
+        }
+    }
+
+    // Replaces the data of the tables in the file with the rows of the file, in one transaction, and returns the number of rows.
+    // Dates and timestamps are moved by the days between the export and today.
+    public static long restore(Connection connection, Path file) throws SQLException, IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer start = readStart(file, channel);
+            long dictionaryOffset = start.getLong();
+            int tableCount = start.getInt();
+            LocalDate exported = LocalDate.ofEpochDay(start.getInt());
+            readString(start);
+
+            List<Table> tables = new ArrayList<>();
+            long position = start.position();
+            for (int t = 0; t < tableCount; t++) {
+                // A table header is a few hundred bytes, far less than the window
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(1 << 16, size - position));
+                String name = readString(header);
+                List<Partition> partitions = new ArrayList<>();
+                for (int i = header.getShort(); i > 0; i--) {
+                    partitions.add(new Partition(readString(header), readString(header)));
+                }
+                Column[] columns = new Column[header.getShort()];
+                for (int i = 0; i < columns.length; i++) {
+                    String column = readString(header);
+                    byte kind = header.get();
+                    String[] labels = null;
+                    if (kind == ENUM) {
+                        labels = new String[header.get() & 0xFF];
+                        for (int label = 0; label < labels.length; label++) {
+                            labels[label] = readString(header);
+                        }
+                    }
+                    columns[i] = new Column(column, kind, labels);
+                }
+                long rows = header.getLong();
+                position += header.position();
+                long[] offsets = new long[columns.length];
+                long[] lengths = new long[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    lengths[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, 8).getLong();
+                    offsets[i] = position + 8;
+                    position = offsets[i] + lengths[i];
+                }
+                tables.add(new Table(name, partitions, columns, rows, offsets, lengths));
+            }
+
+            ByteBuffer counts = channel.map(FileChannel.MapMode.READ_ONLY, dictionaryOffset, 4);
+            int uuidCount = counts.getInt();
+            ByteBuffer uuids = channel.map(FileChannel.MapMode.READ_ONLY, dictionaryOffset + 4, uuidCount * 16L);
+            long stringsOffset = dictionaryOffset + 4 + uuidCount * 16L;
+            int stringCount = channel.map(FileChannel.MapMode.READ_ONLY, stringsOffset, 4).getInt();
+            IntBuffer stringEnds = channel.map(FileChannel.MapMode.READ_ONLY, stringsOffset + 4, stringCount * 4L).asIntBuffer();
+            long blobOffset = stringsOffset + 4 + stringCount * 4L;
+            ByteBuffer strings = channel.map(FileChannel.MapMode.READ_ONLY, blobOffset, size - blobOffset);
+
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                Set<String> existing = new HashSet<>(tables(connection));
+                List<Table> restored = new ArrayList<>();
+                for (Table table : tables) {
+                    if (existing.contains(table.name())) {
+                        restored.add(table);
+                    } else {
+                        System.out.println("Skipping " + table.name() + ", the table does not exist");
+                    }
+                }
+                statement.executeUpdate("SET LOCAL session_replication_role = replica");
+                if (!restored.isEmpty()) {
+                    statement.executeUpdate("TRUNCATE " + String.join(", ", restored.stream().map(table -> quote(table.name())).toList()) + " CASCADE");
+                }
+                for (Table table : restored) {
+                    for (Partition partition : table.partitions()) {
+                        statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + quote(partition.name()) + " PARTITION OF "
+                                + quote(table.name()) + " " + partition.bound());
+                    }
+                }
+
+                CopyManager copyApi = connection.unwrap(PGConnection.class).getCopyAPI();
+                int shift = (int) (currentDate(connection).toEpochDay() - exported.toEpochDay());
+                long totalRows = 0;
+                for (Table table : restored) {
+                    copy(copyApi, channel, table, uuids, stringEnds, strings, shift);
+                    totalRows += table.rows();
+                }
+                connection.commit();
+                return totalRows;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    // Writes the rows of one table from its mapped column blocks into a binary COPY, dates and timestamps moved by "shift" days
+    private static void copy(CopyManager copyApi, FileChannel channel, Table table, ByteBuffer uuids, IntBuffer stringEnds,
+                             ByteBuffer strings, int shift) throws SQLException, IOException
+    {
+        long shiftMicros = shift * 86_400_000_000L;
+        Column[] columns = table.columns();
+        ByteBuffer[] blocks = new ByteBuffer[columns.length];
+        byte[][][] labels = new byte[columns.length][][];
+        for (int i = 0; i < columns.length; i++) {
+            if (table.lengths()[i] > Integer.MAX_VALUE) {
+                throw new IOException("Column " + columns[i].name() + " of " + table.name() + " is too large to be mapped");
+            }
+            blocks[i] = channel.map(FileChannel.MapMode.READ_ONLY, table.offsets()[i], table.lengths()[i]);
+            if (columns[i].kind() == ENUM) {
+                labels[i] = Arrays.stream(columns[i].labels()).map(label -> label.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+            }
+        }
+
+        String[] names = Arrays.stream(columns).map(column -> quote(column.name())).toArray(String[]::new);
+        CopyIn copy = copyApi.copyIn("COPY " + quote(table.name()) + " (" + String.join(", ", names) + ") FROM STDIN (FORMAT binary)");
+        try {
+            byte[] buffer = new byte[1 << 16];
+            System.arraycopy(BINARY_HEADER, 0, buffer, 0, BINARY_HEADER.length);
+            int position = BINARY_HEADER.length;
+            for (long row = 0; row < table.rows(); row++) {
+                if (position + 2 > buffer.length) {
+                    copy.writeToCopy(buffer, 0, position);
+                    position = 0;
+                }
+                buffer[position++] = (byte) (columns.length >>> 8);
+                buffer[position++] = (byte) columns.length;
+                for (int i = 0; i < columns.length; i++) {
+                    // Reads the length first, so the buffer can be flushed or grown before the value is written
+                    ByteBuffer block = blocks[i];
+                    byte kind = columns[i].kind();
+                    int reference = 0;
+                    int length;
+                    if (kind == RAW || kind == DATE || kind == TIMESTAMP) {
+                        length = block.getInt();
+                    } else if (kind == UUID_REF) {
+                        reference = block.getInt();
+                        length = reference < 0 ? -1 : 16;
+                    } else if (kind == STRING) {
+                        reference = block.getInt();
+                        length = reference < 0 ? -1 : stringEnds.get(reference) - (reference == 0 ? 0 : stringEnds.get(reference - 1));
+                    } else if (kind == ENUM) {
+                        reference = block.get() & 0xFF;
+                        length = reference == 0xFF ? -1 : labels[i][reference].length;
+                    } else {
+                        length = block.get() == 0 ? -1 : 16;
+                    }
+
+                    int needed = 4 + Math.max(length, 0);
+                    if (position + needed > buffer.length) {
+                        copy.writeToCopy(buffer, 0, position);
+                        position = 0;
+                        if (needed > buffer.length) {
+                            buffer = new byte[needed];
+                        }
+                    }
+                    buffer[position++] = (byte) (length >>> 24);
+                    buffer[position++] = (byte) (length >>> 16);
+                    buffer[position++] = (byte) (length >>> 8);
+                    buffer[position++] = (byte) length;
+                    if (length > 0) {
+                        if (kind == DATE && length == 4) {
+                            // Infinity is stored as the largest and smallest value and stays as it is
+                            int days = block.getInt();
+                            putLong(buffer, position, days == Integer.MAX_VALUE || days == Integer.MIN_VALUE ? days : days + shift, 4);
+                        } else if (kind == TIMESTAMP && length == 8) {
+                            long micros = block.getLong();
+                            putLong(buffer, position, micros == Long.MAX_VALUE || micros == Long.MIN_VALUE ? micros : micros + shiftMicros, 8);
+                        } else if (kind == RAW || kind == POINT || kind == DATE || kind == TIMESTAMP) {
+                            block.get(buffer, position, length);
+                        } else if (kind == UUID_REF) {
+                            uuids.get(reference * 16, buffer, position, 16);
+                        } else if (kind == STRING) {
+                            strings.get(reference == 0 ? 0 : stringEnds.get(reference - 1), buffer, position, length);
+                        } else {
+                            System.arraycopy(labels[i][reference], 0, buffer, position, length);
+                        }
+                        position += length;
+                    }
+                }
+            }
+            if (position + 2 > buffer.length) {
+                copy.writeToCopy(buffer, 0, position);
+                position = 0;
+            }
+            buffer[position++] = (byte) 0xFF;
+            buffer[position++] = (byte) 0xFF;
+            copy.writeToCopy(buffer, 0, position);
+            copy.endCopy();
+        } finally {
+            if (copy.isActive()) {
+                copy.cancelCopy();
+            }
+        }
+    }
+
+    // Appends one binary COPY value to its column block
+    private static void encode(byte kind, byte[] value, int length, DataOutputStream block, Map<UUID, Integer> uuids,
+                               Map<String, Integer> strings, Map<String, Integer> labels) throws IOException
+    {
+        if (kind == RAW || kind == DATE || kind == TIMESTAMP) {
+            block.writeInt(length);
+            if (length > 0) {
+                block.write(value, 0, length);
+            }
+        } else if (kind == UUID_REF) {
+            if (length < 0) {
+                block.writeInt(-1);
+            } else {
+                ByteBuffer bytes = ByteBuffer.wrap(value, 0, 16);
+                UUID uuid = new UUID(bytes.getLong(), bytes.getLong());
+                block.writeInt(uuids.computeIfAbsent(uuid, key -> uuids.size()));
+            }
+        } else if (kind == STRING) {
+            if (length < 0) {
+                block.writeInt(-1);
+            } else {
+                String string = new String(value, 0, length, StandardCharsets.UTF_8);
+                block.writeInt(strings.computeIfAbsent(string, key -> strings.size()));
+            }
+        } else if (kind == ENUM) {
+            block.writeByte(length < 0 ? 0xFF : labels.get(new String(value, 0, length, StandardCharsets.UTF_8)));
+        } else {
+            block.writeByte(length < 0 ? 0 : 1);
+            if (length > 0) {
+                block.write(value, 0, 16);
+            }
+        }
+    }
+
+    // ### Catalog ###
+
+    // Ordinary and partitioned tables of the current schema, partitions are exported through their parent
+    private static List<String> tables(Connection connection) throws SQLException
+    {
+        List<String> tables = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("""
+                     SELECT c.relname FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+                     WHERE n.nspname = current_schema() AND c.relkind IN ('r', 'p') AND NOT c.relispartition ORDER BY c.relname
+                     """)) {
+            while (rs.next()) {
+                tables.add(rs.getString(1));
+            }
+        }
+        return tables;
+    }
+
+    private static Column[] columns(Connection connection, String table) throws SQLException
+    {
+        Set<String> keyColumns = new HashSet<>();
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT a.attname FROM pg_constraint k JOIN pg_attribute a ON a.attrelid = k.conrelid AND a.attnum = ANY (k.conkey)
+                WHERE k.conrelid = ?::regclass AND k.contype IN ('p', 'u', 'f')
+                """)) {
+            statement.setString(1, quote(table));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    keyColumns.add(rs.getString(1));
+                }
+            }
+        }
+
+        List<Column> columns = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT a.attname, t.typname, t.typtype,
+                       (SELECT array_agg(e.enumlabel ORDER BY e.enumsortorder) FROM pg_enum e WHERE e.enumtypid = t.oid)
+                FROM pg_attribute a JOIN pg_type t ON t.oid = a.atttypid
+                WHERE a.attrelid = ?::regclass AND a.attnum > 0 AND NOT a.attisdropped AND a.attgenerated = ''
+                ORDER BY a.attnum
+                """)) {
+            statement.setString(1, quote(table));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    String name = rs.getString(1);
+                    String type = rs.getString(2);
+                    String[] labels = rs.getArray(4) == null ? null : (String[]) rs.getArray(4).getArray();
+                    if (type.equals("uuid")) {
+                        columns.add(new Column(name, UUID_REF, null));
+                    } else if (labels != null && labels.length < 0xFF) {
+                        columns.add(new Column(name, ENUM, labels));
+                    } else if (type.equals("point")) {
+                        columns.add(new Column(name, POINT, null));
+                    } else if (type.equals("date")) {
+                        columns.add(new Column(name, DATE, null));
+                    } else if (type.equals("timestamp") || type.equals("timestamptz")) {
+                        columns.add(new Column(name, TIMESTAMP, null));
+                    } else if (keyColumns.contains(name) && (type.equals("varchar") || type.equals("text") || type.equals("bpchar"))) {
+                        columns.add(new Column(name, STRING, null));
+                    } else {
+                        columns.add(new Column(name, RAW, null));
+                    }
+                }
+            }
+        }
+        return columns.toArray(new Column[0]);
+    }
+
+    // The partitions of a partitioned table and their bounds, like "FOR VALUES FROM (...) TO (...)" or "DEFAULT"
+    private static List<Partition> partitions(Connection connection, String table) throws SQLException
+    {
+        List<Partition> partitions = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("""
+                SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = ?::regclass AND c.relispartition ORDER BY c.relname
+                """)) {
+            statement.setString(1, quote(table));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    partitions.add(new Partition(rs.getString(1), rs.getString(2)));
+                }
+            }
+        }
+        return partitions;
+    }
+
+    // The date of the server, which the CHECK constraints compare with
+    private static LocalDate currentDate(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("SELECT CURRENT_DATE")) {
+            rs.next();
+            return rs.getObject(1, LocalDate.class);
+        }
+    }
+
+    // ### Helpers ###
+
+    // Maps the start of the file and reads past the magic bytes
+    private static ByteBuffer readStart(Path file, FileChannel channel) throws IOException
+    {
+        ByteBuffer start = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(1 << 16, channel.size()));
+        byte[] magic = new byte[MAGIC.length];
+        if (start.remaining() < MAGIC.length + 16) {
+            throw new IOException(file + " is not a data snapshot");
+        }
+        start.get(magic);
+        if (Arrays.equals(magic, 0, 6, MAGIC, 0, 6) && !Arrays.equals(magic, MAGIC)) {
+            throw new IOException(file + " was written by an older version of DataSnapshot, export it again");
+        }
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException(file + " is not a data snapshot");
+        }
+        return start;
+    }
+
+    // Writes the lowest "bytes" bytes of the value big endian
+    private static void putLong(byte[] buffer, int position, long value, int bytes)
+    {
+        for (int i = 0; i < bytes; i++) {
+            buffer[position + i] = (byte) (value >>> (8 * (bytes - 1 - i)));
+        }
+    }
+
+    private static void write(FileChannel out, ByteArrayOutputStream bytes) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String quote(String identifier)
+    {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    // Exports the current data to "file" (default evenue.snapshot) and restores it again, then does the same with
+    // pg_dump --format=custom and pg_restore as baseline and prints the file sizes and times.
+    // "mode=export" or "mode=restore" only runs that step, "baseline=false" skips pg_dump.
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        Path file = Path.of(options.getOrDefault("file", "evenue.snapshot"));
+        String mode = options.getOrDefault("mode", "compare");
+
+        try (Connection connection = DatabaseTest.connect(DatabaseTest.driverProperties(options))) {
+            if (!mode.equals("restore")) {
+                long start = System.nanoTime();
+                // Only the tables are known here, not how their data was made
+                long rows = export(connection, file, "unknown");
+                System.out.printf("Exported %d rows to %s (%d bytes) in %d ms%n", rows, file, Files.size(file), (System.nanoTime() - start) / 1_000_000);
+            }
+            if (!mode.equals("export")) {
+                long start = System.nanoTime();
+                long rows = restore(connection, file);
+                System.out.printf("Restored %d rows from %s in %d ms%n", rows, file, (System.nanoTime() - start) / 1_000_000);
+            }
+            if (mode.equals("compare") && !"false".equals(options.get("baseline"))) {
+                Path dump = Path.of(file + ".dump");
+                String schema;
+                try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery("SELECT current_schema()")) {
+                    rs.next();
+                    schema = rs.getString(1);
+                }
+                long start = System.nanoTime();
+                run("pg_dump", "--data-only", "--format=custom", "--schema=" + schema, "--file=" + dump);
+                System.out.printf("pg_dump wrote %s (%d bytes) in %d ms%n", dump, Files.size(dump), (System.nanoTime() - start) / 1_000_000);
+
+                List<String> tables = tables(connection);
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("TRUNCATE " + String.join(", ", tables.stream().map(DataSnapshot::quote).toList()) + " CASCADE");
+                }
+                start = System.nanoTime();
+                run("pg_restore", "--data-only", "--disable-triggers", "--single-transaction", dump.toString());
+                System.out.printf("pg_restore restored %s in %d ms%n", dump, (System.nanoTime() - start) / 1_000_000);
+            }
+        } catch (SQLException | IOException | InterruptedException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+
+    // Runs a PostgreSQL client tool against the database of DatabaseTest.URL
+    private static void run(String tool, String... arguments) throws IOException, InterruptedException
+    {
+        String host = "localhost";
+        String port = "5432";
+        if (DatabaseTest.URL.startsWith("jdbc:postgresql://")) {
+            String authority = DatabaseTest.URL.substring("jdbc:postgresql://".length(), DatabaseTest.URL.indexOf('/', "jdbc:postgresql://".length()));
+            int colon = authority.lastIndexOf(':');
+            host = colon < 0 ? authority : authority.substring(0, colon);
+            port = colon < 0 ? port : authority.substring(colon + 1);
+        }
+        List<String> command = new ArrayList<>(List.of(tool, "--host=" + host, "--port=" + port, "--username=" + DatabaseTest.USER,
+                "--dbname=" + SchemaReset.databaseName(DatabaseTest.URL)));
+        command.addAll(List.of(arguments));
+        ProcessBuilder builder = new ProcessBuilder(command).inheritIO();
+        builder.environment().put("PGPASSWORD", DatabaseTest.PASSWORD);
+        int exitCode = builder.start().waitFor();
+        if (exitCode != 0) {
+            throw new IOException(tool + " exited with " + exitCode);
+        }
+    }
+}
@@ -1,6 +1,14 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
 // The following Postgresql JDBC database is used to store data concerning the Evenue App Prototype created for a course at the University of Regensburg
 // called "Anwendungsprogrammierung", where the Development of mobile android applications is taught.
 // In short, the app provides a user with the tools to find and create house-parties and/or other types of parties.
@@ -9,12 +17,33 @@ import java.util.List;
 // This project was created using the IntelliJ IDEA IDE in June 2022, and the Postgresql JDBC driver version 42.5.1. Newer versions of the driver may or may not work,
 // so it is recommended to use the version mentioned above.
 // Disclaimer: Not all of what is seen in the showcase video matches the structure of the database. The database is merely supposed to be based on the app.
+// Program arguments are optional "key=value" pairs. "data=generated" replaces the sample rows of insertData() with a synthetic
+// data set from the DataGenerator (see DataGenerator.Config for its keys), "loader=insert|copy|copy-binary" picks how
+// the generated rows are written (see createLoader()), "threads=N" loads them over N pooled connections in parallel
+// (see ParallelLoader), "indexes=true" creates the secondary indexes of IndexAdvisor after loading,
+// "aggregates=true" installs the maintained counters of AttendanceAggregates, "search=true" adds the full text search
+// column and indexes of PartySearch, "queries=false" skips queryDatabase().
+// "reset=truncate|template" replaces recreating all tables on every run with a single TRUNCATE or a copy of a template
+// database (see SchemaReset). "metrics=<file>" times every statement on the main connection and writes per query latency,
+// rows, bytes and round trips to the file, as JSON for a ".json" file and in the Prometheus text format otherwise.
+// Statements slower than "slowMillis" (default 100) are logged with their bind parameters (see QueryMetrics).
+// "snapshot=<file>" restores the data from a DataSnapshot file instead of inserting it, or saves the inserted data to the
+// file if it does not exist yet, so every later run starts from the same data set. A file written with other "data" or
+// generator options is replaced by an export of the data of this run.
+// Every "pg.<name>=<value>" argument is passed on to the driver as connection property, e.g. "pg.reWriteBatchedInserts=true".
 public class DatabaseTest
 {
+    // Can be overridden with -Devenue.url=..., -Devenue.user=... and -Devenue.password=..., e.g. to run against a throwaway cluster
+    static final String URL = System.getProperty("evenue.url", "jdbc:postgresql:DatabaseTestDatabase");
+    static final String USER = System.getProperty("evenue.user", "postgres");
+    static final String PASSWORD = System.getProperty("evenue.password", "DatabaseTestPassword");
+
     private static Connection connection;
 
     public static void main(String[] args)
     {
+        Map<String, String> options = parseOptions(args);
+
         // Uses JDBC driver version 42.5.1
         try {
             Class.forName("org.postgresql.Driver");
@@ -22,27 +51,92 @@ public class DatabaseTest
             System.out.println("Exception: " + e.getMessage()); }
 
         try {
-            connection = DriverManager.getConnection
-                    ("jdbc:postgresql:DatabaseTestDatabase", "postgres", "DatabaseTestPassword");
+            String reset = options.getOrDefault("reset", "structure");
+            // The template already contains the generated data and the indexes
+            boolean fromTemplate = reset.equals("template");
+            long start = System.nanoTime();
+            if (fromTemplate) {
+                SchemaReset.resetFromTemplate(options);
+            }
 
-            structureDatabase();
-            truncateTables();
-            insertData();
-            queryDatabase();
+            Properties properties = PartyRepository.driverProperties();
+            properties.putAll(driverProperties(options));
+            QueryMetrics metrics = options.containsKey("metrics") ? QueryMetrics.from(options) : null;
+            connection = metrics == null ? connect(properties) : InstrumentedConnection.connect(properties, metrics);
+
+            if (reset.equals("truncate")) {
+                SchemaReset.ensureSchema(connection);
+                truncateTables(connection);
+            } else if (!fromTemplate) {
+                // Recreates every table, so there is nothing left to truncate
+                structureDatabase(connection);
+            }
+            System.out.println("Reset database (" + reset + ") in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+            Path snapshot = options.containsKey("snapshot") ? Path.of(options.get("snapshot")) : null;
+            boolean snapshotCurrent = false;
+            if (snapshot != null && Files.exists(snapshot)) {
+                DataSnapshot.Header header = DataSnapshot.header(snapshot);
+                snapshotCurrent = header.data().equals(snapshotData(options, header.exported()));
+                if (!snapshotCurrent) {
+                    System.out.println(snapshot + " holds other data (" + header.data() + "), exporting it again");
+                }
+            }
+            if (snapshotCurrent && !fromTemplate) {
+                start = System.nanoTime();
+                long rows = DataSnapshot.restore(connection, snapshot);
+                System.out.println("Restored " + rows + " rows from " + snapshot + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            } else if (!"generated".equals(options.get("data"))) {
+                insertData(connection);
+            } else if (!fromTemplate) {
+                generateData(connection, options);
+            }
+            if (snapshot != null && !snapshotCurrent) {
+                DataSnapshot.export(connection, snapshot, snapshotData(options, LocalDate.now()));
+            }
+            if ("true".equals(options.get("indexes")) && !fromTemplate) {
+                IndexAdvisor.createIndexes(connection);
+            }
+            if ("true".equals(options.get("aggregates"))) {
+                AttendanceAggregates.install(connection);
+            }
+            if ("true".equals(options.get("search"))) {
+                PartySearch.install(connection);
+            }
+            if (!"false".equals(options.get("queries"))) {
+                queryDatabase(connection);
+            }
 
             connection.close();
-        } catch (SQLException e) {
+            if (metrics != null) {
+                metrics.write(Path.of(options.get("metrics")));
+            }
+        } catch (SQLException | IOException e) {
             System.out.println("Exception: " + e.getMessage());
         }
     }
 
-    private static void structureDatabase()
+    // Opens a new connection to the test database. Additional driver properties, like reWriteBatchedInserts, are passed on.
+    static Connection connect(Properties properties) throws SQLException
+    {
+        Properties all = new Properties();
+        all.putAll(properties);
+        all.setProperty("user", USER);
+        all.setProperty("password", PASSWORD);
+        return DriverManager.getConnection(URL, all);
+    }
+
+    static void structureDatabase(Connection connection)
     {
         try {
             Statement statement = connection.createStatement();
 
             statement.executeUpdate("CREATE EXTENSION IF NOT EXISTS \"uuid-ossp\"");
             statement.executeUpdate("CREATE EXTENSION IF NOT EXISTS pgcrypto");
+            // Drops the tables the optional features add on top of the schema first: the counters of AttendanceAggregates
+            // and the party_slots of RsvpService. Dropping the tables below with CASCADE would only remove their foreign keys
+            // and keep their rows, which then belong to users and parties that no longer exist. The features recreate them in their install().
+            statement.executeUpdate("DROP TABLE IF EXISTS party_attendee_counts, party_attendee_count_deltas, host_party_counts, party_slots");
             // Drops table if it already exists, together with all corresponding records
             // in any child tables the table has a relationship to,
             // so that orphan data is prevented and the database remains consistent.
@@ -75,6 +169,7 @@ public class DatabaseTest
 
             // Creates the user_login table
             // "email" references the email from user_info, so that each user activity has a corresponding user_login, can't be null.
+            // Is primary key, as every user has exactly one login, which LoginService looks up and upserts by email.
             // "password" of the corresponding account. Inserted as TEXT and then encrypted using pgcrypto extension.
             // password is encrypted using a randomly generated sort as per the blowfish algorithm. On login the password that the user inputs
             // is encrypted and checked for equivalence to the stored encrypted password. If equivalent, the password is correct.
@@ -84,46 +179,73 @@ public class DatabaseTest
             statement.executeUpdate
                     ("""
                         CREATE TABLE user_login (
-                        email VARCHAR(255) NOT NULL REFERENCES user_info(email),
+                        email VARCHAR(255) NOT NULL PRIMARY KEY REFERENCES user_info(email),
                         password TEXT NOT NULL CHECK (LENGTH(password) >= 8))
                         """);
 
             statement.executeUpdate
                     ("DROP TABLE IF EXISTS user_activity CASCADE");
 
+            statement.executeUpdate("DROP TYPE IF EXISTS ACTIVITY_TYPE CASCADE");
+
+            // Creates an "ACTIVITY_TYPE" Enum for the two kinds of user activity, hosting and attending a party.
+            statement.executeUpdate("CREATE TYPE ACTIVITY_TYPE AS ENUM ('hosted', 'attended')");
+
             // Creates the user_activity table.
+            // Every row is one party a user has hosted or attended, instead of one row per user with arrays of party ids,
+            // so recording an activity is a plain INSERT and never rewrites a user's whole history (see UserActivity).
             // "email" references the email from user_info, so that each user activity has a corresponding user, can't be null.
-            // "parties_created" UUID array to store the ID's of parties that a user has created, can't be null.
-            // "parties_joined" UUID array to store the ID's of parties that a user has attended, can't be null.
+            // "activity" whether the user hosted or attended the party (See ACTIVITY_TYPE Enum above), can't be null.
+            // "party_id" of the party. Not a reference, so the history is kept when a party is deleted. Can't be null.
+            // "recorded_at" when the activity was recorded. Defaults to the current time.
+            // The primary key (email, activity, party_id) answers "parties a user hosted / attended" with a range scan
+            // and "has the user attended this party" with a single index lookup.
 
-            // ### Table user_activity: [email (ref.) | parties_hosted[] | parties_attended[]] ###
+            // ### Table user_activity: [email (ref.) | activity | party_id | recorded_at] ###
             statement.executeUpdate
                     ("""
                             CREATE TABLE user_activity
                             (email VARCHAR(255) NOT NULL REFERENCES user_info(email),
-                            parties_hosted UUID[],
-                            parties_attended UUID[])
+                            activity ACTIVITY_TYPE NOT NULL,
+                            party_id UUID NOT NULL,
+                            recorded_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                            PRIMARY KEY (email, activity, party_id))
                             """);
             statement.executeUpdate
                     ("DROP TABLE IF EXISTS user_reports CASCADE");
 
             // Creates the user_reports table
             // "user_report_id" to identify each unique user report by a uniquely generated UUID, can't be null.
-            // The UUI is generated using the uuid_generate_v4() method from the uuid-ossp extension. -> https://www.postgresql.org/docs/current/uuid-ossp.html
+            // The UUID defaults to uuid_generate_v7() below, a time ordered version 7 UUID like the ones of Uuid7.
             // "user_reporter_email" to identify the user who made the user report, can't be null.
             // "user_reported_email" to identify the user who was reported, can't be null.
             // "user_report_time" to store the date, time and timezone of when the user report was made. Can't be null.
             // "user_report_reason" - 500 Character user report reason text as per in the app, so that each report can be explained in detail, can't be null.
-
-            // ### Table user_reports: [user_report_id | user_reporter_email (ref.) | user_reported_email (ref.) | user_report_time | user_report_reason] ###
+            // "user_report_reviewed_at" is set once a moderator has handled the report, null while it is waiting in the moderation queue.
+            // The table is partitioned by month of user_report_time (see ReportPartitions), so the primary key has to include it.
+            // Reports written by the ReportIngestor get their version 7 UUIDs from Uuid7, all other inserts from the default.
+
+            // Version 7 UUID (RFC 9562) from SQL: the 48 bit Unix millisecond timestamp overlaid on a random UUID, whose
+            // version bits are then changed from 4 (0100) to 7 (0111). Unlike Uuid7 there is no counter within a millisecond.
+            statement.executeUpdate("""
+                    CREATE OR REPLACE FUNCTION uuid_generate_v7() RETURNS UUID LANGUAGE sql VOLATILE AS $$
+                        SELECT encode(set_bit(set_bit(overlay(uuid_send(gen_random_uuid())
+                            PLACING substring(int8send(floor(extract(epoch FROM clock_timestamp()) * 1000)::BIGINT) FROM 3) FROM 1 FOR 6),
+                            52, 1), 53, 1), 'hex')::UUID
+                    $$""");
+
+            // ### Table user_reports: [user_report_id | user_reporter_email (ref.) | user_reported_email (ref.) | user_report_time | user_report_reason | user_report_reviewed_at] ###
             statement.executeUpdate
                     ("""
                             CREATE TABLE user_reports
-                            (user_report_id UUID DEFAULT uuid_generate_v4() PRIMARY KEY,
+                            (user_report_id UUID DEFAULT uuid_generate_v7(),
                             user_reporter_email VARCHAR(255) NOT NULL REFERENCES user_info(email),
                             user_reported_email VARCHAR(255) NOT NULL REFERENCES user_info(email),
                             user_report_time TIMESTAMPTZ NOT NULL,
-                            user_report_reason VARCHAR(500) NOT NULL)
+                            user_report_reason VARCHAR(500) NOT NULL,
+                            user_report_reviewed_at TIMESTAMPTZ,
+                            PRIMARY KEY (user_report_id, user_report_time))
+                            PARTITION BY RANGE (user_report_time)
                             """);
 
             statement.executeUpdate("DROP TYPE IF EXISTS PARTY_TYPE CASCADE");
@@ -165,14 +287,16 @@ public class DatabaseTest
             // Creates the favourites table.
             // "email" references a specific user.
             // "party_id" references a specific party.
+            // "favourited_at" when the party was favourited, lets the PartyRecommender pick up new favourites incrementally.
             // The favourites table can be used to find out about user preferences based on favourited parties and track the amount of favourites a party receives/has.
 
-            // ### Table favourites: [email (ref.) | party_id (ref.)] ###
+            // ### Table favourites: [email (ref.) | party_id (ref.) | favourited_at] ###
             statement.executeUpdate
                     ("""
                             CREATE TABLE favourites
                             (email VARCHAR(255) NOT NULL REFERENCES user_info(email),
-                            party_id UUID NOT NULL REFERENCES party_info(party_id) ON DELETE CASCADE)
+                            party_id UUID NOT NULL REFERENCES party_info(party_id) ON DELETE CASCADE,
+                            favourited_at TIMESTAMPTZ NOT NULL DEFAULT now())
                             """);
 
             statement.executeUpdate
@@ -278,14 +402,16 @@ public class DatabaseTest
             // "party_id" used to identify the party for which the attendees are stored, can't be null.
             // "attendee_email" used to idetify all the party attendees. References the users email, can't be null.
             // "attendee_status" used to track the status ot the attendee.
+            // "attendee_since" when the user was added to the party, like favourited_at for the PartyRecommender.
 
-            // ### Table party_attendees: [party_id (ref.) | attendee_email | status] ###
+            // ### Table party_attendees: [party_id (ref.) | attendee_email | status | attendee_since] ###
             statement.executeUpdate
                     ("""
                             CREATE Table party_attendees
                             (party_id UUID NOT NULL REFERENCES party_info(party_id),
                             attendee_email VARCHAR(255) NOT NULL REFERENCES user_info(email),
-                            attendee_status ATTENDEE_STATUS NOT NULL)
+                            attendee_status ATTENDEE_STATUS NOT NULL,
+                            attendee_since TIMESTAMPTZ NOT NULL DEFAULT now())
                             """);
 
             statement.executeUpdate
@@ -297,17 +423,33 @@ public class DatabaseTest
             // "party_id" to identify which party has been reported. Can't be null.
             // "party_report_time" to store the date, time and timezone of when the party report was made. Can't be null.
             // "party_report_reason" - 500 Character party report reason text as per in the app, so that each report can be explained in detail.
+            // "party_report_reviewed_at" and the monthly partitions like in user_reports.
 
-            // ### Table party_reports: [party_report_id | party_id (ref.) | party_reporter_email | party_report_time | party_report_reason] ###
+            // ### Table party_reports: [party_report_id | party_id (ref.) | party_reporter_email | party_report_time | party_report_reason | party_report_reviewed_at] ###
             statement.executeUpdate
                     ("""
                             CREATE TABLE party_reports
-                            (party_report_id UUID DEFAULT uuid_generate_v4() PRIMARY KEY,
+                            (party_report_id UUID DEFAULT uuid_generate_v7(),
                             party_id UUID NOT NULL REFERENCES party_info(party_id),
                             party_reporter_email VARCHAR(255) NOT NULL REFERENCES user_info(email),
                             party_report_time TIMESTAMPTZ NOT NULL,
-                            party_report_reason VARCHAR(500) NOT NULL)
+                            party_report_reason VARCHAR(500) NOT NULL,
+                            party_report_reviewed_at TIMESTAMPTZ,
+                            PRIMARY KEY (party_report_id, party_report_time))
+                            PARTITION BY RANGE (party_report_time)
                             """);
+
+            // Report partitions: a default partition for reports outside of the monthly ones (like the old sample reports),
+            // the moderation queue index on the unreviewed reports, and the monthly partitions from 13 months ago to 3 months ahead.
+            for (String table : new String[]{"user_reports", "party_reports"}) {
+                String prefix = table.substring(0, table.length() - 1);
+                statement.executeUpdate("CREATE TABLE " + table + "_default PARTITION OF " + table + " DEFAULT");
+                statement.executeUpdate("CREATE INDEX " + table + "_unreviewed_idx ON " + table + " (" + prefix + "_time) WHERE " + prefix + "_reviewed_at IS NULL");
+            }
+            statement.executeUpdate(ReportPartitions.CREATE_FUNCTION);
+            statement.execute("SELECT create_report_partitions((CURRENT_DATE - INTERVAL '13 months')::date, (CURRENT_DATE + INTERVAL '3 months')::date)");
+            // Adds the new tables to the publication of an installed ChangeFeed again
+            statement.executeUpdate(ChangeFeed.REPUBLISH);
             statement.close();
 
         } catch (SQLException e) {
@@ -315,7 +457,7 @@ public class DatabaseTest
         }
     }
 
-    private static void insertData()
+    static void insertData(Connection connection)
     {
         try {
             //user_info
@@ -457,8 +599,10 @@ public class DatabaseTest
                     "SELECT party_id, 'angelina.jolie@gmail.com' FROM party_info ORDER BY party_id LIMIT 1");
 
             //user_activity
-            /*statement.executeUpdate("INSERT INTO user_activity (parties_attended, email, parties_hosted)" +
-                    "SELECT ARRAY[party_id], 'angelina.jolie@gmail.com', '' FROM party_info ORDER BY party_id LIMIT 1");*/
+            statement.executeUpdate("INSERT INTO user_activity (email, activity, party_id)" +
+                    "SELECT host, 'hosted', party_id FROM party_info");
+            statement.executeUpdate("INSERT INTO user_activity (email, activity, party_id)" +
+                    "SELECT 'angelina.jolie@gmail.com', 'attended', party_id FROM party_info ORDER BY party_id LIMIT 1");
 
             statement.close();
 
@@ -467,9 +611,42 @@ public class DatabaseTest
         }
     }
 
-    private static void queryDatabase() {
+    // Fills the database with a synthetic data set of configurable size instead of the sample rows above.
+    static void generateData(Connection connection, Map<String, String> options)
+    {
+        try {
+            long start = System.nanoTime();
+            LoadStats stats;
+            if (options.containsKey("threads")) {
+                stats = new ParallelLoader(options).load(connection);
+            } else {
+                stats = new LoadStats(options.getOrDefault("loader", "insert"));
+                new DataGenerator(DataGenerator.Config.from(options)).generate(createLoader(connection, options, stats));
+            }
+            stats.print();
+            System.out.println("Generated " + stats.totalRows() + " rows in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+
+    // "loader=insert" (default) runs one autocommitted INSERT per row, "loader=batch" uses JDBC batches of "batchSize" rows
+    // committed every "batchesPerCommit" batches, "loader=copy" and "loader=copy-binary" stream one COPY per table.
+    static RowSink createLoader(Connection connection, Map<String, String> options, LoadStats stats)
+    {
+        return switch (options.getOrDefault("loader", "insert")) {
+            case "batch" -> new BatchLoader(connection, Integer.parseInt(options.getOrDefault("batchSize", "1000")),
+                    Integer.parseInt(options.getOrDefault("batchesPerCommit", "10")), stats);
+            case "copy" -> new CopyLoader(connection, false, stats);
+            case "copy-binary" -> new CopyLoader(connection, true, stats);
+            default -> new InsertSink(connection, stats);
+        };
+    }
+
+    static void queryDatabase(Connection connection) {
         try {
             Statement statement = connection.createStatement();
+            PartyRepository repository = new PartyRepository(connection);
             ResultSet rs;
 
             //1 -> Counts all the parties that are in a certain country.
@@ -492,15 +669,17 @@ public class DatabaseTest
             rs = statement.executeQuery("SELECT DISTINCT country FROM user_info");
             System.out.println("Query 5: \n" + resultToString(rs) + "\n\n");
 
+            // Queries 6, 7 and 9 bind their values to the cached prepared statements of the PartyRepository (see EvenueQuery for the SQL)
             //6 -> Selects and joins all the parties a certain user is attending.
-            rs = statement.executeQuery("SELECT * FROM party_info INNER JOIN party_attendees ON party_info.party_id = party_attendees.party_id " +
-                    "WHERE party_attendees.attendee_email = 'dwayne.johnson@gmail.com'");
+            PreparedStatement prepared = repository.statement(EvenueQuery.PARTIES_ATTENDED_BY);
+            prepared.setString(1, "dwayne.johnson@gmail.com");
+            rs = prepared.executeQuery();
             System.out.println("Query 6: \n" + resultToString(rs) + "\n\n");
 
             //7 -> Selects an joins the full names of the attendees of a specific party.
-            rs = statement.executeQuery("SELECT user_info.first_name, user_info.last_name, user_info.email " +
-                    "FROM user_info INNER JOIN party_attendees ON user_info.email = party_attendees.attendee_email " +
-                    "WHERE party_attendees.party_id = 'fb0c5eae-2f1b-4be8-af9d-ab09a6606c59'");
+            prepared = repository.statement(EvenueQuery.ATTENDEES_OF);
+            prepared.setObject(1, UUID.fromString("fb0c5eae-2f1b-4be8-af9d-ab09a6606c59"));
+            rs = prepared.executeQuery();
             System.out.println("Query 7: \n" + resultToString(rs) + "\n\n");
 
             //8 -> Selects all parties with at least one attendee and lists its id and title next to the amount of attendees in a descending order. Z
@@ -510,15 +689,16 @@ public class DatabaseTest
             System.out.println("Query 8: \n" + resultToString(rs) + "\n\n");
 
             //9 -> Selects all users who are attending a party within a specified postcode.
-            rs = statement.executeQuery("SELECT ui.email, ui.first_name, ui.last_name FROM user_info ui JOIN party_attendees pa ON ui.email = pa.attendee_email " +
-                    "JOIN party_address pl ON pa.party_id = pl.party_id JOIN zip_code zc ON pl.zip_code = zc.zip_code " +
-                    "WHERE zc.zip_code = '40489' GROUP BY ui.email, ui.first_name, ui.last_name");
+            prepared = repository.statement(EvenueQuery.USERS_ATTENDING_IN_ZIP);
+            prepared.setString(1, "40489");
+            rs = prepared.executeQuery();
             System.out.println("Query 9: \n" + resultToString(rs) + "\n\n");
 
             //10 -> Selects all users and the amount of parties they have hosted.
             rs = statement.executeQuery("SELECT u.email, COUNT(p.party_id) AS \"Number of Parties Hosted\" FROM user_info u " +
                     "JOIN party_info ph ON u.email = ph.host JOIN party_info p ON p.party_id = ph.party_id GROUP BY u.email");
             System.out.println("Query 10: \n" + resultToString(rs) + "\n\n");
+            repository.close();
 
             // Output:
             /*
@@ -577,59 +757,82 @@ public class DatabaseTest
         }
     }
 
-    private static void truncateTables()
+    static void truncateTables(Connection connection)
     {
-        try {
-            // Retrieves the table names and stores them in an ArrayList
-            ResultSet rs = connection.getMetaData().getTables(null, null, null, new String[]{"TABLE"});
+        try (Statement statement = connection.createStatement()) {
+            // Retrieves the table names of the current schema and stores them in an ArrayList
+            ResultSet rs = statement.executeQuery("SELECT quote_ident(tablename) FROM pg_tables WHERE schemaname = current_schema()");
             List<String> tableNames = new ArrayList<>();
             while (rs.next()) {
-                tableNames.add(rs.getString("TABLE_NAME"));
+                tableNames.add(rs.getString(1));
             }
+            rs.close();
 
-            // Loops through the table names in the ArrayList and truncates them
-            Statement statement = connection.createStatement();
-            for (String tableName : tableNames) {
-                // System.out.println(tableName);
-                statement.executeUpdate("TRUNCATE TABLE " + tableName + " CASCADE");
+            // Truncates all tables in one statement instead of one TRUNCATE (and one CASCADE walk) per table
+            if (!tableNames.isEmpty()) {
+                statement.executeUpdate("TRUNCATE TABLE " + String.join(", ", tableNames) + " CASCADE");
             }
         } catch (SQLException e) {
             System.out.println("Exception: " + e.getMessage());
         }
     }
 
-    // Helper methods for result-output
-    private static List<String> resultToList(ResultSet rs)
+    // Parses "key=value" program arguments into a map, arguments without "=" are ignored.
+    // Describes the data a run with these options loads, as it would have been generated on "today".
+    // Restoring moves the dates of a snapshot to the current day, so a snapshot matches when it was generated like this on its export day.
+    private static String snapshotData(Map<String, String> options, LocalDate today)
+    {
+        if (!"generated".equals(options.get("data"))) {
+            return "data=sample";
+        }
+        DataGenerator.Config config = DataGenerator.Config.from(options);
+        config.today = today;
+        return "data=generated version=" + DataGenerator.VERSION + " " + config;
+    }
+
+    static Map<String, String> parseOptions(String[] args)
+    {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        return options;
+    }
+
+    // Collects the "pg.<name>=<value>" options as driver connection properties.
+    static Properties driverProperties(Map<String, String> options)
+    {
+        Properties properties = new Properties();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (option.getKey().startsWith("pg.")) {
+                properties.setProperty(option.getKey().substring(3), option.getValue());
+            }
+        }
+        return properties;
+    }
+
+    // Helper method for result-output: one line per row, columns separated by tabs.
+    // Reads the column count once from the result set metadata and appends the rows straight into one StringBuilder.
+    private static String resultToString(ResultSet rs)
     {
-        List<String> sl = new ArrayList<>();
         StringBuilder sb = new StringBuilder();
         try
         {
-            while (rs.next())
-            {
-                sb.setLength(0);
-                for (int I = 1; true; I++)
-                    try
-                    {
-                        sb.append(rs.getObject(I)).append('\t');
-                    }
-                    catch (Exception ignored)
-                    {
-                        sb.deleteCharAt(sb.length() - 1);
-                        break;
-                    }
-                sl.add(sb.toString());
-            }
+            ResultStreamer.forEach(rs, row -> {
+                for (int i = 1; i <= row.columnCount(); i++) {
+                    sb.append(row.getObject(i)).append(i < row.columnCount() ? "\t" : System.lineSeparator());
+                }
+            });
+            // Removes the line separator after the last row
+            sb.setLength(Math.max(0, sb.length() - System.lineSeparator().length()));
         }
         catch (SQLException E)
         {
             System.out.println("Exception: " + E.getMessage());
         }
-        return sl;
-    }
-    private static String resultToString(ResultSet rs)
-    {
-        List<String> rl = resultToList(rs);
-        return String.join(System.lineSeparator(), rl);
+        return sb.toString();
     }
 }
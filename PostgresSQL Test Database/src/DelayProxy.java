@@ -0,0 +1,232 @@
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+// Local TCP proxy in front of the database that delays every byte by half a round trip time in each direction,
+// to see how code behaves over a real network while server and client run on the same machine.
+// Data keeps its order and is not throttled, only delayed: a reader thread per direction timestamps what it reads and a
+// writer thread sends it on once the delay has passed. route() returns driver properties whose connections go through
+// the proxy, whatever host DatabaseTest.URL names (see RoutingSocketFactory).
+public class DelayProxy implements AutoCloseable
+{
+    // Bytes read at one time, to be written after due (System.nanoTime()), an empty chunk marks the end of the stream
+    private record Chunk(long due, byte[] bytes)
+    {
+    }
+
+    private final InetSocketAddress target;
+    private final long delayNanos;
+    private final ServerSocket server;
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    // Listens on a free port of the loopback address
+    public DelayProxy(InetSocketAddress target, Duration roundTrip) throws IOException
+    {
+        this(target, roundTrip, 0);
+    }
+
+    public DelayProxy(InetSocketAddress target, Duration roundTrip, int port) throws IOException
+    {
+        this.target = target;
+        this.delayNanos = roundTrip.toNanos() / 2;
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::accept, "delay-proxy");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    public int port()
+    {
+        return server.getLocalPort();
+    }
+
+    // A copy of the driver properties that connects through this proxy
+    public Properties route(Properties driverProperties)
+    {
+        Properties routed = new Properties();
+        routed.putAll(driverProperties);
+        routed.setProperty("socketFactory", RoutingSocketFactory.class.getName());
+        routed.setProperty("socketFactoryArg", InetAddress.getLoopbackAddress().getHostAddress() + ":" + port());
+        return routed;
+    }
+
+    // Host and port of DatabaseTest.URL, localhost:5432 if the URL names none
+    public static InetSocketAddress databaseAddress()
+    {
+        String url = DatabaseTest.URL;
+        if (!url.startsWith("jdbc:postgresql://")) {
+            return new InetSocketAddress("localhost", 5432);
+        }
+        int start = "jdbc:postgresql://".length();
+        int end = url.indexOf('/', start) < 0 ? url.length() : url.indexOf('/', start);
+        String authority = url.substring(start, end);
+        int colon = authority.lastIndexOf(':');
+        return colon < 0 ? new InetSocketAddress(authority, 5432)
+                : new InetSocketAddress(authority.substring(0, colon), Integer.parseInt(authority.substring(colon + 1)));
+    }
+
+    private void accept()
+    {
+        while (!closed) {
+            try {
+                Socket client = server.accept();
+                Socket upstream = new Socket();
+                try {
+                    upstream.connect(target);
+                } catch (IOException e) {
+                    client.close();
+                    throw e;
+                }
+                client.setTcpNoDelay(true);
+                upstream.setTcpNoDelay(true);
+                pipe(client, upstream);
+                pipe(upstream, client);
+            } catch (IOException e) {
+                if (!closed) {
+                    System.out.println("Exception: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Forwards everything from one socket to the other, delayed
+    private void pipe(Socket from, Socket to) throws IOException
+    {
+        InputStream in = from.getInputStream();
+        OutputStream out = to.getOutputStream();
+        BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(() -> {
+            byte[] buffer = new byte[1 << 16];
+            try {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    chunks.add(new Chunk(System.nanoTime() + delayNanos, Arrays.copyOf(buffer, n)));
+                }
+            } catch (IOException e) {
+                // The connection was closed from the other side
+            }
+            chunks.add(new Chunk(System.nanoTime() + delayNanos, new byte[0]));
+        }, "delay-proxy-reader");
+        Thread writer = new Thread(() -> {
+            try (to) {
+                while (true) {
+                    Chunk chunk = chunks.take();
+                    for (long wait = chunk.due() - System.nanoTime(); wait > 0; wait = chunk.due() - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    if (chunk.bytes().length == 0) {
+                        break;
+                    }
+                    out.write(chunk.bytes());
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // Nothing left to forward to
+            }
+        }, "delay-proxy-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        try {
+            server.close();
+            acceptor.join();
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Socket factory for the driver ("socketFactory" property) that connects to the "host:port" passed as
+    // "socketFactoryArg" instead of the address the driver asks for.
+    public static class RoutingSocketFactory extends SocketFactory
+    {
+        private final InetSocketAddress address;
+
+        public RoutingSocketFactory(String address)
+        {
+            int colon = address.lastIndexOf(':');
+            this.address = new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        }
+
+        @Override
+        public Socket createSocket()
+        {
+            return new Socket()
+            {
+                @Override
+                public void connect(SocketAddress endpoint, int timeout) throws IOException
+                {
+                    super.connect(address, timeout);
+                }
+            };
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException
+        {
+            return createSocket(InetAddress.getByName(host), port);
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException
+        {
+            return createSocket(InetAddress.getByName(host), port, localHost, localPort);
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException
+        {
+            Socket socket = createSocket();
+            socket.connect(address);
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException
+        {
+            Socket socket = createSocket();
+            socket.bind(new InetSocketAddress(localAddress, localPort));
+            socket.connect(this.address);
+            return socket;
+        }
+    }
+
+    // Runs a proxy in the foreground. Arguments: "port" (default 15432), "rttMillis" (default 10).
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int port = Integer.parseInt(options.getOrDefault("port", "15432"));
+        Duration roundTrip = Duration.ofMillis(Long.parseLong(options.getOrDefault("rttMillis", "10")));
+        try {
+            DelayProxy proxy = new DelayProxy(databaseAddress(), roundTrip, port);
+            System.out.println("Forwarding port " + proxy.port() + " to " + databaseAddress() + " with a round trip time of " + roundTrip.toMillis() + " ms");
+            proxy.acceptor.join();
+        } catch (IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
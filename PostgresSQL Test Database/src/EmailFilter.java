@@ -0,0 +1,221 @@
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Scalable Bloom filter of user_info emails, so most emails can be told to be new without asking the database.
+// mightContain() never returns false for an added email. It returns true for an email that was never added with about
+// the configured false positive rate, so only a "true" has to be checked against user_info.
+// The filter starts with one Bloom filter sized for the expected number of emails. When that is full, a new one with
+// twice the capacity and half the false positive rate is added (Almeida et al., "Scalable Bloom Filters"), so the total
+// rate stays below the configured one however many emails are added. An email is only added to the newest filter.
+// Emails can't be removed. A deleted user's email stays a (harmless) false positive until the filter is rebuilt.
+// The k bit positions come from two 64-bit hashes of the email (h1 + i * h2, Kirsch and Mitzenmacher).
+// Thread safe: bits are set with atomic ORs, and only adding a new filter is synchronized.
+public class EmailFilter
+{
+    private static final double LN2 = Math.log(2);
+
+    private static final class Stage
+    {
+        final AtomicLongArray words;
+        final long bits;
+        final int hashes;
+        final long capacity;
+        final double falsePositiveRate;
+        final AtomicLong added = new AtomicLong();
+
+        Stage(long capacity, double falsePositiveRate)
+        {
+            // Optimal size and number of hashes for the capacity, rounded up to whole words
+            long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+            long words = Math.max(1, (bits + 63) / 64);
+            if (words > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("A filter for " + capacity + " emails does not fit into one array");
+            }
+            this.words = new AtomicLongArray((int) words);
+            this.bits = words * 64;
+            this.hashes = Math.max(1, (int) Math.round((double) this.bits / capacity * LN2));
+            this.capacity = capacity;
+            this.falsePositiveRate = falsePositiveRate;
+        }
+
+        boolean contains(long h1, long h2)
+        {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(long h1, long h2)
+        {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bits);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                if ((words.get(word) & mask) == 0) {
+                    words.getAndAccumulate(word, mask, (value, set) -> value | set);
+                }
+            }
+            added.incrementAndGet();
+        }
+
+        // Expected false positive rate with the emails added so far
+        double currentFalsePositiveRate()
+        {
+            return Math.pow(1 - Math.exp(-(double) hashes * added.get() / bits), hashes);
+        }
+    }
+
+    private final double falsePositiveRate;
+    private volatile Stage[] stages;
+
+    // falsePositiveRate is the rate the filter stays below, however many emails are added
+    public EmailFilter(long expectedEmails, double falsePositiveRate)
+    {
+        this.falsePositiveRate = falsePositiveRate;
+        // The rates of the filters form a geometric series with ratio 1/2, so the first gets half of the total
+        this.stages = new Stage[]{new Stage(Math.max(64, expectedEmails), falsePositiveRate / 2)};
+    }
+
+    // False if the email was certainly never added
+    public boolean mightContain(String email)
+    {
+        long hash = hash(email);
+        long h1 = SeededRandom.mix(hash);
+        long h2 = SeededRandom.mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (Stage stage : stages) {
+            if (stage.contains(h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void add(String email)
+    {
+        long hash = hash(email);
+        long h1 = SeededRandom.mix(hash);
+        long h2 = SeededRandom.mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        Stage[] current = stages;
+        for (Stage stage : current) {
+            if (stage.contains(h1, h2)) {
+                return;
+            }
+        }
+        Stage last = current[current.length - 1];
+        if (last.added.get() >= last.capacity) {
+            last = grow(last);
+        }
+        last.add(h1, h2);
+    }
+
+    // Number of emails added, emails that were reported as already contained are not counted
+    public long size()
+    {
+        long size = 0;
+        for (Stage stage : stages) {
+            size += stage.added.get();
+        }
+        return size;
+    }
+
+    public long bytes()
+    {
+        long bytes = 0;
+        for (Stage stage : stages) {
+            bytes += stage.words.length() * 8L;
+        }
+        return bytes;
+    }
+
+    public int stages()
+    {
+        return stages.length;
+    }
+
+    // Expected false positive rate for the emails added so far, at most the configured rate
+    public double expectedFalsePositiveRate()
+    {
+        double negative = 1;
+        for (Stage stage : stages) {
+            negative *= 1 - stage.currentFalsePositiveRate();
+        }
+        return 1 - negative;
+    }
+
+    public double falsePositiveRate()
+    {
+        return falsePositiveRate;
+    }
+
+    private synchronized Stage grow(Stage full)
+    {
+        Stage[] current = stages;
+        Stage last = current[current.length - 1];
+        if (last != full) {
+            // Another thread was faster
+            return last;
+        }
+        Stage[] grown = new Stage[current.length + 1];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        grown[current.length] = new Stage(last.capacity * 2, last.falsePositiveRate / 2);
+        stages = grown;
+        return grown[current.length];
+    }
+
+    // FNV-1a over the UTF-16 chars, mixed into two independent hashes by the caller
+    private static long hash(String email)
+    {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < email.length(); i++) {
+            hash = (hash ^ email.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    // Fills a filter with "emails" (default 20000000) generated emails, starting from "expected" (default the same),
+    // and prints its memory, the time per add and lookup and the false positive rate measured with as many emails that were
+    // not added. Argument "rate" (default 0.01). Needs no database, the emails come from the DataGenerator.
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int emails = Integer.parseInt(options.getOrDefault("emails", "20000000"));
+        long expected = Long.parseLong(options.getOrDefault("expected", Integer.toString(emails)));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0.01"));
+        DataGenerator generator = new DataGenerator(DataGenerator.Config.from(options));
+
+        EmailFilter filter = new EmailFilter(expected, rate);
+        long start = System.nanoTime();
+        for (int i = 0; i < emails; i++) {
+            filter.add(generator.email(i));
+        }
+        long addNanos = System.nanoTime() - start;
+
+        // Every added email must be found, the emails after them were never added
+        long missing = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < emails; i++) {
+            if (!filter.mightContain(generator.email(i))) {
+                missing++;
+            }
+        }
+        long containsNanos = System.nanoTime() - start;
+        long falsePositives = 0;
+        for (int i = emails; i < 2 * emails; i++) {
+            if (filter.mightContain(generator.email(i))) {
+                falsePositives++;
+            }
+        }
+
+        System.out.printf("%d emails in %d filter(s), %.1f MB (%.1f bits per email)%n", filter.size(), filter.stages(),
+                filter.bytes() / 1e6, filter.bytes() * 8.0 / filter.size());
+        System.out.printf("add %.0f ns, lookup %.0f ns per email (including generating the email)%n",
+                (double) addNanos / emails, (double) containsNanos / emails);
+        System.out.printf("false positive rate %.4f%% measured, %.4f%% expected, %.4f%% configured, %d false negatives%n",
+                100.0 * falsePositives / emails, 100 * filter.expectedFalsePositiveRate(), 100 * rate, missing);
+    }
+}
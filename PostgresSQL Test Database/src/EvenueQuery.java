@@ -0,0 +1,60 @@
+// The ten queries of DatabaseTest.queryDatabase() with their hard-coded literals replaced by bind parameters,
+// so they can be prepared once and executed with different values by the workload and benchmark tools.
+// The parameter kind tells which kind of sample value a caller has to bind.
+public enum EvenueQuery
+{
+    // 1 -> Counts all the parties that are in a certain country.
+    PARTIES_IN_COUNTRY(1, Parameter.COUNTRY, "SELECT COUNT(*) FROM zip_code WHERE country = ?"),
+    // 2 -> Selects all of the info about the party hosts.
+    HOSTS(2, Parameter.NONE, "SELECT email, first_name, last_name, age FROM user_info WHERE email IN (SELECT host FROM party_info)"),
+    // 3 -> Selects all of the parties and their start and end datetimes whose start_dates are between two specified dates.
+    PARTIES_BETWEEN(3, Parameter.DATE_RANGE, "SELECT * FROM party_datetime WHERE party_datetime.start_date BETWEEN ? AND ?"),
+    // 4 -> Selects the average age of all of the Evenue users.
+    AVERAGE_AGE(4, Parameter.NONE, "SELECT AVG(age) FROM user_info"),
+    // 5 -> Selects all of the distinct countries users are from.
+    USER_COUNTRIES(5, Parameter.NONE, "SELECT DISTINCT country FROM user_info"),
+    // 6 -> Selects and joins all the parties a certain user is attending.
+    PARTIES_ATTENDED_BY(6, Parameter.EMAIL, "SELECT * FROM party_info INNER JOIN party_attendees ON party_info.party_id = party_attendees.party_id "
+            + "WHERE party_attendees.attendee_email = ?"),
+    // 7 -> Selects an joins the full names of the attendees of a specific party.
+    ATTENDEES_OF(7, Parameter.PARTY_ID, "SELECT user_info.first_name, user_info.last_name, user_info.email "
+            + "FROM user_info INNER JOIN party_attendees ON user_info.email = party_attendees.attendee_email "
+            + "WHERE party_attendees.party_id = ?"),
+    // 8 -> Selects all parties with at least one attendee and lists its id and title next to the amount of attendees in a descending order.
+    ATTENDEE_COUNTS(8, Parameter.NONE, "SELECT p.party_id, p.title, COUNT(pa.attendee_email) "
+            + "AS attendees FROM party_info p JOIN party_attendees pa ON p.party_id = pa.party_id GROUP "
+            + "BY p.party_id, p.title ORDER BY attendees DESC"),
+    // 9 -> Selects all users who are attending a party within a specified postcode.
+    USERS_ATTENDING_IN_ZIP(9, Parameter.ZIP_CODE, "SELECT ui.email, ui.first_name, ui.last_name FROM user_info ui JOIN party_attendees pa ON ui.email = pa.attendee_email "
+            + "JOIN party_address pl ON pa.party_id = pl.party_id JOIN zip_code zc ON pl.zip_code = zc.zip_code "
+            + "WHERE zc.zip_code = ? GROUP BY ui.email, ui.first_name, ui.last_name"),
+    // 10 -> Selects all users and the amount of parties they have hosted.
+    HOST_COUNTS(10, Parameter.NONE, "SELECT u.email, COUNT(p.party_id) AS \"Number of Parties Hosted\" FROM user_info u "
+            + "JOIN party_info ph ON u.email = ph.host JOIN party_info p ON p.party_id = ph.party_id GROUP BY u.email");
+
+    public enum Parameter
+    {
+        NONE, COUNTRY, DATE_RANGE, EMAIL, PARTY_ID, ZIP_CODE
+    }
+
+    public final int number;
+    public final Parameter parameter;
+    public final String sql;
+
+    EvenueQuery(int number, Parameter parameter, String sql)
+    {
+        this.number = number;
+        this.parameter = parameter;
+        this.sql = sql;
+    }
+
+    public static EvenueQuery byNumber(int number)
+    {
+        for (EvenueQuery query : values()) {
+            if (query.number == number) {
+                return query;
+            }
+        }
+        throw new IllegalArgumentException("There is no query " + number);
+    }
+}
@@ -0,0 +1,149 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Secondary indexes for the access paths of queries 1-10, and an advisor that shows what they change.
+// structureDatabase() only creates the indexes that come with primary keys and UNIQUE constraints, so every join on
+// party_attendees, every host lookup and every date or country filter is a sequential scan.
+// The advisor runs EXPLAIN (ANALYZE, BUFFERS) for each EvenueQuery without and then with the indexes, using the same
+// sampled parameter values both times, and prints planning/execution time, buffers and the scans that were chosen.
+// Run it after loading a realistically sized data set ("data=generated" in DatabaseTest), on tiny tables
+// the planner rightly prefers sequential scans anyway. Arguments: "runs" (default 3, the fastest run counts), "plans=true".
+public class IndexAdvisor
+{
+    // Index name and definition
+    static final String[][] INDEXES = {
+            // Query 6 and the attendee lookups of the app
+            {"party_attendees_attendee_email_idx", "party_attendees (attendee_email)"},
+            // Query 7, 8 and 9 join on party_id. Including the email lets query 7 and 9 skip the heap for party_attendees.
+            {"party_attendees_party_id_idx", "party_attendees (party_id, attendee_email)"},
+            {"favourites_email_party_id_idx", "favourites (email, party_id)"},
+            // Query 2 and 10 look up parties by host
+            {"party_info_host_idx", "party_info (host)"},
+            // Query 3 filters on a start_date range, PartyFeed also reads the parties in (start_date, start_time_tz, party_id) order
+            {"party_datetime_start_idx", "party_datetime (start_date, start_time_tz, party_id)"},
+            // Query 1 counts by country, query 9 filters zip_code by zip_code, which has no primary key
+            {"zip_code_country_idx", "zip_code (country)"},
+            {"zip_code_zip_code_idx", "zip_code (zip_code)"},
+            // Spatial lookups on the map: bounding box containment and nearest neighbour ordering with <->
+            {"party_location_coordinates_idx", "party_location USING gist (coordinates)"},
+    };
+
+    public static void createIndexes(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            for (String[] index : INDEXES) {
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS " + index[0] + " ON " + index[1]);
+            }
+            statement.executeUpdate("ANALYZE");
+        }
+    }
+
+    public static void dropIndexes(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            for (String[] index : INDEXES) {
+                statement.executeUpdate("DROP INDEX IF EXISTS " + index[0]);
+            }
+            statement.executeUpdate("ANALYZE");
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int runs = Integer.parseInt(options.getOrDefault("runs", "3"));
+        boolean plans = "true".equals(options.get("plans"));
+
+        try (Connection connection = DatabaseTest.connect(DatabaseTest.driverProperties(options))) {
+            QueryParameters parameters = QueryParameters.load(connection, 100);
+
+            dropIndexes(connection);
+            Map<EvenueQuery, Plan> before = explainAll(connection, parameters, runs);
+            createIndexes(connection);
+            Map<EvenueQuery, Plan> after = explainAll(connection, parameters, runs);
+
+            for (EvenueQuery query : EvenueQuery.values()) {
+                Plan b = before.get(query);
+                Plan a = after.get(query);
+                System.out.printf("Query %2d  execution %10.3f -> %10.3f ms  planning %7.3f -> %7.3f ms  buffers %s -> %s%n",
+                        query.number, b.executionMillis, a.executionMillis, b.planningMillis, a.planningMillis, b.buffers, a.buffers);
+                System.out.println("          before: " + String.join(", ", b.scans));
+                System.out.println("          after:  " + String.join(", ", a.scans));
+                if (plans) {
+                    System.out.println(String.join(System.lineSeparator(), b.lines));
+                    System.out.println(String.join(System.lineSeparator(), a.lines));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+
+    // Parsed EXPLAIN (ANALYZE, BUFFERS) text output
+    private static final class Plan
+    {
+        final List<String> lines = new ArrayList<>();
+        final Set<String> scans = new LinkedHashSet<>();
+        String buffers = "-";
+        double planningMillis;
+        double executionMillis;
+    }
+
+    private static Map<EvenueQuery, Plan> explainAll(Connection connection, QueryParameters parameters, int runs) throws SQLException
+    {
+        Map<EvenueQuery, Plan> plans = new EnumMap<>(EvenueQuery.class);
+        for (EvenueQuery query : EvenueQuery.values()) {
+            Plan fastest = null;
+            for (int run = 0; run < runs; run++) {
+                // Same seed, so every run and both phases use the same parameter values
+                Plan plan = explain(connection, query, parameters, new Random(query.number));
+                if (fastest == null || plan.executionMillis < fastest.executionMillis) {
+                    fastest = plan;
+                }
+            }
+            plans.put(query, fastest);
+        }
+        return plans;
+    }
+
+    private static Plan explain(Connection connection, EvenueQuery query, QueryParameters parameters, Random random) throws SQLException
+    {
+        Plan plan = new Plan();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + query.sql)) {
+            parameters.bind(statement, query, random);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    String line = rs.getString(1);
+                    String trimmed = line.trim().replaceFirst("^->\\s*", "");
+                    plan.lines.add(line);
+                    if (trimmed.startsWith("Planning Time:")) {
+                        plan.planningMillis = millis(trimmed);
+                    } else if (trimmed.startsWith("Execution Time:")) {
+                        plan.executionMillis = millis(trimmed);
+                    } else if (trimmed.startsWith("Buffers:") && plan.buffers.equals("-")) {
+                        // The first Buffers line belongs to the top node and covers the whole query
+                        plan.buffers = trimmed.substring("Buffers:".length()).trim();
+                    } else if (trimmed.contains(" Scan ") || trimmed.startsWith("Seq Scan")) {
+                        plan.scans.add(trimmed.substring(0, trimmed.indexOf("  (") > 0 ? trimmed.indexOf("  (") : trimmed.length()));
+                    }
+                }
+            }
+        }
+        return plan;
+    }
+
+    private static double millis(String line)
+    {
+        return Double.parseDouble(line.substring(line.indexOf(':') + 1, line.lastIndexOf(" ms")).trim());
+    }
+}
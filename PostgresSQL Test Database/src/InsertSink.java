@@ -0,0 +1,49 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+// Inserts every generated row with its own executeUpdate, exactly like insertData() does with its literal statements.
+// With autocommit on (the default in main()) every row is its own transaction and round trip, so this sink
+// is only meant for small data sets and as the baseline the faster loaders are compared against.
+public class InsertSink implements RowSink
+{
+    private final Connection connection;
+    private final LoadStats stats;
+    private PreparedStatement statement;
+    private String table;
+    private long rows;
+    private long start;
+
+    public InsertSink(Connection connection, LoadStats stats)
+    {
+        this.connection = connection;
+        this.stats = stats;
+    }
+
+    @Override
+    public void begin(TableSpec table) throws SQLException
+    {
+        statement = connection.prepareStatement(table.insertSql());
+        this.table = table.name();
+        this.rows = 0;
+        this.start = System.nanoTime();
+    }
+
+    @Override
+    public void row(Object[] values) throws SQLException
+    {
+        for (int i = 0; i < values.length; i++) {
+            statement.setObject(i + 1, values[i]);
+        }
+        statement.executeUpdate();
+        rows++;
+    }
+
+    @Override
+    public void end() throws SQLException
+    {
+        statement.close();
+        statement = null;
+        stats.record(table, rows, System.nanoTime() - start);
+    }
+}
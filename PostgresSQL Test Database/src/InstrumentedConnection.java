@@ -0,0 +1,425 @@
+import javax.net.SocketFactory;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Connections whose statements report to a QueryMetrics instance.
+// Connection, Statement, PreparedStatement and ResultSet are wrapped in proxies like in ConnectionPool. An execution
+// is timed from the execute call until its result set is read to the end or closed (or, for updates and batches,
+// until the call returns), so query latency includes fetching the rows. Rows are counted as they are read or taken
+// from the update counts, bind parameters are kept for the slow query log.
+// Bytes and round trips are counted on the socket itself, through a socket factory handed to the driver: every change
+// from sending to receiving is one round trip. Both are the difference between the start and the end of an execution,
+// so they are exact as long as one connection is used by one thread at a time, which JDBC requires anyway.
+// Traffic outside of statements, like COPY through the CopyManager or LISTEN notifications, is not attributed to any query.
+public class InstrumentedConnection
+{
+    private InstrumentedConnection()
+    {
+    }
+
+    // Opens a connection to the test database like DatabaseTest.connect() that reports to the metrics.
+    public static Connection connect(Properties properties, QueryMetrics metrics) throws SQLException
+    {
+        Properties counted = new Properties();
+        counted.putAll(properties);
+        counted.setProperty("socketFactory", CountingSocketFactory.class.getName());
+        // Drops the socket of an earlier failed attempt on this thread
+        CountingSocketFactory.LAST.remove();
+        Connection connection = DatabaseTest.connect(counted);
+        CountingSocket socket = CountingSocketFactory.LAST.get();
+        CountingSocketFactory.LAST.remove();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new ConnectionHandler(connection, metrics, socket));
+    }
+
+    // Creates the sockets of instrumented connections. The driver instantiates it by class name, so it has to be public.
+    public static class CountingSocketFactory extends SocketFactory
+    {
+        // The socket most recently created on this thread, picked up by connect() right after the driver has connected
+        static final ThreadLocal<CountingSocket> LAST = new ThreadLocal<>();
+
+        @Override
+        public Socket createSocket()
+        {
+            CountingSocket socket = new CountingSocket();
+            LAST.set(socket);
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException
+        {
+            Socket socket = createSocket();
+            socket.connect(new InetSocketAddress(host, port));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException
+        {
+            Socket socket = createSocket();
+            socket.bind(new InetSocketAddress(localHost, localPort));
+            socket.connect(new InetSocketAddress(host, port));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException
+        {
+            Socket socket = createSocket();
+            socket.connect(new InetSocketAddress(host, port));
+            return socket;
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException
+        {
+            Socket socket = createSocket();
+            socket.bind(new InetSocketAddress(localAddress, localPort));
+            socket.connect(new InetSocketAddress(address, port));
+            return socket;
+        }
+    }
+
+    static class CountingSocket extends Socket
+    {
+        final AtomicLong bytesReceived = new AtomicLong();
+        final AtomicLong roundTrips = new AtomicLong();
+        private volatile boolean sending;
+        private InputStream in;
+        private OutputStream out;
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException
+        {
+            if (in == null) {
+                in = new FilterInputStream(super.getInputStream())
+                {
+                    @Override
+                    public int read() throws IOException
+                    {
+                        int b = super.read();
+                        received(b < 0 ? 0 : 1);
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException
+                    {
+                        int n = super.read(buffer, offset, length);
+                        received(Math.max(0, n));
+                        return n;
+                    }
+                };
+            }
+            return in;
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException
+        {
+            if (out == null) {
+                out = new FilterOutputStream(super.getOutputStream())
+                {
+                    @Override
+                    public void write(int b) throws IOException
+                    {
+                        sending = true;
+                        out.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] buffer, int offset, int length) throws IOException
+                    {
+                        sending = true;
+                        out.write(buffer, offset, length);
+                    }
+                };
+            }
+            return out;
+        }
+
+        private void received(int bytes)
+        {
+            if (sending) {
+                sending = false;
+                roundTrips.incrementAndGet();
+            }
+            bytesReceived.addAndGet(bytes);
+        }
+    }
+
+    // One execution of a statement, finished exactly once
+    private static final class Execution
+    {
+        final QueryMetrics metrics;
+        final CountingSocket socket;
+        final String name;
+        final String sql;
+        final List<Object> parameters;
+        final long start = System.nanoTime();
+        final long bytesAtStart;
+        final long roundTripsAtStart;
+        long rows;
+        boolean finished;
+
+        Execution(QueryMetrics metrics, CountingSocket socket, String sql, List<Object> parameters)
+        {
+            this.metrics = metrics;
+            this.socket = socket;
+            this.name = metrics.nameOf(sql);
+            this.sql = sql;
+            this.parameters = parameters;
+            this.bytesAtStart = socket == null ? 0 : socket.bytesReceived.get();
+            this.roundTripsAtStart = socket == null ? 0 : socket.roundTrips.get();
+        }
+
+        void finish(boolean failed)
+        {
+            if (!finished) {
+                finished = true;
+                long bytes = socket == null ? 0 : socket.bytesReceived.get() - bytesAtStart;
+                long roundTrips = socket == null ? 0 : socket.roundTrips.get() - roundTripsAtStart;
+                metrics.record(name, sql, parameters, System.nanoTime() - start, rows, bytes, roundTrips, failed);
+            }
+        }
+    }
+
+    private abstract static class Handler implements InvocationHandler
+    {
+        final Object target;
+
+        Handler(Object target)
+        {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (method.getName().equals("unwrap") && ((Class<?>) args[0]).isInstance(proxy)) {
+                return proxy;
+            }
+            return handle(proxy, method, args);
+        }
+
+        abstract Object handle(Object proxy, Method method, Object[] args) throws Throwable;
+
+        Object forward(Method method, Object[] args) throws Throwable
+        {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class ConnectionHandler extends Handler
+    {
+        final QueryMetrics metrics;
+        final CountingSocket socket;
+
+        ConnectionHandler(Connection connection, QueryMetrics metrics, CountingSocket socket)
+        {
+            super(connection);
+            this.metrics = metrics;
+            this.socket = socket;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            Object result = forward(method, args);
+            return switch (method.getName()) {
+                case "createStatement", "prepareStatement", "prepareCall" -> {
+                    String sql = method.getName().equals("createStatement") ? null : (String) args[0];
+                    yield Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{method.getReturnType()},
+                            new StatementHandler((Statement) result, (Connection) proxy, this, sql));
+                }
+                default -> result;
+            };
+        }
+    }
+
+    private static final class StatementHandler extends Handler
+    {
+        final Connection connection;
+        final ConnectionHandler owner;
+        final String preparedSql;
+        final Map<Integer, Object> parameters = new TreeMap<>();
+        String batchSql;
+        Execution current;
+
+        StatementHandler(Statement statement, Connection connection, ConnectionHandler owner, String preparedSql)
+        {
+            super(statement);
+            this.connection = connection;
+            this.owner = owner;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            String name = method.getName();
+            switch (name) {
+                case "executeQuery", "executeUpdate", "executeLargeUpdate", "execute", "executeBatch", "executeLargeBatch" -> {
+                    return execute(proxy, method, args);
+                }
+                case "getResultSet" -> {
+                    ResultSet rs = (ResultSet) forward(method, args);
+                    return rs == null || current == null ? rs : resultSet(rs, (Statement) proxy, current);
+                }
+                case "getConnection" -> {
+                    return connection;
+                }
+                case "close" -> {
+                    finishCurrent();
+                    return forward(method, args);
+                }
+                case "clearParameters" -> parameters.clear();
+                case "addBatch" -> {
+                    if (args != null && batchSql == null) {
+                        batchSql = (String) args[0];
+                    }
+                }
+                case "clearBatch" -> batchSql = null;
+                default -> {
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                        parameters.put(index, name.equals("setNull") ? null : args[1]);
+                    }
+                }
+            }
+            return forward(method, args);
+        }
+
+        private Object execute(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            finishCurrent();
+            boolean batch = method.getName().endsWith("Batch");
+            String sql = args != null && args.length > 0 && args[0] instanceof String s ? s
+                    : batch && preparedSql == null ? String.valueOf(batchSql) : preparedSql;
+            Execution execution = new Execution(owner.metrics, owner.socket, sql,
+                    preparedSql == null ? List.of() : new ArrayList<>(parameters.values()));
+            current = execution;
+            Object result;
+            try {
+                result = forward(method, args);
+            } catch (Throwable e) {
+                execution.finish(true);
+                throw e;
+            }
+            if (batch) {
+                batchSql = null;
+            }
+            switch (method.getName()) {
+                case "executeQuery" -> {
+                    return resultSet((ResultSet) result, (Statement) proxy, execution);
+                }
+                case "execute" -> {
+                    if ((Boolean) result) {
+                        // Finished when the result set from getResultSet() is read or closed
+                        return result;
+                    }
+                    execution.rows = Math.max(0, ((Statement) target).getUpdateCount());
+                }
+                case "executeUpdate", "executeLargeUpdate" -> execution.rows = ((Number) result).longValue();
+                case "executeBatch" -> {
+                    for (int count : (int[]) result) {
+                        execution.rows += Math.max(0, count);
+                    }
+                }
+                case "executeLargeBatch" -> {
+                    for (long count : (long[]) result) {
+                        execution.rows += Math.max(0, count);
+                    }
+                }
+                default -> {
+                }
+            }
+            execution.finish(false);
+            return result;
+        }
+
+        private void finishCurrent()
+        {
+            if (current != null) {
+                current.finish(false);
+                current = null;
+            }
+        }
+    }
+
+    private static ResultSet resultSet(ResultSet rs, Statement statement, Execution execution)
+    {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                new ResultSetHandler(rs, statement, execution));
+    }
+
+    private static final class ResultSetHandler extends Handler
+    {
+        final Statement statement;
+        final Execution execution;
+
+        ResultSetHandler(ResultSet rs, Statement statement, Execution execution)
+        {
+            super(rs);
+            this.statement = statement;
+            this.execution = execution;
+        }
+
+        @Override
+        Object handle(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName()) {
+                case "next" -> {
+                    boolean next;
+                    try {
+                        next = (Boolean) forward(method, args);
+                    } catch (Throwable e) {
+                        execution.finish(true);
+                        throw e;
+                    }
+                    if (next) {
+                        execution.rows++;
+                    } else {
+                        execution.finish(false);
+                    }
+                    return next;
+                }
+                case "close" -> {
+                    Object result = forward(method, args);
+                    execution.finish(false);
+                    return result;
+                }
+                case "getStatement" -> {
+                    return statement;
+                }
+                default -> {
+                    return forward(method, args);
+                }
+            }
+        }
+    }
+}
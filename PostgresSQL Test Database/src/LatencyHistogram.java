@@ -0,0 +1,87 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Lock-free latency histogram in the style of HdrHistogram: values are counted in log-linear buckets,
+// every power of two range is split into 1024 linear sub-buckets, so any recorded value is kept
+// with a relative error below 0.1% while the whole histogram is a fixed array of about 34000 counters.
+// Values are nanoseconds, anything above one hour is counted as one hour.
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 11;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+    private static final long SUB_BUCKET_MASK = (1L << SUB_BUCKET_BITS) - 1;
+    private static final long HIGHEST_VALUE = 3_600_000_000_000L;
+
+    private final AtomicLongArray counts = new AtomicLongArray(index(HIGHEST_VALUE) + 1);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos)
+    {
+        long value = Math.max(0, Math.min(nanos, HIGHEST_VALUE));
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long count()
+    {
+        return total.get();
+    }
+
+    public long max()
+    {
+        return max.get();
+    }
+
+    public double mean()
+    {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    // Returns the value below which the given fraction (e.g. 0.99) of all recorded values fall.
+    public long percentile(double fraction)
+    {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    // One line summary in milliseconds, used by the workload reports.
+    public String summary()
+    {
+        return String.format("p50 %8.3f  p95 %8.3f  p99 %8.3f  p999 %8.3f  max %8.3f ms",
+                percentile(0.50) / 1e6, percentile(0.95) / 1e6, percentile(0.99) / 1e6, percentile(0.999) / 1e6, max() / 1e6);
+    }
+
+    private static int index(long value)
+    {
+        int bucket = 64 - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> bucket);
+        return (bucket << (SUB_BUCKET_BITS - 1)) + subBucket;
+    }
+
+    private static long highestEquivalentValue(int index)
+    {
+        int bucket = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long subBucket = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        if (bucket < 0) {
+            subBucket -= SUB_BUCKET_HALF_COUNT;
+            bucket = 0;
+        }
+        return ((subBucket + 1) << bucket) - 1;
+    }
+}
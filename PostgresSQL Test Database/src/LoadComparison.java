@@ -0,0 +1,46 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Loads the same generated data set once per insert mode into a freshly structured database and compares
+// rows per second and commits per second. The per-row INSERT mode is the path insertData() takes today:
+// one autocommitted statement, i.e. one transaction and one commit per row.
+// Takes the same "key=value" arguments as DatabaseTest (generator size, batchSize, batchesPerCommit),
+// plus "modes=insert,batch,batch-rewrite,copy,copy-binary" to choose what is compared.
+public class LoadComparison
+{
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        String[] modes = options.getOrDefault("modes", "insert,batch,batch-rewrite,copy").split(",");
+
+        System.out.printf("%-14s %12s %10s %14s %10s %14s%n", "mode", "rows", "ms", "rows/s", "commits", "commits/s");
+        for (String mode : modes) {
+            Map<String, String> modeOptions = new HashMap<>(options);
+            modeOptions.put("loader", mode.startsWith("batch") ? "batch" : mode);
+            if (mode.equals("batch-rewrite")) {
+                modeOptions.put("pg.reWriteBatchedInserts", "true");
+            }
+
+            try (Connection connection = DatabaseTest.connect(DatabaseTest.driverProperties(modeOptions))) {
+                DatabaseTest.structureDatabase(connection);
+                LoadStats stats = new LoadStats(mode);
+                RowSink sink = DatabaseTest.createLoader(connection, modeOptions, stats);
+
+                long start = System.nanoTime();
+                new DataGenerator(DataGenerator.Config.from(modeOptions)).generate(sink);
+                long nanos = System.nanoTime() - start;
+
+                long rows = stats.totalRows();
+                // Autocommitted INSERTs commit once per row, COPY once per table
+                long commits = sink instanceof BatchLoader batch ? batch.commits()
+                        : sink instanceof CopyLoader ? DataGenerator.TABLES.length : rows;
+                System.out.printf("%-14s %12d %10d %14.0f %10d %14.1f%n",
+                        mode, rows, nanos / 1_000_000, rows * 1e9 / nanos, commits, commits * 1e9 / nanos);
+            } catch (SQLException e) {
+                System.out.println("Exception: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Collects rows and elapsed time per table for one load and prints them as rows per second.
+// Thread safe, so parallel workers loading parts of the same table can share one instance. The time of a table is
+// wall-clock time from the first worker's start to the last worker's end, not the sum of the workers' times,
+// so parallel loads report the throughput the table actually got.
+public class LoadStats
+{
+    private final String loader;
+    // Per table: rows, start of the first and end of the last record() in System.nanoTime()
+    private final Map<String, long[]> tables = new LinkedHashMap<>();
+
+    public LoadStats(String loader)
+    {
+        this.loader = loader;
+    }
+
+    // Records rows written in the nanos up to now.
+    public synchronized void record(String table, long rows, long nanos)
+    {
+        long end = System.nanoTime();
+        long[] stats = tables.computeIfAbsent(table, t -> new long[]{0, end - nanos, end});
+        stats[0] += rows;
+        // Differences, because nanoTime values may overflow
+        if (end - nanos - stats[1] < 0) {
+            stats[1] = end - nanos;
+        }
+        if (end - stats[2] > 0) {
+            stats[2] = end;
+        }
+    }
+
+    public synchronized long totalRows()
+    {
+        long rows = 0;
+        for (long[] stats : tables.values()) {
+            rows += stats[0];
+        }
+        return rows;
+    }
+
+    public synchronized void print()
+    {
+        for (Map.Entry<String, long[]> entry : tables.entrySet()) {
+            long rows = entry.getValue()[0];
+            long nanos = Math.max(1, entry.getValue()[2] - entry.getValue()[1]);
+            System.out.printf("%-8s %-16s %12d rows %10d ms %14.0f rows/s%n",
+                    loader, entry.getKey(), rows, nanos / 1_000_000, rows * 1e9 / nanos);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Login checks against user_login without running bcrypt inside PostgreSQL.
+// Checking with crypt(?, password) = password keeps a database backend and a pooled connection busy for the whole hash.
+// Here the database only returns the stored hash by email (a primary key lookup)
+// and the connection goes straight back to the pool. The bcrypt comparison runs on a fixed number of worker threads
+// with a bounded queue; when the queue is full the caller hashes itself, which slows callers down instead of queueing
+// without limit. Unknown emails are checked against a dummy hash, so they take as long as wrong passwords.
+// Every verification is recorded in a latency histogram, from the hash lookup until the result is known.
+public class LoginService implements AutoCloseable
+{
+    public record Credential(String email, String password)
+    {
+    }
+
+    private static final String HASH_SQL = "SELECT password FROM user_login WHERE email = ?";
+    private static final String HASHES_SQL = "SELECT email, password FROM user_login WHERE email = ANY (?)";
+    // Emails per = ANY lookup in verifyAll()
+    private static final int LOOKUP_CHUNK = 1000;
+
+    private final ConnectionPool pool;
+    private final int cost;
+    private final String dummyHash;
+    private final ThreadPoolExecutor workers;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    // cost is used for new hashes in setPassword(), existing hashes are checked with the cost stored in them.
+    public LoginService(ConnectionPool pool, int workers, int cost)
+    {
+        this.pool = pool;
+        this.cost = cost;
+        this.dummyHash = BCrypt.hash("", cost);
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(workers * 64),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public boolean verify(String email, String password) throws SQLException
+    {
+        try {
+            return verifyAsync(email, password).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while verifying a password", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Password verification failed", e.getCause());
+        }
+    }
+
+    // Looks up the hash on the calling thread and completes on a worker thread once the password is checked.
+    public CompletableFuture<Boolean> verifyAsync(String email, String password) throws SQLException
+    {
+        long start = System.nanoTime();
+        String hash = null;
+        try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(HASH_SQL)) {
+            statement.setString(1, email);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    hash = rs.getString(1);
+                }
+            }
+        }
+        return check(password, hash, start);
+    }
+
+    // Verifies many credentials at once: the hashes are fetched with one query per 1000 emails,
+    // then all passwords are checked concurrently. Returns the results in the order of the credentials.
+    public List<Boolean> verifyAll(List<Credential> credentials) throws SQLException
+    {
+        long start = System.nanoTime();
+        Map<String, String> hashes = new HashMap<>();
+        try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(HASHES_SQL)) {
+            for (int from = 0; from < credentials.size(); from += LOOKUP_CHUNK) {
+                List<Credential> chunk = credentials.subList(from, Math.min(from + LOOKUP_CHUNK, credentials.size()));
+                Array emails = connection.createArrayOf("varchar", chunk.stream().map(Credential::email).toArray());
+                statement.setArray(1, emails);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        hashes.put(rs.getString(1), rs.getString(2));
+                    }
+                }
+                emails.free();
+            }
+        }
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(credentials.size());
+        for (Credential credential : credentials) {
+            results.add(check(credential.password(), hashes.get(credential.email()), start));
+        }
+        List<Boolean> verified = new ArrayList<>(credentials.size());
+        for (CompletableFuture<Boolean> result : results) {
+            verified.add(result.join());
+        }
+        return verified;
+    }
+
+    // Stores a new hash of the password, created with this service's cost. A single upsert, so concurrent calls
+    // for the same email can't both insert a row.
+    public void setPassword(String email, String password) throws SQLException
+    {
+        String hash = BCrypt.hash(password, cost);
+        try (Connection connection = pool.borrow();
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO user_login (email, password) VALUES (?, ?) ON CONFLICT (email) DO UPDATE SET password = EXCLUDED.password")) {
+            statement.setString(1, email);
+            statement.setString(2, hash);
+            statement.executeUpdate();
+        }
+    }
+
+    public LatencyHistogram latencies()
+    {
+        return latencies;
+    }
+
+    @Override
+    public void close()
+    {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Boolean> check(String password, String hash, long start)
+    {
+        return CompletableFuture.supplyAsync(() -> {
+            boolean verified = false;
+            if (hash != null) {
+                verified = BCrypt.verify(password, hash);
+            } else {
+                // Same work as for a wrong password, so response times don't tell which emails exist
+                BCrypt.verify(password, dummyHash);
+            }
+            latencies.record(System.nanoTime() - start);
+            return verified;
+        }, workers);
+    }
+
+    // Logs in as randomly chosen generated users and prints throughput and latency percentiles.
+    // "mode=app" checks the passwords with this service, "mode=database" with crypt() in PostgreSQL, one query per login
+    // on "workers" threads, for comparison. "bulk=true" uses verifyAll() for all logins at once.
+    // Arguments: "logins" (default 10000), "workers" (default cores), "poolSize" (default workers), "wrong" fraction of
+    // wrong passwords (default 0.1), plus the DataGenerator options the database was loaded with (seed, users, distinctPasswords).
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int logins = Integer.parseInt(options.getOrDefault("logins", "10000"));
+        int workers = Integer.parseInt(options.getOrDefault("workers", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int poolSize = Integer.parseInt(options.getOrDefault("poolSize", String.valueOf(workers)));
+        double wrong = Double.parseDouble(options.getOrDefault("wrong", "0.1"));
+        boolean database = "database".equals(options.get("mode"));
+        DataGenerator.Config config = DataGenerator.Config.from(options);
+        DataGenerator generator = new DataGenerator(config);
+
+        SeededRandom random = new SeededRandom(7);
+        List<Credential> credentials = new ArrayList<>(logins);
+        for (int i = 0; i < logins; i++) {
+            int user = random.nextInt(config.users);
+            String password = generator.password(user);
+            credentials.add(new Credential(generator.email(user), random.nextDouble() < wrong ? password + "!" : password));
+        }
+
+        try (ConnectionPool pool = new ConnectionPool(poolSize, PartyRepository.driverProperties(), 30_000);
+             LoginService service = new LoginService(pool, workers, config.passwordCost)) {
+            long start = System.nanoTime();
+            long verified = 0;
+            if (database) {
+                verified = verifyInDatabase(pool, service.workers, credentials, service.latencies);
+            } else if ("true".equals(options.get("bulk"))) {
+                verified = service.verifyAll(credentials).stream().filter(Boolean::booleanValue).count();
+            } else {
+                List<CompletableFuture<Boolean>> results = new ArrayList<>(logins);
+                for (Credential credential : credentials) {
+                    results.add(service.verifyAsync(credential.email(), credential.password()));
+                }
+                for (CompletableFuture<Boolean> result : results) {
+                    verified += result.join() ? 1 : 0;
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%s: %d logins (%d verified) in %d ms, %.0f logins/s%n", database ? "database" : "app",
+                    logins, verified, nanos / 1_000_000, logins * 1e9 / nanos);
+            System.out.println("latency " + service.latencies.summary());
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+
+    private static long verifyInDatabase(ConnectionPool pool, ThreadPoolExecutor workers, List<Credential> credentials, LatencyHistogram latencies)
+    {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(credentials.size());
+        for (Credential credential : credentials) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try (Connection connection = pool.borrow();
+                     PreparedStatement statement = connection.prepareStatement("SELECT password = crypt(?, password) FROM user_login WHERE email = ?")) {
+                    statement.setString(1, credential.password());
+                    statement.setString(2, credential.email());
+                    try (ResultSet rs = statement.executeQuery()) {
+                        return rs.next() && rs.getBoolean(1);
+                    }
+                } catch (SQLException e) {
+                    System.out.println("Exception: " + e.getMessage());
+                    return false;
+                } finally {
+                    latencies.record(System.nanoTime() - start);
+                }
+            }, workers));
+        }
+        return results.stream().filter(CompletableFuture::join).count();
+    }
+}
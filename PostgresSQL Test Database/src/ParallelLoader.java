@@ -0,0 +1,134 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Loads the generated data set with several connections at once.
+// The foreign keys created in structureDatabase() are read back from pg_constraint and turned into load levels:
+// a table's level is one more than the highest level of the tables it references. All tables of a level only depend
+// on earlier levels, so they are loaded at the same time, and large tables are additionally split into key ranges
+// that are loaded by separate workers. This works because the DataGenerator can produce any key range on its own.
+// "threads" (default: number of cores) sizes the pool, "partitionKeys" (default 100000) is the key range per worker,
+// and every worker writes through the loader chosen with "loader=..." on its own pooled connection.
+public class ParallelLoader
+{
+    private final Map<String, String> options;
+    private final DataGenerator.Config config;
+    private final int threads;
+    private final int partitionKeys;
+
+    public ParallelLoader(Map<String, String> options)
+    {
+        this.options = options;
+        this.config = DataGenerator.Config.from(options);
+        this.threads = Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        this.partitionKeys = Integer.parseInt(options.getOrDefault("partitionKeys", "100000"));
+    }
+
+    public LoadStats load(Connection connection) throws SQLException
+    {
+        List<List<TableSpec>> levels = loadLevels(connection);
+        LoadStats stats = new LoadStats(options.getOrDefault("loader", "insert"));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (ConnectionPool pool = new ConnectionPool(threads, DatabaseTest.driverProperties(options), 60_000)) {
+            for (int level = 0; level < levels.size(); level++) {
+                long start = System.nanoTime();
+                List<Future<?>> tasks = new ArrayList<>();
+                for (TableSpec table : levels.get(level)) {
+                    int keys = new DataGenerator(config).keyCount(table);
+                    int partitions = Math.max(1, Math.min(threads, (keys + partitionKeys - 1) / partitionKeys));
+                    for (int p = 0; p < partitions; p++) {
+                        int from = (int) ((long) keys * p / partitions);
+                        int to = (int) ((long) keys * (p + 1) / partitions);
+                        tasks.add(executor.submit(() -> loadRange(pool, table, from, to, stats)));
+                    }
+                }
+                await(tasks);
+                System.out.println("Level " + level + " " + levels.get(level).stream().map(TableSpec::name).toList()
+                        + " loaded by " + tasks.size() + " workers in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return stats;
+    }
+
+    private Void loadRange(ConnectionPool pool, TableSpec table, int from, int to, LoadStats stats) throws SQLException
+    {
+        try (Connection connection = pool.borrow()) {
+            new DataGenerator(config).generate(table, from, to, DatabaseTest.createLoader(connection, options, stats));
+        }
+        return null;
+    }
+
+    // Groups the generated tables into levels following the foreign keys that exist in the current schema.
+    static List<List<TableSpec>> loadLevels(Connection connection) throws SQLException
+    {
+        Map<String, List<String>> parents = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("""
+                     SELECT c.conrelid::regclass::text, c.confrelid::regclass::text
+                     FROM pg_constraint c JOIN pg_namespace n ON n.oid = c.connamespace
+                     WHERE c.contype = 'f' AND n.nspname = current_schema()
+                     """)) {
+            while (rs.next()) {
+                parents.computeIfAbsent(rs.getString(1), t -> new ArrayList<>()).add(rs.getString(2));
+            }
+        }
+
+        Map<String, Integer> levelOf = new HashMap<>();
+        List<List<TableSpec>> levels = new ArrayList<>();
+        for (TableSpec table : DataGenerator.TABLES) {
+            int level = level(table.name(), parents, levelOf, 0);
+            while (levels.size() <= level) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(level).add(table);
+        }
+        return levels;
+    }
+
+    private static int level(String table, Map<String, List<String>> parents, Map<String, Integer> levelOf, int depth)
+    {
+        Integer known = levelOf.get(table);
+        if (known != null) {
+            return known;
+        }
+        if (depth > parents.size()) {
+            throw new IllegalStateException("Foreign key cycle involving " + table);
+        }
+        int level = 0;
+        for (String parent : parents.getOrDefault(table, List.of())) {
+            if (!parent.equals(table)) {
+                level = Math.max(level, level(parent, parents, levelOf, depth + 1) + 1);
+            }
+        }
+        levelOf.put(table, level);
+        return level;
+    }
+
+    private static void await(List<Future<?>> tasks) throws SQLException
+    {
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while loading", e);
+        } catch (ExecutionException e) {
+            for (Future<?> task : tasks) {
+                task.cancel(true);
+            }
+            throw e.getCause() instanceof SQLException sql ? sql : new SQLException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.OffsetTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Feed of upcoming parties, ordered by (start_date, start_time_tz, party_id) and paged with keyset pagination:
+// every page continues after the sort key of the last party of the previous page (WHERE (...) > (...) ORDER BY ... LIMIT n)
+// instead of skipping rows with OFFSET. With party_datetime_start_idx (see IndexAdvisor) each page is an index range scan
+// that starts right at the cursor, so page 10000 costs the same as page 1, while OFFSET has to read and throw away
+// every row before the page. Only the columns the feed shows are selected.
+// Filters on type and fee are checked on the rows of the range scan, so very selective filters read more index entries per page.
+// Like any keyset feed, parties inserted before the cursor position after a page was read don't show up on later pages.
+public class PartyFeed
+{
+    public record Item(UUID partyId, String title, String type, BigDecimal attendanceFee, LocalDate startDate, OffsetTime startTime,
+                       String city, String country)
+    {
+    }
+
+    // Position after the last item of a page. encode() turns it into an opaque token for clients.
+    public record Cursor(LocalDate startDate, OffsetTime startTime, UUID partyId)
+    {
+        public String encode()
+        {
+            String key = startDate + "|" + startTime + "|" + partyId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static Cursor decode(String token)
+        {
+            String[] key = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|");
+            if (key.length != 3) {
+                throw new IllegalArgumentException("Invalid feed cursor " + token);
+            }
+            return new Cursor(LocalDate.parse(key[0]), OffsetTime.parse(key[1]), UUID.fromString(key[2]));
+        }
+    }
+
+    // next is null on the last page
+    public record Page(List<Item> items, Cursor next)
+    {
+    }
+
+    // Parties starting between from and to (inclusive). type, country and maxFee are optional, null matches everything.
+    public record Filter(LocalDate from, LocalDate to, String type, String country, BigDecimal maxFee)
+    {
+        public static Filter upcoming()
+        {
+            return new Filter(LocalDate.now(), LocalDate.MAX, null, null, null);
+        }
+    }
+
+    private final Connection connection;
+
+    public PartyFeed(Connection connection)
+    {
+        this.connection = connection;
+    }
+
+    // Returns up to pageSize parties after the cursor, or the first page if the cursor is null.
+    public Page page(Filter filter, Cursor after, int pageSize) throws SQLException
+    {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive, got " + pageSize);
+        }
+        List<Item> items = new ArrayList<>(pageSize);
+        Cursor next = null;
+        // One more than requested tells whether there is a next page
+        try (PreparedStatement statement = prepare(filter, after, 0, pageSize + 1); ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                if (items.size() == pageSize) {
+                    Item last = items.get(pageSize - 1);
+                    next = new Cursor(last.startDate(), last.startTime(), last.partyId());
+                    break;
+                }
+                items.add(new Item(rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3), rs.getBigDecimal(4),
+                        rs.getObject(5, LocalDate.class), rs.getObject(6, OffsetTime.class), rs.getString(7), rs.getString(8)));
+            }
+        }
+        return new Page(items, next);
+    }
+
+    // Walks the whole feed page by page and prints the latency of every power of ten page, next to the latency of the same
+    // page with OFFSET. Arguments: "pageSize" (default 20), "type", "country", "maxFee" filters, "offset=false" skips OFFSET.
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int pageSize = Integer.parseInt(options.getOrDefault("pageSize", "20"));
+        Filter filter = new Filter(LocalDate.now(), LocalDate.MAX, options.get("type"), options.get("country"),
+                options.containsKey("maxFee") ? new BigDecimal(options.get("maxFee")) : null);
+        boolean offset = !"false".equals(options.get("offset"));
+
+        try (Connection connection = DatabaseTest.connect(PartyRepository.driverProperties())) {
+            PartyFeed feed = new PartyFeed(connection);
+            Cursor cursor = null;
+            long pages = 0;
+            long items = 0;
+            long start = System.nanoTime();
+            System.out.printf("%10s %14s %14s%n", "page", "keyset ms", "offset ms");
+            do {
+                long pageStart = System.nanoTime();
+                Page page = feed.page(filter, cursor, pageSize);
+                long nanos = System.nanoTime() - pageStart;
+                pages++;
+                items += page.items().size();
+                cursor = page.next();
+                if (Long.bitCount(pages) == 1 || isPowerOfTen(pages)) {
+                    String offsetMillis = offset ? String.format("%14.3f", feed.offsetPageNanos(filter, (pages - 1) * pageSize, pageSize) / 1e6) : "";
+                    System.out.printf("%10d %14.3f %s%n", pages, nanos / 1e6, offsetMillis);
+                }
+            } while (cursor != null);
+            System.out.printf("%d parties on %d pages in %d ms%n", items, pages, (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+
+    private static boolean isPowerOfTen(long n)
+    {
+        while (n % 10 == 0) {
+            n /= 10;
+        }
+        return n == 1;
+    }
+
+    // The same page read with OFFSET, for comparison in main()
+    private long offsetPageNanos(Filter filter, long offset, int pageSize) throws SQLException
+    {
+        long start = System.nanoTime();
+        try (PreparedStatement statement = prepare(filter, null, offset, pageSize); ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                rs.getObject(1);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private PreparedStatement prepare(Filter filter, Cursor after, long offset, int limit) throws SQLException
+    {
+        StringBuilder sql = new StringBuilder("""
+                SELECT d.party_id, p.title, p.type::text, p.attendance_fee, d.start_date, d.start_time_tz, place.city, place.country
+                FROM party_datetime d
+                JOIN party_info p ON p.party_id = d.party_id
+                LEFT JOIN LATERAL (SELECT z.city, z.country FROM party_address a JOIN zip_code z ON z.zip_code = a.zip_code
+                                   WHERE a.party_id = d.party_id LIMIT 1) place ON true
+                WHERE d.start_date BETWEEN ? AND ?""");
+        List<Object> values = new ArrayList<>();
+        values.add(filter.from());
+        values.add(filter.to());
+        if (after != null) {
+            sql.append(" AND (d.start_date, d.start_time_tz, d.party_id) > (?, ?, ?)");
+            values.add(after.startDate());
+            values.add(after.startTime());
+            values.add(after.partyId());
+        }
+        if (filter.type() != null) {
+            sql.append(" AND p.type = ?::PARTY_TYPE");
+            values.add(filter.type());
+        }
+        if (filter.country() != null) {
+            sql.append(" AND place.country = ?");
+            values.add(filter.country());
+        }
+        if (filter.maxFee() != null) {
+            sql.append(" AND p.attendance_fee <= ?");
+            values.add(filter.maxFee());
+        }
+        sql.append(" ORDER BY d.start_date, d.start_time_tz, d.party_id LIMIT ?");
+        values.add(limit);
+        if (offset > 0) {
+            sql.append(" OFFSET ?");
+            values.add(offset);
+        }
+
+        PreparedStatement statement = connection.prepareStatement(sql.toString());
+        for (int i = 0; i < values.size(); i++) {
+            statement.setObject(i + 1, values.get(i));
+        }
+        return statement;
+    }
+}
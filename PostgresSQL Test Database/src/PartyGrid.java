@@ -0,0 +1,198 @@
+import org.postgresql.geometric.PGpoint;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+// Immutable in-memory snapshot of all party locations, bucketed into a uniform grid of cells,
+// to answer map viewport and nearby searches without a database round trip.
+// Points are stored in primitive arrays sorted by cell (compressed sparse row layout: cellStart[c] .. cellStart[c + 1]
+// are the points of cell c), which needs about 32 bytes per party and no objects per point.
+// The cell size is chosen from the data so that a cell holds about 16 parties on average.
+// The snapshot is not updated; load a new one and hand it to SpatialSearch.useGrid() to refresh.
+public final class PartyGrid
+{
+    private static final int POINTS_PER_CELL = 16;
+    private static final int MAX_CELLS_PER_AXIS = 2048;
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final double[] x;
+    private final double[] y;
+    private final long[] idHigh;
+    private final long[] idLow;
+
+    private PartyGrid(double[] x, double[] y, long[] idHigh, long[] idLow, int size)
+    {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+        if (size == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        double width = Math.max(maxX - minX, 1e-6);
+        double height = Math.max(maxY - minY, 1e-6);
+        double cellSize = Math.sqrt(width * height * POINTS_PER_CELL / Math.max(1, size));
+        cellSize = Math.max(cellSize, Math.max(width, height) / MAX_CELLS_PER_AXIS);
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        this.columns = (int) (width / cellSize) + 1;
+        this.rows = (int) (height / cellSize) + 1;
+
+        // Counting sort of the points by cell
+        int[] cellOf = new int[size];
+        this.cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < size; i++) {
+            cellOf[i] = cell(column(x[i]), row(y[i]));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = Arrays.copyOf(cellStart, cellStart.length - 1);
+        this.x = new double[size];
+        this.y = new double[size];
+        this.idHigh = new long[size];
+        this.idLow = new long[size];
+        for (int i = 0; i < size; i++) {
+            int target = next[cellOf[i]]++;
+            this.x[target] = x[i];
+            this.y[target] = y[i];
+            this.idHigh[target] = idHigh[i];
+            this.idLow[target] = idLow[i];
+        }
+    }
+
+    // Streams all of party_location into a new grid.
+    public static PartyGrid load(Connection connection) throws SQLException
+    {
+        int size = 0;
+        double[] x = new double[1024];
+        double[] y = new double[1024];
+        long[] idHigh = new long[1024];
+        long[] idLow = new long[1024];
+
+        boolean autoCommit = connection.getAutoCommit();
+        // A fetch size only makes the driver use a cursor inside a transaction
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.setFetchSize(10_000);
+            try (ResultSet rs = statement.executeQuery("SELECT party_id, coordinates FROM party_location")) {
+                while (rs.next()) {
+                    if (size == x.length) {
+                        x = Arrays.copyOf(x, size * 2);
+                        y = Arrays.copyOf(y, size * 2);
+                        idHigh = Arrays.copyOf(idHigh, size * 2);
+                        idLow = Arrays.copyOf(idLow, size * 2);
+                    }
+                    UUID id = rs.getObject(1, UUID.class);
+                    PGpoint point = (PGpoint) rs.getObject(2);
+                    x[size] = point.x;
+                    y[size] = point.y;
+                    idHigh[size] = id.getMostSignificantBits();
+                    idLow[size] = id.getLeastSignificantBits();
+                    size++;
+                }
+            }
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return new PartyGrid(x, y, idHigh, idLow, size);
+    }
+
+    public int size()
+    {
+        return x.length;
+    }
+
+    public List<SpatialSearch.NearbyParty> withinBox(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude, int limit)
+    {
+        List<SpatialSearch.NearbyParty> parties = new ArrayList<>();
+        int lastColumn = column(maxLongitude);
+        int lastRow = row(maxLatitude);
+        for (int r = row(minLatitude); r <= lastRow; r++) {
+            for (int c = column(minLongitude); c <= lastColumn; c++) {
+                int cell = cell(c, r);
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    if (x[i] >= minLongitude && x[i] <= maxLongitude && y[i] >= minLatitude && y[i] <= maxLatitude) {
+                        if (parties.size() == limit) {
+                            return parties;
+                        }
+                        parties.add(party(i, 0));
+                    }
+                }
+            }
+        }
+        return parties;
+    }
+
+    // Up to limit parties within radiusKm, closest first, like SpatialSearch.nearest().
+    public List<SpatialSearch.NearbyParty> nearest(double longitude, double latitude, double radiusKm, int limit)
+    {
+        if (limit <= 0) {
+            return List.of();
+        }
+        double dLat = radiusKm / SpatialSearch.KM_PER_DEGREE;
+        double dLon = radiusKm / (SpatialSearch.KM_PER_DEGREE * Math.max(0.01, Math.cos(Math.toRadians(latitude))));
+        // Max heap of the best candidates so far, the worst one on top
+        PriorityQueue<double[]> best = new PriorityQueue<>((a, b) -> Double.compare(b[0], a[0]));
+        int lastColumn = column(longitude + dLon);
+        int lastRow = row(latitude + dLat);
+        for (int r = row(latitude - dLat); r <= lastRow; r++) {
+            for (int c = column(longitude - dLon); c <= lastColumn; c++) {
+                int cell = cell(c, r);
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    double distance = SpatialSearch.distanceKm(longitude, latitude, x[i], y[i]);
+                    if (distance <= radiusKm && (best.size() < limit || distance < best.peek()[0])) {
+                        best.add(new double[]{distance, i});
+                        if (best.size() > limit) {
+                            best.poll();
+                        }
+                    }
+                }
+            }
+        }
+        SpatialSearch.NearbyParty[] parties = new SpatialSearch.NearbyParty[best.size()];
+        for (int i = parties.length - 1; i >= 0; i--) {
+            double[] candidate = best.poll();
+            parties[i] = party((int) candidate[1], candidate[0]);
+        }
+        return Arrays.asList(parties);
+    }
+
+    private SpatialSearch.NearbyParty party(int i, double distanceKm)
+    {
+        return new SpatialSearch.NearbyParty(new UUID(idHigh[i], idLow[i]), x[i], y[i], distanceKm);
+    }
+
+    private int column(double longitude)
+    {
+        return (int) Math.max(0, Math.min(columns - 1, Math.floor((longitude - minX) / cellSize)));
+    }
+
+    private int row(double latitude)
+    {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((latitude - minY) / cellSize)));
+    }
+
+    private int cell(int column, int row)
+    {
+        return row * columns + column;
+    }
+}
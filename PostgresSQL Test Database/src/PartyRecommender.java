@@ -0,0 +1,599 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Party recommendations from the user/party graph of favourites and party_attendees, computed in memory:
+// "users who favourited this party also favourited ..." (alsoFavourited()) and "parties similar to this user's
+// favourites" (forUser()). Emails and party ids are dictionary encoded to ints, and the graph is kept as two compressed
+// sparse row arrays (the parties of every user, the users of every party) like PartyGrid, with a weight per edge:
+// 1 for a favourite, 0.5 for an attendance that was not declined. For every party the "neighbours" most similar parties
+// are precomputed by cosine similarity of their user vectors, in parallel with fork/join, so a request only reads
+// precomputed lists and answers in microseconds. Users with more than "maxUserDegree" parties are left out of the
+// similarities, they are mostly bots or test accounts and would make the co-occurrence counting quadratic.
+// refresh() reads the rows added since the last load (by favourited_at and attendee_since) and recomputes the neighbours
+// of the parties they touch and of the parties sharing a user with those, whose cosine scores change with the norms.
+// Deleted favourites and declined attendances are only dropped by the next load().
+// Requests are lock free and always see a complete snapshot; load() and refresh() are serialized.
+public class PartyRecommender
+{
+    public record Recommendation(UUID partyId, float score)
+    {
+    }
+
+    private static final float FAVOURITE = 1.0f;
+    private static final float ATTENDED = 0.5f;
+    private static final int LEAF_PARTIES = 64;
+
+    // Immutable snapshot of the graph and the neighbour lists
+    private static final class Graph
+    {
+        final int users;
+        final int parties;
+        final int[] userStart;
+        final int[] userParties;
+        final float[] userWeights;
+        final int[] partyStart;
+        final int[] partyUsers;
+        final float[] partyWeights;
+        final float[] norms;
+        final int[][] neighbours;
+        final float[][] scores;
+
+        Graph(int users, int parties, long[] edges, int edgeCount)
+        {
+            this.users = users;
+            this.parties = parties;
+            // Edges are sorted by user and party, so every user's parties are sorted too
+            this.userStart = new int[users + 1];
+            this.userParties = new int[edgeCount];
+            this.userWeights = new float[edgeCount];
+            this.partyStart = new int[parties + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                userStart[user(edges[e]) + 1]++;
+                partyStart[party(edges[e]) + 1]++;
+                userParties[e] = party(edges[e]);
+                userWeights[e] = weight(edges[e]);
+            }
+            for (int u = 0; u < users; u++) {
+                userStart[u + 1] += userStart[u];
+            }
+            for (int p = 0; p < parties; p++) {
+                partyStart[p + 1] += partyStart[p];
+            }
+            this.partyUsers = new int[edgeCount];
+            this.partyWeights = new float[edgeCount];
+            this.norms = new float[parties];
+            int[] next = Arrays.copyOf(partyStart, parties);
+            for (int e = 0; e < edgeCount; e++) {
+                int target = next[party(edges[e])]++;
+                partyUsers[target] = user(edges[e]);
+                partyWeights[target] = weight(edges[e]);
+                norms[party(edges[e])] += weight(edges[e]) * weight(edges[e]);
+            }
+            for (int p = 0; p < parties; p++) {
+                norms[p] = (float) Math.sqrt(norms[p]);
+            }
+            this.neighbours = new int[parties][];
+            this.scores = new float[parties][];
+        }
+
+        int edges()
+        {
+            return userParties.length;
+        }
+
+        // Index of the party in the user's sorted parties, negative if the user has no edge to it
+        int find(int user, int party)
+        {
+            return Arrays.binarySearch(userParties, userStart[user], userStart[user + 1], party);
+        }
+    }
+
+    // Reusable per thread accumulator, indexed by party
+    private static final class Scratch
+    {
+        float[] sums = new float[0];
+        int[] touched = new int[0];
+
+        void ensure(int parties)
+        {
+            if (sums.length < parties) {
+                sums = new float[parties];
+                touched = new int[parties];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int neighbourCount;
+    private final int maxUserDegree;
+    private final Duration overlap;
+    private final ForkJoinPool pool;
+
+    // Dictionaries only ever grow, the snapshot tells which entries it covers
+    private final Map<String, Integer> userIds = new ConcurrentHashMap<>();
+    private final Map<UUID, Integer> partyIds = new ConcurrentHashMap<>();
+    private final List<UUID> partiesById = Collections.synchronizedList(new ArrayList<>());
+    private volatile Graph graph = new Graph(0, 0, new long[0], 0);
+    private Instant watermark = Instant.EPOCH;
+
+    // Options "neighbours" (default 50), "maxUserDegree" (default 500) and "overlapSeconds" (default 5): rows are
+    // read again that far before the last watermark, so rows of transactions that committed late are not missed.
+    public PartyRecommender(Map<String, String> options, ForkJoinPool pool)
+    {
+        this.neighbourCount = Integer.parseInt(options.getOrDefault("neighbours", "50"));
+        this.maxUserDegree = Integer.parseInt(options.getOrDefault("maxUserDegree", "500"));
+        this.overlap = Duration.ofSeconds(Long.parseLong(options.getOrDefault("overlapSeconds", "5")));
+        this.pool = pool;
+    }
+
+    // Reads the whole graph and computes the neighbours of all parties.
+    public synchronized void load(Connection connection) throws SQLException
+    {
+        watermark = Instant.EPOCH;
+        EdgeList edges = read(connection, Instant.EPOCH);
+        Graph next = build(edges.keys, edges.size);
+        computeNeighbours(next, null, null);
+        graph = next;
+    }
+
+    // Adds the rows added since the last load or refresh and returns the number of new edges.
+    public synchronized int refresh(Connection connection) throws SQLException
+    {
+        Graph current = graph;
+        EdgeList read = read(connection, watermark.minus(overlap));
+        // Only edges that are new or got a higher weight
+        EdgeList added = new EdgeList();
+        for (int i = 0; i < read.size; i++) {
+            long key = read.keys[i];
+            int user = user(key);
+            int index = user < current.users ? current.find(user, party(key)) : -1;
+            if (index < 0 || current.userWeights[index] < weight(key)) {
+                added.add(key);
+            }
+        }
+        if (added.size == 0) {
+            return 0;
+        }
+
+        // Parties whose co-occurrences changed: the new edges' parties and all other parties of their users
+        BitSet affected = new BitSet();
+        EdgeList all = new EdgeList();
+        for (int u = 0; u < current.users; u++) {
+            for (int e = current.userStart[u]; e < current.userStart[u + 1]; e++) {
+                all.add(key(u, current.userParties[e], current.userWeights[e] == FAVOURITE));
+            }
+        }
+        for (int i = 0; i < added.size; i++) {
+            all.add(added.keys[i]);
+            affected.set(party(added.keys[i]));
+        }
+        Graph next = build(all.keys, all.size);
+        BitSet changedNorms = (BitSet) affected.clone();
+        for (int i = 0; i < added.size; i++) {
+            int user = user(added.keys[i]);
+            for (int e = next.userStart[user]; e < next.userStart[user + 1]; e++) {
+                affected.set(next.userParties[e]);
+            }
+        }
+        // A new edge changes the norm of its party, and with it the party's score in the list of every party it shares a user with
+        for (int p = changedNorms.nextSetBit(0); p >= 0; p = changedNorms.nextSetBit(p + 1)) {
+            for (int e = next.partyStart[p]; e < next.partyStart[p + 1]; e++) {
+                int user = next.partyUsers[e];
+                if (next.userStart[user + 1] - next.userStart[user] <= maxUserDegree) {
+                    for (int f = next.userStart[user]; f < next.userStart[user + 1]; f++) {
+                        affected.set(next.userParties[f]);
+                    }
+                }
+            }
+        }
+        computeNeighbours(next, current, affected);
+        graph = next;
+        return added.size;
+    }
+
+    // Parties most often favourited or attended together with the party, best first.
+    public List<Recommendation> alsoFavourited(UUID partyId, int k)
+    {
+        Graph g = graph;
+        Integer party = partyIds.get(partyId);
+        if (party == null || party >= g.parties) {
+            return List.of();
+        }
+        int[] neighbours = g.neighbours[party];
+        float[] scores = g.scores[party];
+        List<Recommendation> recommendations = new ArrayList<>(Math.min(k, neighbours.length));
+        for (int i = 0; i < neighbours.length && i < k; i++) {
+            recommendations.add(new Recommendation(partiesById.get(neighbours[i]), scores[i]));
+        }
+        return recommendations;
+    }
+
+    // Parties similar to the user's favourites and attended parties that the user has neither favourited nor attended, best first.
+    public List<Recommendation> forUser(String email, int k)
+    {
+        Graph g = graph;
+        Integer user = userIds.get(email);
+        if (user == null || user >= g.users) {
+            return List.of();
+        }
+        Scratch scratch = SCRATCH.get();
+        scratch.ensure(g.parties);
+        float[] sums = scratch.sums;
+        int[] touched = scratch.touched;
+        int count = 0;
+        for (int e = g.userStart[user]; e < g.userStart[user + 1]; e++) {
+            int[] neighbours = g.neighbours[g.userParties[e]];
+            float[] scores = g.scores[g.userParties[e]];
+            for (int i = 0; i < neighbours.length; i++) {
+                if (sums[neighbours[i]] == 0) {
+                    touched[count++] = neighbours[i];
+                }
+                sums[neighbours[i]] += g.userWeights[e] * scores[i];
+            }
+        }
+        // The user's own parties are not recommended
+        for (int e = g.userStart[user]; e < g.userStart[user + 1]; e++) {
+            sums[g.userParties[e]] = -1;
+        }
+        TopK top = new TopK(k);
+        for (int i = 0; i < count; i++) {
+            if (sums[touched[i]] > 0) {
+                top.offer(touched[i], sums[touched[i]]);
+            }
+            sums[touched[i]] = 0;
+        }
+        for (int e = g.userStart[user]; e < g.userStart[user + 1]; e++) {
+            sums[g.userParties[e]] = 0;
+        }
+        return recommendations(top);
+    }
+
+    public int users()
+    {
+        return graph.users;
+    }
+
+    public int parties()
+    {
+        return graph.parties;
+    }
+
+    public int edges()
+    {
+        return graph.edges();
+    }
+
+    private List<Recommendation> recommendations(TopK top)
+    {
+        int size = top.sort();
+        List<Recommendation> recommendations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            recommendations.add(new Recommendation(partiesById.get(top.ids[i]), top.scores[i]));
+        }
+        return recommendations;
+    }
+
+    // Growable array of encoded edges: user in the upper 32 bits, party and a favourite bit in the lower ones
+    private static final class EdgeList
+    {
+        long[] keys = new long[1024];
+        int size;
+
+        void add(long key)
+        {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+    }
+
+    private static long key(int user, int party, boolean favourite)
+    {
+        return (long) user << 32 | (long) party << 1 | (favourite ? 1 : 0);
+    }
+
+    private static int user(long key)
+    {
+        return (int) (key >>> 32);
+    }
+
+    private static int party(long key)
+    {
+        return (int) (key & 0xFFFF_FFFFL) >>> 1;
+    }
+
+    private static float weight(long key)
+    {
+        return (key & 1) != 0 ? FAVOURITE : ATTENDED;
+    }
+
+    private EdgeList read(Connection connection, Instant since) throws SQLException
+    {
+        EdgeList edges = new EdgeList();
+        String[] queries = {
+                "SELECT email, party_id, favourited_at FROM favourites WHERE favourited_at > ?",
+                "SELECT attendee_email, party_id, attendee_since FROM party_attendees WHERE attendee_since > ? AND attendee_status <> 'declined'"};
+        Instant latest = watermark;
+        for (int q = 0; q < queries.length; q++) {
+            boolean favourite = q == 0;
+            try (PreparedStatement statement = connection.prepareStatement(queries[q])) {
+                statement.setTimestamp(1, Timestamp.from(since));
+                Instant[] max = {latest};
+                ResultStreamer.forEach(connection, statement, 10_000, row -> {
+                    edges.add(key(userId(row.getString(1)), partyId(row.getUuid(2)), favourite));
+                    Instant time = row.getObject(3, OffsetDateTime.class).toInstant();
+                    if (time.isAfter(max[0])) {
+                        max[0] = time;
+                    }
+                });
+                latest = max[0];
+            }
+        }
+        watermark = latest;
+        return edges;
+    }
+
+    private int userId(String email)
+    {
+        Integer id = userIds.get(email);
+        if (id == null) {
+            id = userIds.size();
+            userIds.put(email, id);
+        }
+        return id;
+    }
+
+    private int partyId(UUID party)
+    {
+        Integer id = partyIds.get(party);
+        if (id == null) {
+            id = partiesById.size();
+            partiesById.add(party);
+            partyIds.put(party, id);
+        }
+        return id;
+    }
+
+    // Sorts and deduplicates the edges, a favourite wins over an attendance of the same party.
+    private Graph build(long[] keys, int size)
+    {
+        Arrays.parallelSort(keys, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            // Same user and party as the previous edge: the later one has the favourite bit if either has
+            if (unique > 0 && keys[unique - 1] >>> 1 == keys[i] >>> 1) {
+                keys[unique - 1] = keys[i];
+            } else {
+                keys[unique++] = keys[i];
+            }
+        }
+        return new Graph(userIds.size(), partiesById.size(), keys, unique);
+    }
+
+    // Computes the neighbours of the affected parties (all if null) and takes the others from the previous graph.
+    private void computeNeighbours(Graph next, Graph previous, BitSet affected)
+    {
+        int[] targets;
+        if (affected == null) {
+            targets = new int[next.parties];
+            Arrays.setAll(targets, p -> p);
+        } else {
+            for (int p = 0; p < next.parties; p++) {
+                if (p >= previous.parties) {
+                    affected.set(p);
+                } else if (!affected.get(p)) {
+                    next.neighbours[p] = previous.neighbours[p];
+                    next.scores[p] = previous.scores[p];
+                }
+            }
+            targets = affected.stream().toArray();
+        }
+        pool.invoke(new NeighbourTask(next, targets, 0, targets.length));
+    }
+
+    private final class NeighbourTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final Graph g;
+        private final int[] targets;
+        private final int from;
+        private final int to;
+
+        NeighbourTask(Graph g, int[] targets, int from, int to)
+        {
+            this.g = g;
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from > LEAF_PARTIES) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new NeighbourTask(g, targets, from, middle), new NeighbourTask(g, targets, middle, to));
+                return;
+            }
+            Scratch scratch = SCRATCH.get();
+            scratch.ensure(g.parties);
+            for (int i = from; i < to; i++) {
+                neighbours(g, targets[i], scratch);
+            }
+        }
+    }
+
+    // Cosine similarity of the party with every party that shares a user with it, the best neighbourCount are kept.
+    private void neighbours(Graph g, int party, Scratch scratch)
+    {
+        float[] sums = scratch.sums;
+        int[] touched = scratch.touched;
+        int count = 0;
+        for (int e = g.partyStart[party]; e < g.partyStart[party + 1]; e++) {
+            int user = g.partyUsers[e];
+            if (g.userStart[user + 1] - g.userStart[user] > maxUserDegree) {
+                continue;
+            }
+            float weight = g.partyWeights[e];
+            for (int f = g.userStart[user]; f < g.userStart[user + 1]; f++) {
+                int other = g.userParties[f];
+                if (other != party) {
+                    if (sums[other] == 0) {
+                        touched[count++] = other;
+                    }
+                    sums[other] += weight * g.userWeights[f];
+                }
+            }
+        }
+        TopK top = new TopK(neighbourCount);
+        for (int i = 0; i < count; i++) {
+            int other = touched[i];
+            top.offer(other, sums[other] / (g.norms[party] * g.norms[other]));
+            sums[other] = 0;
+        }
+        int size = top.sort();
+        g.neighbours[party] = Arrays.copyOf(top.ids, size);
+        g.scores[party] = Arrays.copyOf(top.scores, size);
+    }
+
+    // The k highest scores in a min heap on primitive arrays, sort() turns it into descending order.
+    private static final class TopK
+    {
+        final int[] ids;
+        final float[] scores;
+        int size;
+
+        TopK(int k)
+        {
+            this.ids = new int[k];
+            this.scores = new float[k];
+        }
+
+        void offer(int id, float score)
+        {
+            if (size < ids.length) {
+                ids[size] = id;
+                scores[size] = score;
+                up(size++);
+            } else if (ids.length > 0 && score > scores[0]) {
+                ids[0] = id;
+                scores[0] = score;
+                down(0, size);
+            }
+        }
+
+        // Heap sort in place, returns the number of entries
+        int sort()
+        {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                down(0, end);
+            }
+            return size;
+        }
+
+        private void up(int i)
+        {
+            while (i > 0 && scores[(i - 1) / 2] > scores[i]) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        private void down(int i, int end)
+        {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                if (left < end && scores[left] < scores[smallest]) {
+                    smallest = left;
+                }
+                if (left + 1 < end && scores[left + 1] < scores[smallest]) {
+                    smallest = left + 1;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b)
+        {
+            int id = ids[a];
+            ids[a] = ids[b];
+            ids[b] = id;
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+
+    // Arguments: "requests" (default 100000) random requests of each kind after loading, "k" (default 10),
+    // "threads" for the fork/join pool (default all processors) and the options of the constructor.
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int requests = Integer.parseInt(options.getOrDefault("requests", "100000"));
+        int k = Integer.parseInt(options.getOrDefault("k", "10"));
+        ForkJoinPool pool = new ForkJoinPool(Integer.parseInt(options.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors()))));
+
+        try (Connection connection = DatabaseTest.connect(DatabaseTest.driverProperties(options))) {
+            PartyRecommender recommender = new PartyRecommender(options, pool);
+            long start = System.nanoTime();
+            recommender.load(connection);
+            System.out.printf("Loaded %d users, %d parties, %d edges and their neighbours in %d ms%n", recommender.users(),
+                    recommender.parties(), recommender.edges(), (System.nanoTime() - start) / 1_000_000);
+
+            String[] emails = recommender.userIds.keySet().toArray(String[]::new);
+            UUID[] parties = recommender.partiesById.toArray(UUID[]::new);
+            if (emails.length == 0 || parties.length == 0) {
+                System.out.println("There are no favourites or attendees to recommend from");
+                return;
+            }
+            Random random = new Random(42);
+            LatencyHistogram partyLatency = new LatencyHistogram();
+            LatencyHistogram userLatency = new LatencyHistogram();
+            long results = 0;
+            for (int i = 0; i < requests; i++) {
+                long requestStart = System.nanoTime();
+                results += recommender.alsoFavourited(parties[random.nextInt(parties.length)], k).size();
+                partyLatency.record(System.nanoTime() - requestStart);
+                requestStart = System.nanoTime();
+                results += recommender.forUser(emails[random.nextInt(emails.length)], k).size();
+                userLatency.record(System.nanoTime() - requestStart);
+            }
+            System.out.println("alsoFavourited " + partyLatency.summary());
+            System.out.println("forUser        " + userLatency.summary());
+            System.out.println(results + " recommendations");
+
+            start = System.nanoTime();
+            int added = recommender.refresh(connection);
+            System.out.printf("Refresh added %d edges in %d ms%n", added, (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
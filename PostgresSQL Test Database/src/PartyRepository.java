@@ -0,0 +1,110 @@
+import org.postgresql.PGStatement;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+// Typed access to the parameterized queries of EvenueQuery for a single connection.
+// Each query is prepared once per repository and the PreparedStatement is kept and reused. With prepareThreshold 1
+// the driver turns it into a named server side prepared statement on the first execution, so every later call
+// only sends Bind/Execute and skips parsing and planning on the server.
+// Not thread safe: like the connection it wraps, a repository is meant to be used by one thread at a time.
+public class PartyRepository implements AutoCloseable
+{
+    // A party a user attends, together with the attendance status (query 6).
+    public record AttendedParty(UUID partyId, String title, String type, short maxGuests, String host,
+                                BigDecimal attendanceFee, String attendeeStatus)
+    {
+    }
+
+    public record Person(String email, String firstName, String lastName)
+    {
+    }
+
+    private final Connection connection;
+    private final Map<EvenueQuery, PreparedStatement> statements = new HashMap<>();
+
+    public PartyRepository(Connection connection)
+    {
+        this.connection = connection;
+    }
+
+    // Driver properties for connections used with prepared statements: server side prepare on first use,
+    // and a driver statement cache that is big enough for all queries of the app.
+    public static Properties driverProperties()
+    {
+        Properties properties = new Properties();
+        properties.setProperty("prepareThreshold", "1");
+        properties.setProperty("preparedStatementCacheQueries", "256");
+        properties.setProperty("preparedStatementCacheSizeMiB", "5");
+        return properties;
+    }
+
+    // Returns the cached PreparedStatement of the query, preparing it on first use.
+    public PreparedStatement statement(EvenueQuery query) throws SQLException
+    {
+        PreparedStatement statement = statements.get(query);
+        if (statement == null) {
+            statement = connection.prepareStatement(query.sql);
+            statement.unwrap(PGStatement.class).setPrepareThreshold(1);
+            statements.put(query, statement);
+        }
+        return statement;
+    }
+
+    public List<AttendedParty> partiesAttendedBy(String email) throws SQLException
+    {
+        PreparedStatement statement = statement(EvenueQuery.PARTIES_ATTENDED_BY);
+        statement.setString(1, email);
+        List<AttendedParty> parties = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                parties.add(new AttendedParty(rs.getObject("party_id", UUID.class), rs.getString("title"), rs.getString("type"),
+                        rs.getShort("max_guests"), rs.getString("host"), rs.getBigDecimal("attendance_fee"), rs.getString("attendee_status")));
+            }
+        }
+        return parties;
+    }
+
+    public List<Person> attendeesOf(UUID partyId) throws SQLException
+    {
+        PreparedStatement statement = statement(EvenueQuery.ATTENDEES_OF);
+        statement.setObject(1, partyId);
+        return people(statement);
+    }
+
+    public List<Person> usersAttendingInZip(String zipCode) throws SQLException
+    {
+        PreparedStatement statement = statement(EvenueQuery.USERS_ATTENDING_IN_ZIP);
+        statement.setString(1, zipCode);
+        return people(statement);
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        for (PreparedStatement statement : statements.values()) {
+            statement.close();
+        }
+        statements.clear();
+    }
+
+    private static List<Person> people(PreparedStatement statement) throws SQLException
+    {
+        List<Person> people = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                people.add(new Person(rs.getString("email"), rs.getString("first_name"), rs.getString("last_name")));
+            }
+        }
+        return people;
+    }
+}
@@ -0,0 +1,262 @@
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// Keyword search over the title, party_description and guest_description of party_info.
+// install() adds search_vector, a stored generated tsvector of the three columns in the German and the English
+// configuration (German first, as the app is, but English words are common in party descriptions), weighted title A,
+// party description B and guest description C, with a GIN index. A search matches the websearch_to_tsquery() of the
+// text in either configuration, so "Gartenpartys" finds "Gartenparty" and "parties" finds "party", and is ranked with
+// ts_rank_cd. The ranking reads every match, so very common words are slower than rare ones unless a filter narrows them.
+// If nothing matches, the first page falls back to a trigram search on the title (pg_trgm word_similarity with a GIN
+// trigram index), which finds titles with typos like "Gartnparty". Pages are keyset paginated on (rank, party_id)
+// like PartyFeed, stream() returns all hits in rank order through a server side cursor.
+public class PartySearch
+{
+    public record Hit(UUID partyId, String title, String type, LocalDate startDate, float rank)
+    {
+    }
+
+    // Position after the last hit of a page, fuzzy tells that the page came from the trigram fallback
+    public record Cursor(boolean fuzzy, float rank, UUID partyId)
+    {
+        public String encode()
+        {
+            String key = (fuzzy ? "f" : "t") + "|" + Float.floatToIntBits(rank) + "|" + partyId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static Cursor decode(String token)
+        {
+            String[] key = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|");
+            if (key.length != 3) {
+                throw new IllegalArgumentException("Invalid search cursor " + token);
+            }
+            return new Cursor(key[0].equals("f"), Float.intBitsToFloat(Integer.parseInt(key[1])), UUID.fromString(key[2]));
+        }
+    }
+
+    // next is null on the last page
+    public record Page(List<Hit> hits, Cursor next)
+    {
+    }
+
+    // type, from and to are optional, null matches everything. from and to (inclusive) filter on the start date.
+    public record Filter(String type, LocalDate from, LocalDate to)
+    {
+        public static Filter none()
+        {
+            return new Filter(null, null, null);
+        }
+    }
+
+    private static final String TEXT_QUERY = "(SELECT websearch_to_tsquery('german', ?) || websearch_to_tsquery('english', ?) AS q) query";
+
+    private final Connection connection;
+
+    public PartySearch(Connection connection)
+    {
+        this.connection = connection;
+    }
+
+    // Adds the search column and indexes if they don't exist yet. Adding the column rewrites party_info once.
+    public static void install(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+            statement.executeUpdate("""
+                    ALTER TABLE party_info ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (
+                        setweight(to_tsvector('german', title), 'A') || setweight(to_tsvector('english', title), 'A') ||
+                        setweight(to_tsvector('german', party_description), 'B') || setweight(to_tsvector('english', party_description), 'B') ||
+                        setweight(to_tsvector('german', guest_description), 'C') || setweight(to_tsvector('english', guest_description), 'C')) STORED
+                    """);
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS party_info_search_idx ON party_info USING gin (search_vector)");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS party_info_title_trgm_idx ON party_info USING gin (title gin_trgm_ops)");
+            statement.executeUpdate("ANALYZE party_info");
+        }
+    }
+
+    // Returns up to pageSize hits after the cursor, or the first page if the cursor is null.
+    public Page page(String text, Filter filter, Cursor after, int pageSize) throws SQLException
+    {
+        boolean fuzzy = after != null && after.fuzzy();
+        Page page = page(text, filter, after, pageSize, fuzzy);
+        if (after == null && page.hits().isEmpty()) {
+            page = page(text, filter, null, pageSize, true);
+        }
+        return page;
+    }
+
+    // All full text hits in rank order, read fetchSize rows at a time. The stream must be closed, see ResultStreamer.stream().
+    public Stream<Hit> stream(String text, Filter filter, int fetchSize) throws SQLException
+    {
+        PreparedStatement statement = prepare(text, filter, null, false, 0);
+        return ResultStreamer.stream(connection, statement, fetchSize).map(row -> {
+            try {
+                return new Hit(row.getUuid(1), row.getString(2), row.getString(3), row.getObject(4, LocalDate.class), (float) row.getDouble(5));
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private Page page(String text, Filter filter, Cursor after, int pageSize, boolean fuzzy) throws SQLException
+    {
+        List<Hit> hits = new ArrayList<>(pageSize);
+        Cursor next = null;
+        // One more than requested tells whether there is a next page
+        try (PreparedStatement statement = prepare(text, filter, after, fuzzy, pageSize + 1); ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                if (hits.size() == pageSize) {
+                    Hit last = hits.get(pageSize - 1);
+                    next = new Cursor(fuzzy, last.rank(), last.partyId());
+                    break;
+                }
+                hits.add(new Hit(rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3), rs.getObject(4, LocalDate.class), rs.getFloat(5)));
+            }
+        }
+        return new Page(hits, next);
+    }
+
+    // limit 0 means no limit
+    private PreparedStatement prepare(String text, Filter filter, Cursor after, boolean fuzzy, int limit) throws SQLException
+    {
+        List<Object> values = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT p.party_id, p.title, p.type::text, d.start_date, ");
+        if (fuzzy) {
+            sql.append("word_similarity(?, p.title) AS rank FROM party_info p");
+            values.add(text);
+        } else {
+            sql.append("ts_rank_cd(p.search_vector, q) AS rank FROM party_info p CROSS JOIN ").append(TEXT_QUERY);
+            values.add(text);
+            values.add(text);
+        }
+        sql.append(" LEFT JOIN party_datetime d ON d.party_id = p.party_id");
+        if (fuzzy) {
+            sql.append(" WHERE ? <% p.title");
+            values.add(text);
+        } else {
+            sql.append(" WHERE p.search_vector @@ q");
+        }
+        if (filter.type() != null) {
+            sql.append(" AND p.type = ?::PARTY_TYPE");
+            values.add(filter.type());
+        }
+        if (filter.from() != null) {
+            sql.append(" AND d.start_date >= ?");
+            values.add(filter.from());
+        }
+        if (filter.to() != null) {
+            sql.append(" AND d.start_date <= ?");
+            values.add(filter.to());
+        }
+
+        // The rank is a real computed per row, so the keyset condition goes around the ranked rows
+        String ranked = sql.toString();
+        sql.setLength(0);
+        sql.append("SELECT * FROM (").append(ranked).append(") hits");
+        if (after != null) {
+            sql.append(" WHERE (rank, party_id) < (?::real, ?)");
+            values.add(after.rank());
+            values.add(after.partyId());
+        }
+        sql.append(" ORDER BY rank DESC, party_id DESC");
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+            values.add(limit);
+        }
+
+        PreparedStatement statement = connection.prepareStatement(sql.toString());
+        for (int i = 0; i < values.size(); i++) {
+            statement.setObject(i + 1, values.get(i));
+        }
+        return statement;
+    }
+
+    // Searches random words from the party titles, once as typed and once with a typo, and prints the latency of the first
+    // page next to a LIKE '%word%' scan over the same columns. Arguments: "searches" (default 200), "pageSize" (default 20),
+    // "type" filter, "install=true" adds the search column and indexes first, "like=false" skips the LIKE comparison.
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int searches = Integer.parseInt(options.getOrDefault("searches", "200"));
+        int pageSize = Integer.parseInt(options.getOrDefault("pageSize", "20"));
+        Filter filter = new Filter(options.get("type"), null, null);
+        boolean like = !"false".equals(options.get("like"));
+
+        try (Connection connection = DatabaseTest.connect(PartyRepository.driverProperties())) {
+            if ("true".equals(options.get("install"))) {
+                long start = System.nanoTime();
+                install(connection);
+                System.out.println("Installed search column and indexes in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+            List<String> words = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT title FROM party_info ORDER BY random() LIMIT " + searches)) {
+                while (rs.next()) {
+                    String[] titleWords = rs.getString(1).split("[^\\p{L}]+");
+                    String longest = "";
+                    for (String word : titleWords) {
+                        longest = word.length() > longest.length() ? word : longest;
+                    }
+                    if (longest.length() >= 4) {
+                        words.add(longest);
+                    }
+                }
+            }
+
+            PartySearch search = new PartySearch(connection);
+            Random random = new Random(42);
+            LatencyHistogram exact = new LatencyHistogram();
+            LatencyHistogram typos = new LatencyHistogram();
+            LatencyHistogram scans = new LatencyHistogram();
+            long hits = 0;
+            for (String word : words) {
+                long start = System.nanoTime();
+                hits += search.page(word, filter, null, pageSize).hits().size();
+                exact.record(System.nanoTime() - start);
+
+                // Drops one letter
+                int typo = 1 + random.nextInt(word.length() - 2);
+                start = System.nanoTime();
+                hits += search.page(word.substring(0, typo) + word.substring(typo + 1), filter, null, pageSize).hits().size();
+                typos.record(System.nanoTime() - start);
+
+                if (like) {
+                    start = System.nanoTime();
+                    try (PreparedStatement statement = connection.prepareStatement("SELECT party_id, title FROM party_info "
+                            + "WHERE title ILIKE ? OR party_description ILIKE ? OR guest_description ILIKE ? LIMIT " + pageSize)) {
+                        for (int i = 1; i <= 3; i++) {
+                            statement.setString(i, "%" + word + "%");
+                        }
+                        try (ResultSet rs = statement.executeQuery()) {
+                            while (rs.next()) {
+                                hits++;
+                            }
+                        }
+                    }
+                    scans.record(System.nanoTime() - start);
+                }
+            }
+            System.out.println(words.size() + " searches, " + hits + " hits");
+            System.out.println("full text " + exact.summary());
+            System.out.println("with typo " + typos.summary());
+            if (like) {
+                System.out.println("LIKE scan " + scans.summary());
+            }
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetTime;
+import java.util.UUID;
+
+// Everything the party detail screen shows, assembled from party_info, party_datetime, party_location, party_address,
+// zip_code and the number of party_attendees rows. Parts that have no row yet (e.g. no address) are null,
+// missing coordinates are NaN.
+public record PartyView(UUID partyId, String title, String type, short maxGuests, String host, BigDecimal attendanceFee,
+                        LocalDate startDate, OffsetTime startTime, LocalDate endDate, OffsetTime endTime,
+                        double longitude, double latitude, String streetName, String streetNumber,
+                        String zipCode, String city, String state, String country, long attendees)
+{
+}
@@ -0,0 +1,444 @@
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.postgresql.geometric.PGpoint;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Read-through cache of PartyView by party_id, so repeated views of a party cost one hash lookup instead of a six table query.
+// Eviction follows W-TinyLFU: new entries go into a small LRU window (1% of the size), entries leaving the window compete
+// with the least recently used entry of the main area, and the one that was requested more often recently stays.
+// Request frequencies are kept in a count-min sketch of 4 bit counters that is halved every 10 * size requests,
+// so one burst of requests to a party doesn't keep it in the cache forever. The main area is a segmented LRU,
+// entries hit a second time move from probation to the protected segment (80% of the main area).
+// Entries also expire ttl after they were loaded.
+// Writes through PartyWrites invalidate the party right away. Writes from anywhere else are picked up with
+// installTriggers() and startListening(): triggers on the underlying tables send the party_id with NOTIFY, and a listener
+// thread invalidates it. A TRUNCATE sends "*", which empties the cache.
+// Loads don't hold the lock. A load that overlaps with any invalidation is returned but not cached,
+// so a view read before a write can't be cached after the write's invalidation.
+public class PartyViewCache implements AutoCloseable
+{
+    static final String CHANNEL = "party_view";
+
+    private static final String LOAD_SQL = """
+            SELECT p.title, p.type::text, p.max_guests, p.host, p.attendance_fee,
+                   d.start_date, d.start_time_tz, d.end_date, d.end_time_tz, l.coordinates,
+                   a.street_name, a.street_number, a.zip_code, z.city, z.state, z.country,
+                   (SELECT count(*) FROM party_attendees pa WHERE pa.party_id = p.party_id)
+            FROM party_info p
+            LEFT JOIN party_datetime d ON d.party_id = p.party_id
+            LEFT JOIN party_location l ON l.party_id = p.party_id
+            LEFT JOIN party_address a ON a.party_id = p.party_id
+            LEFT JOIN zip_code z ON z.zip_code = a.zip_code
+            WHERE p.party_id = ?
+            LIMIT 1""";
+
+    // Tables a PartyView is made of, each gets the notify triggers
+    private static final String[] TABLES = {"party_info", "party_datetime", "party_location", "party_address", "zip_code", "party_attendees"};
+
+    public record Stats(long hits, long misses, long loads, long evictions, long expirations, long invalidations, long loadNanos)
+    {
+        public double hitRate()
+        {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("hits %d  misses %d  hit rate %.1f%%  loads %d (avg %.3f ms)  evictions %d  expirations %d  invalidations %d",
+                    hits, misses, hitRate() * 100, loads, loads == 0 ? 0 : loadNanos / 1e6 / loads, evictions, expirations, invalidations);
+        }
+    }
+
+    private static final class Entry
+    {
+        final PartyView view;
+        final long loadedAt;
+
+        Entry(PartyView view, long loadedAt)
+        {
+            this.view = view;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final long ttlNanos;
+    private final int windowSize;
+    private final int mainSize;
+    private final int protectedSize;
+    private final FrequencySketch sketch;
+    // Access ordered, the first entry is the least recently used one. All guarded by this.
+    private final LinkedHashMap<UUID, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<UUID, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<UUID, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    private Thread listener;
+    private volatile boolean closed;
+
+    public PartyViewCache(ConnectionPool pool, int maximumSize, Duration ttl)
+    {
+        this.pool = pool;
+        this.ttlNanos = ttl.toNanos();
+        this.windowSize = Math.max(1, maximumSize / 100);
+        this.mainSize = Math.max(0, maximumSize - windowSize);
+        this.protectedSize = mainSize * 4 / 5;
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    // Returns the view of the party, loading it on a miss, or null if there is no such party.
+    public PartyView get(UUID partyId) throws SQLException
+    {
+        long loadGeneration;
+        synchronized (this) {
+            sketch.increment(hash(partyId));
+            Entry entry = access(partyId);
+            if (entry != null) {
+                if (System.nanoTime() - entry.loadedAt < ttlNanos) {
+                    hits.incrementAndGet();
+                    return entry.view;
+                }
+                remove(partyId);
+                expirations.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            loadGeneration = generation;
+        }
+
+        long start = System.nanoTime();
+        PartyView view = load(partyId);
+        loads.incrementAndGet();
+        loadNanos.addAndGet(System.nanoTime() - start);
+        if (view != null) {
+            synchronized (this) {
+                if (loadGeneration == generation && !contains(partyId)) {
+                    admit(partyId, new Entry(view, start));
+                }
+            }
+        }
+        return view;
+    }
+
+    public synchronized void invalidate(UUID partyId)
+    {
+        generation++;
+        invalidations.incrementAndGet();
+        remove(partyId);
+    }
+
+    public synchronized void invalidateAll()
+    {
+        generation++;
+        invalidations.incrementAndGet();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+    }
+
+    public synchronized int size()
+    {
+        return window.size() + probation.size() + protectedSegment.size();
+    }
+
+    public Stats stats()
+    {
+        return new Stats(hits.get(), misses.get(), loads.get(), evictions.get(), expirations.get(), invalidations.get(), loadNanos.get());
+    }
+
+    // Creates the triggers that NOTIFY the party_id of every changed row of the PartyView tables.
+    // zip_code rows have no party_id, the parties are looked up through party_address.
+    public static void installTriggers(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("""
+                    CREATE OR REPLACE FUNCTION party_view_notify() RETURNS trigger LANGUAGE plpgsql AS $$
+                    BEGIN
+                        IF TG_LEVEL = 'STATEMENT' THEN
+                            PERFORM pg_notify('party_view', '*');
+                        ELSIF TG_TABLE_NAME = 'zip_code' THEN
+                            IF TG_OP <> 'INSERT' THEN
+                                PERFORM pg_notify('party_view', a.party_id::text) FROM party_address a WHERE a.zip_code = OLD.zip_code;
+                            END IF;
+                            IF TG_OP <> 'DELETE' THEN
+                                PERFORM pg_notify('party_view', a.party_id::text) FROM party_address a WHERE a.zip_code = NEW.zip_code;
+                            END IF;
+                        ELSE
+                            IF TG_OP <> 'INSERT' THEN
+                                PERFORM pg_notify('party_view', OLD.party_id::text);
+                            END IF;
+                            IF TG_OP <> 'DELETE' THEN
+                                PERFORM pg_notify('party_view', NEW.party_id::text);
+                            END IF;
+                        END IF;
+                        RETURN NULL;
+                    END
+                    $$""");
+            for (String table : TABLES) {
+                statement.executeUpdate("DROP TRIGGER IF EXISTS party_view_notify ON " + table);
+                statement.executeUpdate("DROP TRIGGER IF EXISTS party_view_truncate ON " + table);
+                statement.executeUpdate("CREATE TRIGGER party_view_notify AFTER INSERT OR UPDATE OR DELETE ON " + table
+                        + " FOR EACH ROW EXECUTE FUNCTION party_view_notify()");
+                statement.executeUpdate("CREATE TRIGGER party_view_truncate AFTER TRUNCATE ON " + table
+                        + " FOR EACH STATEMENT EXECUTE FUNCTION party_view_notify()");
+            }
+        }
+    }
+
+    // Starts a daemon thread that LISTENs on its own connection and invalidates the notified parties.
+    // If the listener connection fails, the cache is emptied, as it can no longer tell what changed.
+    public void startListening() throws SQLException
+    {
+        Connection connection = DatabaseTest.connect(new Properties());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        listener = new Thread(() -> {
+            try (connection) {
+                while (!closed) {
+                    PGNotification[] notifications = pgConnection.getNotifications(500);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        if (notification.getParameter().equals("*")) {
+                            invalidateAll();
+                        } else {
+                            invalidate(UUID.fromString(notification.getParameter()));
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (!closed) {
+                    System.out.println("Exception: " + e.getMessage());
+                    invalidateAll();
+                }
+            }
+        }, "party-view-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        if (listener != null) {
+            try {
+                listener.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Looks up party views with a Zipf distribution over all parties and prints how many loads the cache saved.
+    // Arguments: "size" (default 1000), "ttl" in seconds (default 60), "lookups" (default 100000), "skew" (default 1.0),
+    // "poolSize" (default 4), "listen=true" to install the triggers and listen for changes.
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int size = Integer.parseInt(options.getOrDefault("size", "1000"));
+        Duration ttl = Duration.ofSeconds(Long.parseLong(options.getOrDefault("ttl", "60")));
+        int lookups = Integer.parseInt(options.getOrDefault("lookups", "100000"));
+        double skew = Double.parseDouble(options.getOrDefault("skew", "1.0"));
+        int poolSize = Integer.parseInt(options.getOrDefault("poolSize", "4"));
+
+        try (ConnectionPool pool = new ConnectionPool(poolSize, PartyRepository.driverProperties(), 10_000);
+             PartyViewCache cache = new PartyViewCache(pool, size, ttl)) {
+            List<UUID> partyIds = new ArrayList<>();
+            try (Connection connection = pool.borrow(); Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT party_id FROM party_info ORDER BY party_id")) {
+                while (rs.next()) {
+                    partyIds.add(rs.getObject(1, UUID.class));
+                }
+                if ("true".equals(options.get("listen"))) {
+                    installTriggers(connection);
+                    cache.startListening();
+                }
+            }
+            if (partyIds.isEmpty()) {
+                System.out.println("No parties to look up");
+                return;
+            }
+
+            ZipfSampler sampler = new ZipfSampler(partyIds.size(), skew);
+            SeededRandom random = new SeededRandom(42);
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                cache.get(partyIds.get(sampler.sample(random) - 1));
+            }
+            long nanos = System.nanoTime() - start;
+            Stats stats = cache.stats();
+            System.out.println(stats);
+            System.out.printf("%d lookups in %d ms (%.0f/s), %d of %d party queries saved%n",
+                    lookups, nanos / 1_000_000, lookups * 1e9 / nanos, stats.hits(), lookups);
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+
+    private PartyView load(UUID partyId) throws SQLException
+    {
+        try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(LOAD_SQL)) {
+            statement.setObject(1, partyId);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                PGpoint point = (PGpoint) rs.getObject(10);
+                return new PartyView(partyId, rs.getString(1), rs.getString(2), rs.getShort(3), rs.getString(4), rs.getBigDecimal(5),
+                        rs.getObject(6, LocalDate.class), rs.getObject(7, OffsetTime.class), rs.getObject(8, LocalDate.class), rs.getObject(9, OffsetTime.class),
+                        point == null ? Double.NaN : point.x, point == null ? Double.NaN : point.y,
+                        rs.getString(11), rs.getString(12), rs.getString(13), rs.getString(14), rs.getString(15), rs.getString(16), rs.getLong(17));
+            }
+        }
+    }
+
+    // Finds the entry and records the access: moves it to the most recently used end of its segment,
+    // a hit in probation promotes it to the protected segment.
+    private Entry access(UUID key)
+    {
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = probation.remove(key);
+            if (entry != null) {
+                protectedSegment.put(key, entry);
+                if (protectedSegment.size() > protectedSize) {
+                    Map.Entry<UUID, Entry> demoted = removeEldest(protectedSegment);
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            } else {
+                entry = protectedSegment.get(key);
+            }
+        }
+        return entry;
+    }
+
+    private boolean contains(UUID key)
+    {
+        return window.containsKey(key) || probation.containsKey(key) || protectedSegment.containsKey(key);
+    }
+
+    private void admit(UUID key, Entry entry)
+    {
+        window.put(key, entry);
+        if (window.size() <= windowSize) {
+            return;
+        }
+        Map.Entry<UUID, Entry> candidate = removeEldest(window);
+        if (probation.size() + protectedSegment.size() < mainSize) {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        LinkedHashMap<UUID, Entry> victims = probation.isEmpty() ? protectedSegment : probation;
+        evictions.incrementAndGet();
+        if (victims.isEmpty()) {
+            return;
+        }
+        UUID victim = victims.keySet().iterator().next();
+        if (sketch.frequency(hash(candidate.getKey())) > sketch.frequency(hash(victim))) {
+            victims.remove(victim);
+            probation.put(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    private void remove(UUID key)
+    {
+        if (window.remove(key) == null && probation.remove(key) == null) {
+            protectedSegment.remove(key);
+        }
+    }
+
+    private static Map.Entry<UUID, Entry> removeEldest(LinkedHashMap<UUID, Entry> segment)
+    {
+        Iterator<Map.Entry<UUID, Entry>> iterator = segment.entrySet().iterator();
+        Map.Entry<UUID, Entry> eldest = iterator.next();
+        Map.Entry<UUID, Entry> removed = Map.entry(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        return removed;
+    }
+
+    private static long hash(UUID key)
+    {
+        return SeededRandom.mix(key.getMostSignificantBits() ^ SeededRandom.mix(key.getLeastSignificantBits()));
+    }
+
+    // Count-min sketch with four 4 bit counters per key, 16 counters packed into each long.
+    private static final class FrequencySketch
+    {
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize)
+        {
+            int size = Integer.highestOneBit(Math.max(2, maximumSize) - 1) << 1;
+            this.table = new long[size];
+            this.mask = size - 1;
+            this.sampleSize = 10 * Math.max(1, maximumSize);
+        }
+
+        int frequency(long hash)
+        {
+            int frequency = 15;
+            for (int i = 0; i < 4; i++) {
+                long h = SeededRandom.mix(hash + i * 0x9E3779B97F4A7C15L);
+                frequency = Math.min(frequency, (int) ((table[(int) (h >>> 32) & mask] >>> ((h & 15) << 2)) & 15));
+            }
+            return frequency;
+        }
+
+        void increment(long hash)
+        {
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                long h = SeededRandom.mix(hash + i * 0x9E3779B97F4A7C15L);
+                int index = (int) (h >>> 32) & mask;
+                long offset = (h & 15) << 2;
+                if (((table[index] >>> offset) & 15) < 15) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                // Halves all counters, so old popularity fades
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions /= 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.OffsetTime;
+import java.util.UUID;
+
+// Write API for the data behind the party detail screen. Every write runs in its own autocommitted statement on a pooled
+// connection and invalidates the party in the PartyViewCache afterwards, so the next view loads the committed state
+// without waiting for the NOTIFY triggers.
+public class PartyWrites
+{
+    private final ConnectionPool pool;
+    private final PartyViewCache cache;
+
+    public PartyWrites(ConnectionPool pool, PartyViewCache cache)
+    {
+        this.pool = pool;
+        this.cache = cache;
+    }
+
+    public void rename(UUID partyId, String title) throws SQLException
+    {
+        update(partyId, "UPDATE party_info SET title = ? WHERE party_id = ?", title, partyId);
+    }
+
+    public void setAttendanceFee(UUID partyId, BigDecimal fee) throws SQLException
+    {
+        update(partyId, "UPDATE party_info SET attendance_fee = ? WHERE party_id = ?", fee, partyId);
+    }
+
+    public void reschedule(UUID partyId, LocalDate startDate, OffsetTime startTime, LocalDate endDate, OffsetTime endTime) throws SQLException
+    {
+        update(partyId, "UPDATE party_datetime SET start_date = ?, start_time_tz = ?, end_date = ?, end_time_tz = ? WHERE party_id = ?",
+                startDate, startTime, endDate, endTime, partyId);
+    }
+
+    public void move(UUID partyId, double longitude, double latitude) throws SQLException
+    {
+        update(partyId, "UPDATE party_location SET coordinates = point(?, ?) WHERE party_id = ?", longitude, latitude, partyId);
+    }
+
+    public void addAttendee(UUID partyId, String email, String status) throws SQLException
+    {
+        update(partyId, "INSERT INTO party_attendees (party_id, attendee_email, attendee_status) VALUES (?, ?, ?::ATTENDEE_STATUS)",
+                partyId, email, status);
+    }
+
+    public void removeAttendee(UUID partyId, String email) throws SQLException
+    {
+        update(partyId, "DELETE FROM party_attendees WHERE party_id = ? AND attendee_email = ?", partyId, email);
+    }
+
+    // Also invalidates when the write fails, it may still have been committed if only the connection broke
+    private void update(UUID partyId, String sql, Object... values) throws SQLException
+    {
+        try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            statement.executeUpdate();
+        } finally {
+            cache.invalidate(partyId);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Everything the user profile screen shows: the user, the parties they host, attend (not declined) and favourited,
+// each the 20 soonest, and the number of reports against them. The five queries don't depend on each other, so
+// load() runs them as one screen through a ScreenExecutor. user is null if there is no such user.
+public record ProfileScreen(PartyRepository.Person user, List<Party> hosted, List<Party> attending, List<Party> favourites,
+                            long reports)
+{
+    public record Party(UUID partyId, String title, String type, LocalDate startDate)
+    {
+    }
+
+    private static final String PARTIES = "SELECT p.party_id, p.title, p.type::text, d.start_date FROM party_info p "
+            + "LEFT JOIN party_datetime d ON d.party_id = p.party_id ";
+    private static final String ORDER = " ORDER BY d.start_date NULLS LAST, p.party_id LIMIT 20";
+
+    public static ProfileScreen load(ScreenExecutor executor, String email) throws SQLException
+    {
+        ScreenExecutor.Query<PartyRepository.Person> user = new ScreenExecutor.Query<>(
+                "SELECT email, first_name, last_name FROM user_info WHERE email = ?",
+                rs -> new PartyRepository.Person(rs.getString(1), rs.getString(2), rs.getString(3)), email);
+        ScreenExecutor.Query<Party> hosted = new ScreenExecutor.Query<>(PARTIES + "WHERE p.host = ?" + ORDER, ProfileScreen::party, email);
+        ScreenExecutor.Query<Party> attending = new ScreenExecutor.Query<>(PARTIES
+                + "WHERE p.party_id IN (SELECT party_id FROM party_attendees WHERE attendee_email = ? AND attendee_status <> 'declined')" + ORDER,
+                ProfileScreen::party, email);
+        ScreenExecutor.Query<Party> favourites = new ScreenExecutor.Query<>(PARTIES
+                + "WHERE p.party_id IN (SELECT party_id FROM favourites WHERE email = ?)" + ORDER, ProfileScreen::party, email);
+        ScreenExecutor.Query<Long> reports = new ScreenExecutor.Query<>("SELECT count(*) FROM user_reports WHERE user_reported_email = ?",
+                rs -> rs.getLong(1), email);
+
+        ScreenExecutor.Results results = executor.execute(List.of(user, hosted, attending, favourites, reports));
+        List<PartyRepository.Person> users = results.get(user);
+        return new ProfileScreen(users.isEmpty() ? null : users.get(0), results.get(hosted), results.get(attending),
+                results.get(favourites), results.get(reports).get(0));
+    }
+
+    private static Party party(ResultSet rs) throws SQLException
+    {
+        return new Party(rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3), rs.getObject(4, LocalDate.class));
+    }
+
+    // Emails of up to limit users that attend a party, so their screens are not empty
+    static List<String> sampleEmails(ConnectionPool pool, int limit) throws SQLException
+    {
+        List<String> emails = new ArrayList<>();
+        try (Connection connection = pool.borrow(); Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT DISTINCT attendee_email FROM party_attendees LIMIT " + limit)) {
+            while (rs.next()) {
+                emails.add(rs.getString(1));
+            }
+        }
+        return emails;
+    }
+}
@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Per query metrics collected by InstrumentedConnection: latency histogram, executions, errors, rows returned or affected,
+// bytes received from the server and network round trips, per logical query name.
+// The name is "query 1" .. "query 10" for the EvenueQuery queries (also when sent with inlined literals like in
+// queryDatabase()), otherwise the statement kind and its table, e.g. "insert user_info" or "create user_reports".
+// A caller can also name everything it runs on the current thread with named("...").
+// Executions slower than the slow query threshold are logged with their SQL and bind parameters.
+// The metrics can be written as JSON or in the Prometheus text format, e.g. for the node_exporter textfile collector.
+// Thread safe, one instance can be shared by many connections.
+public class QueryMetrics
+{
+    public record SlowQuery(Instant time, String name, double millis, String sql, List<Object> parameters)
+    {
+    }
+
+    public interface Scope extends AutoCloseable
+    {
+        @Override
+        void close();
+    }
+
+    static final class Entry
+    {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder roundTrips = new LongAdder();
+        final String sql;
+
+        Entry(String sql)
+        {
+            this.sql = sql.length() > 200 ? sql.substring(0, 200) + "..." : sql;
+        }
+    }
+
+    private static final Pattern LITERALS = Pattern.compile("'(?:[^']|'')*'|\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern TABLE = Pattern.compile(
+            "(?is)^\\s*(?:(insert)\\s+into|(update)|(delete)\\s+from|(create|drop|alter|truncate)(?:\\s+table|\\s+index|\\s+type|\\s+extension|\\s+function|\\s+or\\s+replace\\s+function)?(?:\\s+if\\s+(?:not\\s+)?exists)?|(copy))\\s+([\\w.\"]+)");
+    private static final Pattern FROM = Pattern.compile("(?is)\\bfrom\\s+([\\w.\"]+)");
+    private static final Map<String, String> QUERY_NAMES = new ConcurrentHashMap<>();
+    private static final ThreadLocal<String> NAME = new ThreadLocal<>();
+
+    static {
+        for (EvenueQuery query : EvenueQuery.values()) {
+            QUERY_NAMES.put(fingerprint(query.sql), "query " + query.number);
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    private final ArrayDeque<SlowQuery> slowQueries = new ArrayDeque<>();
+    private final long slowNanos;
+    private final int slowLogSize;
+
+    // Executions that take at least slowMillis are logged, the last slowLogSize of them are kept.
+    public QueryMetrics(double slowMillis, int slowLogSize)
+    {
+        this.slowNanos = (long) (slowMillis * 1_000_000);
+        this.slowLogSize = slowLogSize;
+    }
+
+    // Options "slowMillis" (default 100) and "slowLog" (default 100)
+    public static QueryMetrics from(Map<String, String> options)
+    {
+        return new QueryMetrics(Double.parseDouble(options.getOrDefault("slowMillis", "100")),
+                Integer.parseInt(options.getOrDefault("slowLog", "100")));
+    }
+
+    // Counts every statement executed on this thread under the given name until the scope is closed.
+    public static Scope named(String name)
+    {
+        String previous = NAME.get();
+        NAME.set(name);
+        return () -> {
+            if (previous == null) {
+                NAME.remove();
+            } else {
+                NAME.set(previous);
+            }
+        };
+    }
+
+    // The logical name a statement is counted under
+    public String nameOf(String sql)
+    {
+        String name = NAME.get();
+        if (name != null) {
+            return name;
+        }
+        name = names.get(sql);
+        if (name == null) {
+            // Statements with inlined literals would otherwise fill the cache without bound
+            if (names.size() > 10_000) {
+                names.clear();
+            }
+            name = derivedName(sql);
+            names.put(sql, name);
+        }
+        return name;
+    }
+
+    void record(String name, String sql, List<Object> parameters, long nanos, long rows, long bytes, long roundTrips, boolean failed)
+    {
+        Entry entry = entries.computeIfAbsent(name, n -> new Entry(sql));
+        entry.latency.record(nanos);
+        entry.rows.add(rows);
+        entry.bytes.add(bytes);
+        entry.roundTrips.add(roundTrips);
+        if (failed) {
+            entry.errors.increment();
+        }
+        if (nanos >= slowNanos) {
+            SlowQuery slow = new SlowQuery(Instant.now(), name, nanos / 1e6, sql, parameters);
+            System.out.printf("Slow query %s %.3f ms: %s %s%n", name, slow.millis(), sql, parameters);
+            synchronized (slowQueries) {
+                if (slowQueries.size() == slowLogSize) {
+                    slowQueries.removeFirst();
+                }
+                slowQueries.addLast(slow);
+            }
+        }
+    }
+
+    public List<SlowQuery> slowQueries()
+    {
+        synchronized (slowQueries) {
+            return new ArrayList<>(slowQueries);
+        }
+    }
+
+    public void reset()
+    {
+        entries.clear();
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    public String toJson()
+    {
+        StringBuilder json = new StringBuilder("{\"queries\": [");
+        boolean first = true;
+        for (Map.Entry<String, Entry> e : sorted().entrySet()) {
+            Entry entry = e.getValue();
+            LatencyHistogram latency = entry.latency;
+            json.append(first ? "\n" : ",\n");
+            json.append(String.format(Locale.ROOT, "  {\"name\": %s, \"executions\": %d, \"errors\": %d, \"rows\": %d, \"bytes\": %d, \"roundTrips\": %d, "
+                            + "\"meanMillis\": %.3f, \"p50Millis\": %.3f, \"p95Millis\": %.3f, \"p99Millis\": %.3f, \"maxMillis\": %.3f, \"sql\": %s}",
+                    quote(e.getKey()), latency.count(), entry.errors.sum(), entry.rows.sum(), entry.bytes.sum(), entry.roundTrips.sum(),
+                    latency.mean() / 1e6, latency.percentile(0.50) / 1e6, latency.percentile(0.95) / 1e6, latency.percentile(0.99) / 1e6,
+                    latency.max() / 1e6, quote(entry.sql)));
+            first = false;
+        }
+        json.append("\n], \"slowQueries\": [");
+        first = true;
+        for (SlowQuery slow : slowQueries()) {
+            List<String> parameters = new ArrayList<>();
+            for (Object parameter : slow.parameters()) {
+                parameters.add(parameter == null ? "null" : quote(parameter.toString()));
+            }
+            json.append(first ? "\n" : ",\n");
+            json.append(String.format(Locale.ROOT, "  {\"time\": %s, \"name\": %s, \"millis\": %.3f, \"sql\": %s, \"parameters\": [%s]}",
+                    quote(slow.time().toString()), quote(slow.name()), slow.millis(), quote(slow.sql()), String.join(", ", parameters)));
+            first = false;
+        }
+        return json.append("\n]}\n").toString();
+    }
+
+    public String toPrometheus()
+    {
+        StringBuilder text = new StringBuilder();
+        Map<String, Entry> sorted = sorted();
+        text.append("# HELP evenue_query_seconds Time from executing a statement until its result is read or closed.\n");
+        text.append("# TYPE evenue_query_seconds summary\n");
+        for (Map.Entry<String, Entry> e : sorted.entrySet()) {
+            LatencyHistogram latency = e.getValue().latency;
+            String label = "query=" + quote(e.getKey());
+            for (double quantile : new double[]{0.5, 0.95, 0.99}) {
+                text.append(String.format(Locale.ROOT, "evenue_query_seconds{%s,quantile=\"%s\"} %.9f%n", label, quantile, latency.percentile(quantile) / 1e9));
+            }
+            text.append(String.format(Locale.ROOT, "evenue_query_seconds_sum{%s} %.9f%n", label, latency.mean() * latency.count() / 1e9));
+            text.append(String.format(Locale.ROOT, "evenue_query_seconds_count{%s} %d%n", label, latency.count()));
+        }
+        counter(text, sorted, "evenue_query_errors_total", "Executions that failed.", entry -> entry.errors.sum());
+        counter(text, sorted, "evenue_query_rows_total", "Rows returned or affected.", entry -> entry.rows.sum());
+        counter(text, sorted, "evenue_query_received_bytes_total", "Bytes received from the server.", entry -> entry.bytes.sum());
+        counter(text, sorted, "evenue_query_round_trips_total", "Network round trips to the server.", entry -> entry.roundTrips.sum());
+        return text.toString();
+    }
+
+    // Writes the metrics as JSON if the file name ends with ".json", in the Prometheus text format otherwise.
+    public void write(Path file) throws IOException
+    {
+        String content = file.toString().endsWith(".json") ? toJson() : toPrometheus();
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+
+    private Map<String, Entry> sorted()
+    {
+        return new TreeMap<>(entries);
+    }
+
+    private interface Value
+    {
+        long of(Entry entry);
+    }
+
+    private static void counter(StringBuilder text, Map<String, Entry> entries, String metric, String help, Value value)
+    {
+        text.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(metric).append(" counter\n");
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            text.append(metric).append("{query=").append(quote(e.getKey())).append("} ").append(value.of(e.getValue())).append('\n');
+        }
+    }
+
+    private static String derivedName(String sql)
+    {
+        String name = QUERY_NAMES.get(fingerprint(sql));
+        if (name != null) {
+            return name;
+        }
+        Matcher table = TABLE.matcher(sql);
+        if (table.find()) {
+            for (int group = 1; group <= 5; group++) {
+                if (table.group(group) != null) {
+                    return table.group(group).toLowerCase(Locale.ROOT) + " " + table.group(6).replace("\"", "");
+                }
+            }
+        }
+        String verb = sql.trim().split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+        Matcher from = FROM.matcher(sql);
+        return from.find() ? verb + " " + from.group(1).replace("\"", "") : verb;
+    }
+
+    // The statement without literals, whitespace and case, so the same query matches with any values and formatting
+    private static String fingerprint(String sql)
+    {
+        return LITERALS.matcher(sql).replaceAll("?").replaceAll("\\s+", "").toLowerCase(Locale.ROOT);
+    }
+
+    // A JSON string, which is also a valid Prometheus label value
+    private static String quote(String value)
+    {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,93 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+// Realistic bind values for the EvenueQuery parameters, sampled once from the loaded data
+// so that randomized queries hit existing attendees, parties and zip codes instead of empty results.
+public class QueryParameters
+{
+    final String[] emails;
+    final UUID[] partyIds;
+    final String[] zipCodes;
+    final String[] countries;
+    final LocalDate firstDate;
+    final LocalDate lastDate;
+
+    private QueryParameters(String[] emails, UUID[] partyIds, String[] zipCodes, String[] countries, LocalDate firstDate, LocalDate lastDate)
+    {
+        this.emails = emails;
+        this.partyIds = partyIds;
+        this.zipCodes = zipCodes;
+        this.countries = countries;
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+    }
+
+    // Samples up to sampleSize values per parameter kind.
+    public static QueryParameters load(Connection connection, int sampleSize) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            String[] emails = sample(statement, "SELECT attendee_email FROM party_attendees ORDER BY random() LIMIT " + sampleSize).toArray(String[]::new);
+            UUID[] partyIds = sample(statement, "SELECT party_id::text FROM party_attendees ORDER BY random() LIMIT " + sampleSize)
+                    .stream().map(UUID::fromString).toArray(UUID[]::new);
+            String[] zipCodes = sample(statement, "SELECT zip_code FROM zip_code ORDER BY random() LIMIT " + sampleSize).toArray(String[]::new);
+            String[] countries = sample(statement, "SELECT DISTINCT country FROM zip_code").toArray(String[]::new);
+            LocalDate firstDate = LocalDate.now();
+            LocalDate lastDate = firstDate.plusYears(1);
+            try (ResultSet rs = statement.executeQuery("SELECT MIN(start_date), MAX(start_date) FROM party_datetime")) {
+                if (rs.next() && rs.getDate(1) != null) {
+                    firstDate = rs.getDate(1).toLocalDate();
+                    lastDate = rs.getDate(2).toLocalDate();
+                }
+            }
+            if (emails.length == 0 || partyIds.length == 0 || zipCodes.length == 0) {
+                throw new SQLException("The database has no attendees or addresses to sample query parameters from");
+            }
+            return new QueryParameters(emails, partyIds, zipCodes, countries, firstDate, lastDate);
+        }
+    }
+
+    // Binds randomly chosen sample values for the query's parameters.
+    public void bind(PreparedStatement statement, EvenueQuery query, Random random) throws SQLException
+    {
+        Object[] values = values(query, random);
+        for (int i = 0; i < values.length; i++) {
+            statement.setObject(i + 1, values[i]);
+        }
+    }
+
+    // Randomly chosen sample values for the query's parameters, in parameter order.
+    public Object[] values(EvenueQuery query, Random random)
+    {
+        return switch (query.parameter) {
+            case COUNTRY -> new Object[]{countries[random.nextInt(countries.length)]};
+            case EMAIL -> new Object[]{emails[random.nextInt(emails.length)]};
+            case PARTY_ID -> new Object[]{partyIds[random.nextInt(partyIds.length)]};
+            case ZIP_CODE -> new Object[]{zipCodes[random.nextInt(zipCodes.length)]};
+            case DATE_RANGE -> {
+                long days = Math.max(1, lastDate.toEpochDay() - firstDate.toEpochDay());
+                LocalDate from = firstDate.plusDays(random.nextInt((int) days));
+                yield new Object[]{from, from.plusDays(7 + random.nextInt(54))};
+            }
+            case NONE -> new Object[0];
+        };
+    }
+
+    private static List<String> sample(Statement statement, String sql) throws SQLException
+    {
+        List<String> values = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                values.add(rs.getString(1));
+            }
+        }
+        return values;
+    }
+}
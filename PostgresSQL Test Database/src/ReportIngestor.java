@@ -0,0 +1,299 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// Accepts user and party reports at a high rate and writes them in batches from a single background thread.
+// Submitting only puts the report into a bounded queue and returns its id, a time ordered version 7 UUID, right away.
+// The flusher takes whatever has queued up, up to "batchSize" reports, and writes it with one loader per table
+// ("loader", COPY by default, see DatabaseTest.createLoader()), so under load many reports share one round trip
+// and one commit, while a single report is still written at once. When the queue is full, submitting blocks until the
+// flusher has caught up. Monthly partitions are created before the first report of a month is written.
+// Every flush is written in one transaction. If it fails (e.g. a report of a deleted user), it is rolled back and its reports
+// are written one by one, each in its own transaction, so only the bad ones are dropped.
+public class ReportIngestor implements AutoCloseable
+{
+    private record Pending(ReportPartitions.Kind kind, Object[] values)
+    {
+    }
+
+    private final Connection connection;
+    private final Map<String, String> options;
+    private final BlockingQueue<Pending> queue;
+    private final int batchSize;
+    private final long flushMillis;
+    private final Set<YearMonth> months = new HashSet<>();
+    private final LoadStats stats = new LoadStats("reports");
+    private final Thread flusher;
+    // Submitters hold the read lock from the closed check until the report is queued, close() takes the write lock,
+    // so once closed is set no report can be queued anymore
+    private final ReadWriteLock closing = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    // The connection is used by the flusher thread only. Options: "loader" (default copy), "queueSize" (default 100000),
+    // "batchSize" (default 5000) and "flushMillis" (default 100), the longest an idle flusher waits before checking for close.
+    public ReportIngestor(Connection connection, Map<String, String> options)
+    {
+        this.connection = connection;
+        this.options = Map.of("loader", options.getOrDefault("loader", "copy"));
+        this.queue = new ArrayBlockingQueue<>(Integer.parseInt(options.getOrDefault("queueSize", "100000")));
+        this.batchSize = Integer.parseInt(options.getOrDefault("batchSize", "5000"));
+        this.flushMillis = Long.parseLong(options.getOrDefault("flushMillis", "100"));
+        this.flusher = new Thread(this::run, "report-flusher");
+        this.flusher.start();
+    }
+
+    public UUID submitUserReport(String reporterEmail, String reportedEmail, String reason) throws InterruptedException
+    {
+        UUID id = Uuid7.next();
+        submit(new Pending(ReportPartitions.Kind.USER, new Object[]{id, reporterEmail, reportedEmail, time(id), reason}));
+        return id;
+    }
+
+    public UUID submitPartyReport(UUID partyId, String reporterEmail, String reason) throws InterruptedException
+    {
+        UUID id = Uuid7.next();
+        submit(new Pending(ReportPartitions.Kind.PARTY, new Object[]{id, partyId, reporterEmail, time(id), reason}));
+        return id;
+    }
+
+    public long submitted()
+    {
+        return submitted.get();
+    }
+
+    public long written()
+    {
+        return written.get();
+    }
+
+    public long rejected()
+    {
+        return rejected.get();
+    }
+
+    public long flushes()
+    {
+        return flushes.get();
+    }
+
+    // Waits until every report submitted so far has been written or rejected.
+    public void flush() throws InterruptedException
+    {
+        long target = submitted.get();
+        while (written.get() + rejected.get() < target && flusher.isAlive()) {
+            Thread.sleep(1);
+        }
+    }
+
+    // Writes the remaining reports and stops the flusher. The connection stays open.
+    // When the calling thread is interrupted while waiting, it returns with the interrupt flag set and the flusher finishes on its own.
+    @Override
+    public void close()
+    {
+        closing.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            closing.writeLock().unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(Pending report) throws InterruptedException
+    {
+        closing.readLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("ReportIngestor is closed");
+            }
+            queue.put(report);
+            submitted.incrementAndGet();
+        } finally {
+            closing.readLock().unlock();
+        }
+    }
+
+    // The report time is the timestamp of its id, so both always agree
+    private static OffsetDateTime time(UUID id)
+    {
+        return Instant.ofEpochMilli(Uuid7.millis(id)).atOffset(ZoneOffset.UTC);
+    }
+
+    private void run()
+    {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                Pending first = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                } else if (!closed) {
+                    continue;
+                } else {
+                    // Reports queued after the poll timed out but before close() are still waiting
+                    queue.drainTo(batch, batchSize);
+                    if (batch.isEmpty()) {
+                        return;
+                    }
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Never throws, an unexpected RuntimeException is handled like a failed statement so the flusher keeps running
+    private void write(List<Pending> batch)
+    {
+        try {
+            createPartitions(batch);
+            writeTransaction(batch, () -> DatabaseTest.createLoader(connection, options, stats));
+            written.addAndGet(batch.size());
+        } catch (SQLException | RuntimeException e) {
+            // The flush was rolled back, so every report is tried again on its own
+            for (Pending report : batch) {
+                try {
+                    writeTransaction(List.of(report), () -> new InsertSink(connection, stats));
+                    written.incrementAndGet();
+                } catch (SQLException | RuntimeException rowException) {
+                    rejected.incrementAndGet();
+                    System.out.println("Exception: " + rowException.getMessage());
+                }
+            }
+        }
+        flushes.incrementAndGet();
+    }
+
+    // Writes the reports with one sink per table in a single transaction, which is rolled back on any failure.
+    // The loaders join the transaction (BatchLoader doesn't commit on its own) and cancel a COPY that failed.
+    private void writeTransaction(List<Pending> reports, Supplier<RowSink> sinks) throws SQLException
+    {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            for (ReportPartitions.Kind kind : ReportPartitions.Kind.values()) {
+                RowSink sink = null;
+                for (Pending report : reports) {
+                    if (report.kind() == kind) {
+                        if (sink == null) {
+                            sink = sinks.get();
+                            sink.begin(kind == ReportPartitions.Kind.USER ? DataGenerator.USER_REPORTS : DataGenerator.PARTY_REPORTS);
+                        }
+                        sink.row(report.values());
+                    }
+                }
+                if (sink != null) {
+                    sink.end();
+                }
+            }
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void createPartitions(List<Pending> batch) throws SQLException
+    {
+        for (Pending report : batch) {
+            YearMonth month = YearMonth.from((OffsetDateTime) report.values()[3]);
+            if (!months.contains(month)) {
+                ReportPartitions.createMonths(connection, month, month);
+                months.add(month);
+            }
+        }
+    }
+
+    // Arguments: "reports" (default 100000), "producers" (default 4), "window" in days for the moderation query (default 30),
+    // and the options of the constructor. Reports go to random users and parties of the loaded data.
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int reports = Integer.parseInt(options.getOrDefault("reports", "100000"));
+        int producers = Integer.parseInt(options.getOrDefault("producers", "4"));
+        Duration window = Duration.ofDays(Long.parseLong(options.getOrDefault("window", "30")));
+
+        try (Connection connection = DatabaseTest.connect(DatabaseTest.driverProperties(options));
+             Connection moderation = DatabaseTest.connect(DatabaseTest.driverProperties(options))) {
+            QueryParameters parameters = QueryParameters.load(connection, 1000);
+            ReportIngestor ingestor = new ReportIngestor(connection, options);
+            List<Thread> threads = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int p = 0; p < producers; p++) {
+                int seed = p;
+                int count = reports / producers + (p < reports % producers ? 1 : 0);
+                Thread thread = new Thread(() -> {
+                    Random random = new Random(seed);
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            String reporter = parameters.emails[random.nextInt(parameters.emails.length)];
+                            if (random.nextBoolean()) {
+                                ingestor.submitUserReport(reporter, parameters.emails[random.nextInt(parameters.emails.length)], "Spamming");
+                            } else {
+                                ingestor.submitPartyReport(parameters.partyIds[random.nextInt(parameters.partyIds.length)], reporter, "Way too crowded");
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            ingestor.close();
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%d reports written, %d rejected in %d flushes, %d ms, %.0f reports/s%n", ingestor.written(), ingestor.rejected(),
+                    ingestor.flushes(), nanos / 1_000_000, ingestor.written() * 1e9 / nanos);
+
+            LatencyHistogram latencies = new LatencyHistogram();
+            for (int i = 0; i < 100; i++) {
+                for (ReportPartitions.Kind kind : ReportPartitions.Kind.values()) {
+                    long queryStart = System.nanoTime();
+                    ReportPartitions.nextUnreviewed(moderation, kind, 20, window);
+                    latencies.record(System.nanoTime() - queryStart);
+                }
+            }
+            System.out.println("Moderation queue (next 20 unreviewed): " + latencies.summary());
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
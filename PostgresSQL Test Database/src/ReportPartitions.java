@@ -0,0 +1,187 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Monthly partitions of user_reports and party_reports, and the moderation queue on top of them.
+// Partitions are named <table>_YYYY_MM and cover one calendar month in UTC. Reports outside of all monthly partitions go to
+// <table>_default. A month whose reports already sit in the default partition is not split off, as PostgreSQL would have to
+// move them. Old months are removed with DETACH PARTITION and DROP TABLE, which only touches the catalog,
+// instead of a DELETE that has to find, delete and later vacuum every row.
+public class ReportPartitions
+{
+    public enum Kind
+    {
+        USER("user_reports", "user_report", "user_reported_email", "user_reporter_email"),
+        PARTY("party_reports", "party_report", "party_id", "party_reporter_email");
+
+        final String table;
+        final String prefix;
+        final String subjectColumn;
+        final String reporterColumn;
+
+        Kind(String table, String prefix, String subjectColumn, String reporterColumn)
+        {
+            this.table = table;
+            this.prefix = prefix;
+            this.subjectColumn = subjectColumn;
+            this.reporterColumn = reporterColumn;
+        }
+    }
+
+    // subject is the reported user's email or the reported party's id
+    public record Report(Kind kind, UUID id, String subject, String reporter, OffsetDateTime time, String reason)
+    {
+    }
+
+    // Creates the missing monthly partitions of both report tables for every month from first_month to last_month.
+    static final String CREATE_FUNCTION = """
+            CREATE OR REPLACE FUNCTION create_report_partitions(first_month DATE, last_month DATE) RETURNS void LANGUAGE plpgsql AS $$
+            DECLARE
+                month DATE := date_trunc('month', first_month);
+                parent TEXT;
+                time_column TEXT;
+                partition TEXT;
+                month_start TIMESTAMPTZ;
+                month_end TIMESTAMPTZ;
+                occupied BOOLEAN;
+            BEGIN
+                WHILE month <= last_month LOOP
+                    month_start := month::timestamp AT TIME ZONE 'UTC';
+                    month_end := (month + INTERVAL '1 month')::timestamp AT TIME ZONE 'UTC';
+                    FOREACH parent IN ARRAY ARRAY['user_reports', 'party_reports'] LOOP
+                        partition := parent || '_' || to_char(month, 'YYYY_MM');
+                        time_column := left(parent, -1) || '_time';
+                        IF to_regclass(partition) IS NULL THEN
+                            EXECUTE format('SELECT EXISTS (SELECT 1 FROM %I WHERE %I >= %L AND %I < %L)',
+                                    parent || '_default', time_column, month_start, time_column, month_end) INTO occupied;
+                            IF NOT occupied THEN
+                                EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)', partition, parent, month_start, month_end);
+                            END IF;
+                        END IF;
+                    END LOOP;
+                    month := month + INTERVAL '1 month';
+                END LOOP;
+            END
+            $$""";
+
+    public static void createMonths(Connection connection, YearMonth first, YearMonth last) throws SQLException
+    {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT create_report_partitions(?, ?)")) {
+            statement.setObject(1, first.atDay(1));
+            statement.setObject(2, last.atDay(1));
+            statement.executeQuery().close();
+        }
+    }
+
+    // Detaches every monthly partition that ends before the given month and drops it unless keep is true,
+    // e.g. to archive it with pg_dump first. Returns the names of the removed partitions.
+    public static List<String> removeBefore(Connection connection, YearMonth month, boolean keep) throws SQLException
+    {
+        List<String> removed = new ArrayList<>();
+        try (Statement statement = connection.createStatement()) {
+            for (Kind kind : Kind.values()) {
+                List<String> partitions = new ArrayList<>();
+                try (ResultSet rs = statement.executeQuery("SELECT inhrelid::regclass::text FROM pg_inherits WHERE inhparent = '"
+                        + kind.table + "'::regclass ORDER BY 1")) {
+                    while (rs.next()) {
+                        partitions.add(rs.getString(1));
+                    }
+                }
+                for (String partition : partitions) {
+                    YearMonth partitionMonth = month(kind, partition);
+                    if (partitionMonth != null && partitionMonth.isBefore(month)) {
+                        statement.executeUpdate("ALTER TABLE " + kind.table + " DETACH PARTITION " + partition);
+                        if (!keep) {
+                            statement.executeUpdate("DROP TABLE " + partition);
+                        }
+                        removed.add(partition);
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    // The n oldest unreviewed reports of the last window, e.g. 30 days. The time bound lets the planner skip all older
+    // partitions, and the partial index on unreviewed reports returns them in time order without a sort.
+    public static List<Report> nextUnreviewed(Connection connection, Kind kind, int n, Duration window) throws SQLException
+    {
+        List<Report> reports = new ArrayList<>(n);
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + kind.prefix + "_id, " + kind.subjectColumn + "::text, " + kind.reporterColumn + ", " + kind.prefix + "_time, "
+                        + kind.prefix + "_reason FROM " + kind.table
+                        + " WHERE " + kind.prefix + "_reviewed_at IS NULL AND " + kind.prefix + "_time >= now() - ?::interval"
+                        + " ORDER BY " + kind.prefix + "_time LIMIT ?")) {
+            statement.setString(1, window.getSeconds() + " seconds");
+            statement.setInt(2, n);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    reports.add(new Report(kind, rs.getObject(1, UUID.class), rs.getString(2), rs.getString(3),
+                            rs.getObject(4, OffsetDateTime.class), rs.getString(5)));
+                }
+            }
+        }
+        return reports;
+    }
+
+    // Marks the reports as reviewed. The time is part of the key, so only the report's own partition is searched.
+    public static void markReviewed(Connection connection, List<Report> reports) throws SQLException
+    {
+        for (Kind kind : Kind.values()) {
+            try (PreparedStatement statement = connection.prepareStatement("UPDATE " + kind.table + " SET " + kind.prefix + "_reviewed_at = now()"
+                    + " WHERE " + kind.prefix + "_id = ? AND " + kind.prefix + "_time = ?")) {
+                boolean any = false;
+                for (Report report : reports) {
+                    if (report.kind() == kind) {
+                        statement.setObject(1, report.id());
+                        statement.setObject(2, report.time());
+                        statement.addBatch();
+                        any = true;
+                    }
+                }
+                if (any) {
+                    statement.executeBatch();
+                }
+            }
+        }
+    }
+
+    // Retention job: creates the partitions for the next "ahead" months (default 3) and removes the ones older than
+    // "retain" months (default 13). "keep=true" only detaches them.
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int ahead = Integer.parseInt(options.getOrDefault("ahead", "3"));
+        int retain = Integer.parseInt(options.getOrDefault("retain", "13"));
+        boolean keep = "true".equals(options.get("keep"));
+
+        try (Connection connection = DatabaseTest.connect(DatabaseTest.driverProperties(options))) {
+            YearMonth now = YearMonth.now(ZoneOffset.UTC);
+            createMonths(connection, now, now.plusMonths(ahead));
+            List<String> removed = removeBefore(connection, now.minusMonths(retain), keep);
+            System.out.println((keep ? "Detached " : "Dropped ") + removed.size() + " partitions " + removed);
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+
+    // The month of a <table>_YYYY_MM partition, null for the default partition
+    private static YearMonth month(Kind kind, String partition)
+    {
+        String suffix = partition.substring(kind.table.length() + 1);
+        if (!suffix.matches("\\d{4}_\\d{2}")) {
+            return null;
+        }
+        return YearMonth.of(Integer.parseInt(suffix.substring(0, 4)), Integer.parseInt(suffix.substring(5)));
+    }
+}
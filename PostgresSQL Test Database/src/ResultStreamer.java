@@ -0,0 +1,194 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Reads query results row by row in constant memory.
+// The driver normally reads the complete result into memory before executeQuery() returns. With autocommit off and a
+// fetch size set it uses a cursor instead and fetches fetchSize rows per round trip, so even results with millions of
+// rows never have to fit into the heap. Rows are handed out through a reusable Row view with typed accessors,
+// which reads the column metadata once per result instead of once per row and avoids boxing primitive columns.
+// A Row is only valid until the next row is read and must not be kept.
+public final class ResultStreamer
+{
+    public interface RowHandler
+    {
+        void row(Row row) throws SQLException;
+    }
+
+    // View on the current row of a ResultSet, columns are numbered from 1 like in JDBC.
+    public static final class Row
+    {
+        private final ResultSet rs;
+        private final int columnCount;
+        private final String[] columnNames;
+
+        private Row(ResultSet rs) throws SQLException
+        {
+            ResultSetMetaData metaData = rs.getMetaData();
+            this.rs = rs;
+            this.columnCount = metaData.getColumnCount();
+            this.columnNames = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                columnNames[i] = metaData.getColumnLabel(i + 1);
+            }
+        }
+
+        public int columnCount()
+        {
+            return columnCount;
+        }
+
+        public String columnName(int column)
+        {
+            return columnNames[column - 1];
+        }
+
+        public int getInt(int column) throws SQLException
+        {
+            return rs.getInt(column);
+        }
+
+        public long getLong(int column) throws SQLException
+        {
+            return rs.getLong(column);
+        }
+
+        public double getDouble(int column) throws SQLException
+        {
+            return rs.getDouble(column);
+        }
+
+        public boolean getBoolean(int column) throws SQLException
+        {
+            return rs.getBoolean(column);
+        }
+
+        // True if the column read last was SQL NULL, for the primitive accessors that return 0 instead.
+        public boolean wasNull() throws SQLException
+        {
+            return rs.wasNull();
+        }
+
+        public String getString(int column) throws SQLException
+        {
+            return rs.getString(column);
+        }
+
+        public UUID getUuid(int column) throws SQLException
+        {
+            return rs.getObject(column, UUID.class);
+        }
+
+        public Object getObject(int column) throws SQLException
+        {
+            return rs.getObject(column);
+        }
+
+        public <T> T getObject(int column, Class<T> type) throws SQLException
+        {
+            return rs.getObject(column, type);
+        }
+    }
+
+    private ResultStreamer()
+    {
+    }
+
+    // Hands every row of an already executed query to the handler and returns the number of rows.
+    public static long forEach(ResultSet rs, RowHandler handler) throws SQLException
+    {
+        Row row = new Row(rs);
+        long rows = 0;
+        while (rs.next()) {
+            handler.row(row);
+            rows++;
+        }
+        return rows;
+    }
+
+    // Executes the statement with a cursor of fetchSize rows and hands every row to the handler.
+    // If the connection is in autocommit mode, the query runs in its own transaction and autocommit is restored afterwards,
+    // otherwise it runs in the caller's transaction.
+    public static long forEach(Connection connection, PreparedStatement statement, int fetchSize, RowHandler handler) throws SQLException
+    {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            statement.setFetchSize(fetchSize);
+            long rows;
+            try (ResultSet rs = statement.executeQuery()) {
+                rows = forEach(rs, handler);
+            }
+            if (autoCommit) {
+                connection.commit();
+            }
+            return rows;
+        } catch (SQLException e) {
+            if (autoCommit) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    // Lazily streams the rows of the statement with a cursor of fetchSize rows, transactions are handled like in forEach().
+    // The stream must be closed (e.g. with try-with-resources), which closes the result set and the statement.
+    // SQLExceptions while reading are rethrown as RuntimeExceptions with the SQLException as cause.
+    public static Stream<Row> stream(Connection connection, PreparedStatement statement, int fetchSize) throws SQLException
+    {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        ResultSet rs;
+        Row row;
+        try {
+            statement.setFetchSize(fetchSize);
+            rs = statement.executeQuery();
+            row = new Row(rs);
+        } catch (SQLException e) {
+            if (autoCommit) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            throw e;
+        }
+
+        Spliterator<Row> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL)
+        {
+            @Override
+            public boolean tryAdvance(Consumer<? super Row> action)
+            {
+                try {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+                action.accept(row);
+                return true;
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                rs.close();
+                statement.close();
+                if (autoCommit) {
+                    connection.commit();
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+}
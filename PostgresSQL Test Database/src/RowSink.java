@@ -0,0 +1,13 @@
+import java.sql.SQLException;
+
+// Receives the rows produced by the DataGenerator table by table, so that rows can be streamed
+// into the database without the generator ever holding more than the current row.
+// The values array passed to row() is reused by the generator and must not be kept after the call returns.
+public interface RowSink
+{
+    void begin(TableSpec table) throws SQLException;
+
+    void row(Object[] values) throws SQLException;
+
+    void end() throws SQLException;
+}
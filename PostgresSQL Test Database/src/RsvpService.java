@@ -0,0 +1,232 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Joining, accepting and declining parties without ever going past party_info.max_guests.
+// Counting the attendees and inserting under a lock on the party row is correct too, but serializes every join of
+// a popular party behind that one lock. Instead every party gets one party_slots row per guest. A join claims any free
+// slot with FOR UPDATE SKIP LOCKED, so concurrent joins each lock a different slot and never wait for each other,
+// and the party is full exactly when no free slot is left. Claiming the slot and writing the party_attendees row is a
+// single statement, so a join is one round trip. A user can hold at most one slot per party (unique index).
+// Declining frees the slot again. ATTENDEE_STATUS transitions: join -> 'attending' (also after 'declined'),
+// accept -> 'accepted' (host approved, keeps the slot), decline -> 'declined' (frees the slot).
+// While the last free slot is claimed by a join that is not committed yet, other joins see the party as full.
+// A trigger on party_info creates the slots of new parties. Changing max_guests of an existing party does not add
+// or remove slots, slots above max_guests are only dropped when they are freed.
+public class RsvpService
+{
+    public enum Result
+    {
+        JOINED, ALREADY_JOINED, FULL
+    }
+
+    // The lowest free slot not locked by another join, its owner and a new or reactivated party_attendees row
+    private static final String JOIN_SQL = """
+            WITH free AS (SELECT party_id, slot FROM party_slots WHERE party_id = ? AND attendee_email IS NULL
+                          ORDER BY slot LIMIT 1 FOR UPDATE SKIP LOCKED),
+                 claimed AS (UPDATE party_slots s SET attendee_email = ? FROM free
+                             WHERE s.party_id = free.party_id AND s.slot = free.slot RETURNING s.party_id),
+                 rejoined AS (UPDATE party_attendees SET attendee_status = 'attending'
+                              WHERE party_id IN (SELECT party_id FROM claimed) AND attendee_email = ? AND attendee_status = 'declined'
+                              RETURNING party_id),
+                 inserted AS (INSERT INTO party_attendees (party_id, attendee_email, attendee_status)
+                              SELECT party_id, ?, 'attending' FROM claimed WHERE NOT EXISTS (SELECT 1 FROM rejoined))
+            SELECT count(*) FROM claimed""";
+    // Frees the slot, or drops it if it is above max_guests, and marks the attendance as declined
+    private static final String DECLINE_SQL = """
+            WITH freed AS (UPDATE party_slots s SET attendee_email = NULL FROM party_info p
+                           WHERE s.party_id = ? AND s.attendee_email = ? AND p.party_id = s.party_id AND s.slot <= p.max_guests
+                           RETURNING s.slot),
+                 dropped AS (DELETE FROM party_slots s USING party_info p
+                             WHERE s.party_id = ? AND s.attendee_email = ? AND p.party_id = s.party_id AND s.slot > p.max_guests
+                             RETURNING s.slot)
+            UPDATE party_attendees SET attendee_status = 'declined'
+            WHERE party_id = ? AND attendee_email = ? AND attendee_status <> 'declined'""";
+    private static final String ACCEPT_SQL = "UPDATE party_attendees SET attendee_status = 'accepted' "
+            + "WHERE party_id = ? AND attendee_email = ? AND attendee_status = 'attending'";
+    private static final String HOLDS_SLOT_SQL = "SELECT EXISTS (SELECT 1 FROM party_slots WHERE party_id = ? AND attendee_email = ?)";
+
+    private final ConnectionPool pool;
+
+    public RsvpService(ConnectionPool pool)
+    {
+        this.pool = pool;
+    }
+
+    // Creates party_slots and the trigger for new parties if they don't exist yet. Existing attendees that have not
+    // declined get the first slots of their party, parties that are already over capacity get a slot for every attendee.
+    public static void install(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("""
+                    CREATE TABLE IF NOT EXISTS party_slots
+                    (party_id UUID NOT NULL REFERENCES party_info(party_id) ON DELETE CASCADE,
+                    slot SMALLINT NOT NULL,
+                    attendee_email VARCHAR(255) REFERENCES user_info(email) ON DELETE SET NULL,
+                    PRIMARY KEY (party_id, slot))
+                    """);
+            statement.executeUpdate("CREATE UNIQUE INDEX IF NOT EXISTS party_slots_attendee_idx ON party_slots (party_id, attendee_email)");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS party_slots_free_idx ON party_slots (party_id, slot) WHERE attendee_email IS NULL");
+            statement.executeUpdate("""
+                    CREATE OR REPLACE FUNCTION party_slots_create() RETURNS trigger LANGUAGE plpgsql AS $$
+                    BEGIN
+                        INSERT INTO party_slots (party_id, slot)
+                        SELECT party_id, generate_series(1, max_guests) FROM new_parties;
+                        RETURN NULL;
+                    END
+                    $$""");
+            statement.executeUpdate("DROP TRIGGER IF EXISTS party_slots_create ON party_info");
+            statement.executeUpdate("CREATE TRIGGER party_slots_create AFTER INSERT ON party_info REFERENCING NEW TABLE AS new_parties "
+                    + "FOR EACH STATEMENT EXECUTE FUNCTION party_slots_create()");
+
+            // Slots of the parties that have none yet, filled with their current attendees
+            statement.executeUpdate("""
+                    WITH active AS (SELECT DISTINCT ON (party_id, attendee_email) party_id, attendee_email
+                                    FROM party_attendees WHERE attendee_status <> 'declined'),
+                         numbered AS (SELECT party_id, attendee_email, row_number() OVER (PARTITION BY party_id ORDER BY attendee_email) AS slot
+                                      FROM active)
+                    INSERT INTO party_slots (party_id, slot, attendee_email)
+                    SELECT p.party_id, s.slot, n.attendee_email
+                    FROM party_info p
+                    CROSS JOIN LATERAL generate_series(1, GREATEST(p.max_guests, (SELECT count(*) FROM active a WHERE a.party_id = p.party_id))) AS s(slot)
+                    LEFT JOIN numbered n ON n.party_id = p.party_id AND n.slot = s.slot
+                    WHERE NOT EXISTS (SELECT 1 FROM party_slots e WHERE e.party_id = p.party_id)
+                    """);
+            statement.executeUpdate("ANALYZE party_slots");
+        }
+    }
+
+    public Result join(UUID partyId, String email) throws SQLException
+    {
+        try (Connection connection = pool.borrow()) {
+            try (PreparedStatement statement = connection.prepareStatement(JOIN_SQL)) {
+                statement.setObject(1, partyId);
+                statement.setString(2, email);
+                statement.setString(3, email);
+                statement.setString(4, email);
+                try (ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                    if (rs.getInt(1) == 1) {
+                        return Result.JOINED;
+                    }
+                }
+            } catch (SQLException e) {
+                // unique_violation on party_slots_attendee_idx: the user already holds a slot of this party
+                if ("23505".equals(e.getSQLState())) {
+                    return Result.ALREADY_JOINED;
+                }
+                throw e;
+            }
+            // No free slot, but the user may already have one
+            try (PreparedStatement statement = connection.prepareStatement(HOLDS_SLOT_SQL)) {
+                statement.setObject(1, partyId);
+                statement.setString(2, email);
+                try (ResultSet rs = statement.executeQuery()) {
+                    rs.next();
+                    return rs.getBoolean(1) ? Result.ALREADY_JOINED : Result.FULL;
+                }
+            }
+        }
+    }
+
+    // The host accepts an attending user, returns false if the user is not attending.
+    public boolean accept(UUID partyId, String email) throws SQLException
+    {
+        try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(ACCEPT_SQL)) {
+            statement.setObject(1, partyId);
+            statement.setString(2, email);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    // The user declines (or leaves) the party and frees the slot, returns false if the user had not joined.
+    public boolean decline(UUID partyId, String email) throws SQLException
+    {
+        try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(DECLINE_SQL)) {
+            statement.setObject(1, partyId);
+            statement.setString(2, email);
+            statement.setObject(3, partyId);
+            statement.setString(4, email);
+            statement.setObject(5, partyId);
+            statement.setString(6, email);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    // Arguments: "clients" (default 1000) concurrent joins of different users on one new party with "capacity"
+    // (default 100) guests, over "poolSize" (default 32) connections. Prints how many got in, which must be the capacity.
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int clients = Integer.parseInt(options.getOrDefault("clients", "1000"));
+        int capacity = Integer.parseInt(options.getOrDefault("capacity", "100"));
+        int poolSize = Integer.parseInt(options.getOrDefault("poolSize", "32"));
+
+        try (ConnectionPool pool = new ConnectionPool(poolSize, PartyRepository.driverProperties(), 60_000)) {
+            UUID party;
+            List<String> emails = new ArrayList<>();
+            try (Connection connection = pool.borrow(); Statement statement = connection.createStatement()) {
+                install(connection);
+                try (ResultSet rs = statement.executeQuery("SELECT email FROM user_info ORDER BY email LIMIT " + (clients + 1))) {
+                    while (rs.next()) {
+                        emails.add(rs.getString(1));
+                    }
+                }
+                party = createParty(connection, emails.remove(0), capacity);
+            }
+
+            RsvpService service = new RsvpService(pool);
+            LatencyHistogram latencies = new LatencyHistogram();
+            AtomicInteger joined = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(emails.size());
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (String email : emails) {
+                futures.add(executor.submit(() -> {
+                    long joinStart = System.nanoTime();
+                    if (service.join(party, email) == Result.JOINED) {
+                        joined.incrementAndGet();
+                    }
+                    latencies.record(System.nanoTime() - joinStart);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long nanos = System.nanoTime() - start;
+            executor.shutdown();
+            System.out.printf("%d of %d clients joined a party with %d guests in %d ms%n", joined.get(), emails.size(), capacity, nanos / 1_000_000);
+            System.out.println("Join latency: " + latencies.summary());
+        } catch (SQLException | InterruptedException | ExecutionException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+
+    // Inserts a party with the given capacity, the trigger creates its slots
+    static UUID createParty(Connection connection, String host, int capacity) throws SQLException
+    {
+        try (PreparedStatement statement = connection.prepareStatement("""
+                INSERT INTO party_info (title, type, party_description, guest_description, max_guests, host)
+                VALUES ('RSVP burst', 'RAVE', 'A very popular party that hundreds of users try to join at the same time.',
+                        'Everybody who is fast enough', ?, ?) RETURNING party_id""")) {
+            statement.setInt(1, capacity);
+            statement.setString(2, host);
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getObject(1, UUID.class);
+            }
+        }
+    }
+}
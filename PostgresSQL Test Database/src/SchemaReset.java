@@ -0,0 +1,225 @@
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Faster ways to get a clean test database than structureDatabase(), which drops and recreates every table on each run.
+// Both are keyed by a SHA-256 hash of the DDL that structureDatabase() executes, so any change to the schema rebuilds it.
+// "reset=truncate": the DDL only runs when the hash stored as comment on the schema differs, otherwise all tables are emptied
+// with a single TRUNCATE.
+// "reset=template": the schema, and with "data=generated" the generated data set (plus the indexes with "indexes=true"),
+// is built once into a template database. Every run drops the test database and clones it from the template with
+// CREATE DATABASE ... TEMPLATE, which copies files instead of replaying DDL and INSERTs. The template is rebuilt when the
+// hash of the DDL, the options, the generator version and the current date, stored as comment on the template database,
+// no longer matches. The date is part of it because the generated dates and the report partitions are relative to the day.
+// Options: "template" (default <database>Template), "maintenanceDatabase" (default postgres), used to drop and create databases.
+public class SchemaReset
+{
+    private static final String HASH_PREFIX = "evenue-schema ";
+    // Options that don't change what is in the template: how the run loads, what it installs and queries afterwards
+    // (aggregates, search) and how it is measured (metrics, slowMillis, slowLog)
+    private static final Set<String> RUN_OPTIONS = Set.of("reset", "template", "maintenanceDatabase", "queries", "threads", "loader",
+            "batchSize", "batchesPerCommit", "snapshot", "aggregates", "search", "metrics", "slowMillis", "slowLog");
+
+    // Makes sure the current schema is up to date and returns true if the DDL had to run.
+    public static boolean ensureSchema(Connection connection) throws SQLException
+    {
+        String hash = HASH_PREFIX + hash(schemaStatements(), Map.of());
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("SELECT obj_description(oid, 'pg_namespace') FROM pg_namespace WHERE nspname = current_schema()")) {
+                if (rs.next() && hash.equals(rs.getString(1)) && tablesExist(connection)) {
+                    return false;
+                }
+            }
+            DatabaseTest.structureDatabase(connection);
+            // structureDatabase() only prints its errors, don't record a schema that wasn't created
+            if (tablesExist(connection)) {
+                statement.executeUpdate("COMMENT ON SCHEMA " + quote(currentSchema(statement)) + " IS " + literal(hash));
+            }
+            return true;
+        }
+    }
+
+    // Recreates the test database from the template, building the template first if it is missing or outdated.
+    // Must be called while no connection to the test database is open.
+    public static void resetFromTemplate(Map<String, String> options) throws SQLException
+    {
+        String database = databaseName(DatabaseTest.URL);
+        String template = options.getOrDefault("template", database + "Template");
+        Map<String, String> contents = new TreeMap<>();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (!RUN_OPTIONS.contains(option.getKey()) && !option.getKey().startsWith("pg.")) {
+                contents.put(option.getKey(), option.getValue());
+            }
+        }
+        // The complete generator configuration includes its defaults and today
+        contents.put("generator", DataGenerator.VERSION + " " + DataGenerator.Config.from(options));
+        String hash = HASH_PREFIX + hash(schemaStatements(), contents);
+
+        try (Connection admin = connectTo(options.getOrDefault("maintenanceDatabase", "postgres"))) {
+            String current = null;
+            try (PreparedStatement statement = admin.prepareStatement("SELECT shobj_description(oid, 'pg_database') FROM pg_database WHERE datname = ?")) {
+                statement.setString(1, template);
+                try (ResultSet rs = statement.executeQuery()) {
+                    if (rs.next()) {
+                        current = rs.getString(1);
+                    }
+                }
+            }
+            if (!hash.equals(current)) {
+                long start = System.nanoTime();
+                buildTemplate(admin, template, current != null, hash, options);
+                System.out.println("Built template database " + template + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+            try (Statement statement = admin.createStatement()) {
+                // FORCE terminates leftover sessions on the test database (PostgreSQL 13 and newer)
+                statement.executeUpdate("DROP DATABASE IF EXISTS " + quote(database) + " WITH (FORCE)");
+                statement.executeUpdate("CREATE DATABASE " + quote(database) + " TEMPLATE " + quote(template));
+            }
+        }
+    }
+
+    private static void buildTemplate(Connection admin, String template, boolean exists, String hash, Map<String, String> options) throws SQLException
+    {
+        try (Statement statement = admin.createStatement()) {
+            if (exists) {
+                statement.executeUpdate("ALTER DATABASE " + quote(template) + " WITH IS_TEMPLATE false ALLOW_CONNECTIONS true");
+                statement.executeUpdate("DROP DATABASE " + quote(template) + " WITH (FORCE)");
+            }
+            statement.executeUpdate("CREATE DATABASE " + quote(template));
+
+            try (Connection connection = connectTo(template)) {
+                DatabaseTest.structureDatabase(connection);
+                if (!tablesExist(connection)) {
+                    throw new SQLException("Creating the schema in template database " + template + " failed");
+                }
+                if ("generated".equals(options.get("data"))) {
+                    LoadStats stats = new LoadStats("template");
+                    new DataGenerator(DataGenerator.Config.from(options)).generate(new CopyLoader(connection, true, stats));
+                    stats.print();
+                }
+                if ("true".equals(options.get("indexes"))) {
+                    IndexAdvisor.createIndexes(connection);
+                } else {
+                    try (Statement analyze = connection.createStatement()) {
+                        analyze.executeUpdate("ANALYZE");
+                    }
+                }
+            }
+
+            // Only marked as done once complete, an interrupted build has no hash and is rebuilt next time
+            statement.executeUpdate("COMMENT ON DATABASE " + quote(template) + " IS " + literal(hash));
+            // CREATE DATABASE ... TEMPLATE fails while anyone is connected to the template
+            statement.executeUpdate("ALTER DATABASE " + quote(template) + " WITH IS_TEMPLATE true ALLOW_CONNECTIONS false");
+        }
+    }
+
+    // The statements structureDatabase() executes, recorded with a connection that doesn't run them.
+    static List<String> schemaStatements()
+    {
+        List<String> statements = new ArrayList<>();
+        Statement recorder = (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{Statement.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "executeUpdate", "execute" -> {
+                        statements.add((String) args[0]);
+                        yield method.getReturnType() == boolean.class ? (Object) false : (Object) 0;
+                    }
+                    case "close" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "createStatement" -> recorder;
+                    case "close" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        DatabaseTest.structureDatabase(connection);
+        return statements;
+    }
+
+    private static String hash(List<String> statements, Map<String, String> options)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String sql : statements) {
+                digest.update(sql.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            for (Map.Entry<String, String> option : options.entrySet()) {
+                digest.update((option.getKey() + "=" + option.getValue()).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean tablesExist(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement()) {
+            for (TableSpec table : DataGenerator.TABLES) {
+                try (ResultSet rs = statement.executeQuery("SELECT to_regclass(" + literal(table.name()) + ") IS NOT NULL")) {
+                    if (!rs.next() || !rs.getBoolean(1)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String currentSchema(Statement statement) throws SQLException
+    {
+        try (ResultSet rs = statement.executeQuery("SELECT current_schema()")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private static Connection connectTo(String database) throws SQLException
+    {
+        Properties properties = new Properties();
+        properties.setProperty("user", DatabaseTest.USER);
+        properties.setProperty("password", DatabaseTest.PASSWORD);
+        return DriverManager.getConnection(withDatabase(DatabaseTest.URL, database), properties);
+    }
+
+    // The database of a jdbc:postgresql:database or jdbc:postgresql://host:port/database?parameters URL
+    static String databaseName(String url)
+    {
+        int end = url.indexOf('?') < 0 ? url.length() : url.indexOf('?');
+        int start = url.startsWith("jdbc:postgresql://") ? url.indexOf('/', "jdbc:postgresql://".length()) + 1 : "jdbc:postgresql:".length();
+        return url.substring(start, end);
+    }
+
+    static String withDatabase(String url, String database)
+    {
+        String name = databaseName(url);
+        int start = url.startsWith("jdbc:postgresql://") ? url.indexOf('/', "jdbc:postgresql://".length()) + 1 : "jdbc:postgresql:".length();
+        return url.substring(0, start) + database + url.substring(start + name.length());
+    }
+
+    private static String quote(String identifier)
+    {
+        return '"' + identifier.replace("\"", "\"\"") + '"';
+    }
+
+    static String literal(String value)
+    {
+        return '\'' + value.replace("'", "''") + '\'';
+    }
+}
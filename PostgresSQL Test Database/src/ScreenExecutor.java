@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Runs the independent queries one app screen needs, like the ones of ProfileScreen, in as few round trips as possible.
+// SEQUENTIAL runs them one after another on one connection, which costs one round trip per query.
+// PIPELINED sends them as a single multi-statement PreparedStatement: the driver writes every statement (parse, bind,
+// execute) before one sync and then reads all result sets, so the screen costs one round trip on one connection.
+// PARALLEL runs every query on its own pooled connection at the same time (virtual threads on JDK 21+, see
+// ClientExecutors), which also costs about one round trip, but takes as many connections as there are queries and
+// lets the server work on the queries in parallel.
+// The queries must not contain semicolons, and a failing query fails the whole screen in every mode.
+public class ScreenExecutor
+{
+    public enum Mode
+    {
+        SEQUENTIAL, PIPELINED, PARALLEL
+    }
+
+    public interface RowMapper<T>
+    {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    public record Query<T>(String sql, RowMapper<T> mapper, Object... parameters)
+    {
+    }
+
+    // The rows of every query of a screen
+    public static final class Results
+    {
+        private final Map<Query<?>, List<?>> rows = new IdentityHashMap<>();
+
+        @SuppressWarnings("unchecked")
+        public <T> List<T> get(Query<T> query)
+        {
+            return (List<T>) rows.get(query);
+        }
+    }
+
+    private final ConnectionPool pool;
+    private final Mode mode;
+    private final ExecutorService executor;
+
+    // The executor is only used in PARALLEL mode and can be null otherwise
+    public ScreenExecutor(ConnectionPool pool, Mode mode, ExecutorService executor)
+    {
+        this.pool = pool;
+        this.mode = mode;
+        this.executor = executor;
+    }
+
+    public Results execute(List<Query<?>> queries) throws SQLException
+    {
+        Results results = new Results();
+        switch (mode) {
+            case SEQUENTIAL -> {
+                try (Connection connection = pool.borrow()) {
+                    for (Query<?> query : queries) {
+                        try (PreparedStatement statement = connection.prepareStatement(query.sql())) {
+                            bind(statement, query.parameters(), 1);
+                            try (ResultSet rs = statement.executeQuery()) {
+                                results.rows.put(query, read(rs, query.mapper()));
+                            }
+                        }
+                    }
+                }
+            }
+            case PIPELINED -> {
+                StringBuilder sql = new StringBuilder();
+                for (Query<?> query : queries) {
+                    sql.append(sql.length() == 0 ? "" : ";\n").append(query.sql());
+                }
+                try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                    int index = 1;
+                    for (Query<?> query : queries) {
+                        index = bind(statement, query.parameters(), index);
+                    }
+                    statement.execute();
+                    for (Query<?> query : queries) {
+                        try (ResultSet rs = statement.getResultSet()) {
+                            results.rows.put(query, read(rs, query.mapper()));
+                        }
+                        statement.getMoreResults();
+                    }
+                }
+            }
+            case PARALLEL -> {
+                List<Future<List<?>>> futures = new ArrayList<>();
+                for (Query<?> query : queries) {
+                    futures.add(executor.submit(() -> {
+                        try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(query.sql())) {
+                            bind(statement, query.parameters(), 1);
+                            try (ResultSet rs = statement.executeQuery()) {
+                                return read(rs, query.mapper());
+                            }
+                        }
+                    }));
+                }
+                try {
+                    for (int i = 0; i < queries.size(); i++) {
+                        results.rows.put(queries.get(i), futures.get(i).get());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while loading a screen", e);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof SQLException sqlException ? sqlException : new SQLException(e.getCause());
+                } finally {
+                    for (Future<List<?>> future : futures) {
+                        future.cancel(false);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private static int bind(PreparedStatement statement, Object[] parameters, int index) throws SQLException
+    {
+        for (Object parameter : parameters) {
+            statement.setObject(index++, parameter);
+        }
+        return index;
+    }
+
+    private static <T> List<T> read(ResultSet rs, RowMapper<T> mapper) throws SQLException
+    {
+        List<T> rows = new ArrayList<>();
+        while (rs.next()) {
+            rows.add(mapper.map(rs));
+        }
+        return rows;
+    }
+
+    // Loads the ProfileScreen of random users in every mode, through a DelayProxy with "rttMillis" (default 5) of
+    // round trip time, and prints the screen latencies. Other arguments: "screens" (default 500), "poolSize" (default 8).
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        Duration roundTrip = Duration.ofMillis(Long.parseLong(options.getOrDefault("rttMillis", "5")));
+        int screens = Integer.parseInt(options.getOrDefault("screens", "500"));
+        int poolSize = Integer.parseInt(options.getOrDefault("poolSize", "8"));
+
+        ExecutorService executor = ClientExecutors.newClientExecutor();
+        try (DelayProxy proxy = new DelayProxy(DelayProxy.databaseAddress(), roundTrip);
+             ConnectionPool pool = new ConnectionPool(poolSize, proxy.route(PartyRepository.driverProperties()), 60_000)) {
+            List<String> emails = ProfileScreen.sampleEmails(pool, 1000);
+            System.out.println("Round trip time " + roundTrip.toMillis() + " ms, " + screens + " screens per mode");
+            for (Mode mode : Mode.values()) {
+                ScreenExecutor screenExecutor = new ScreenExecutor(pool, mode, executor);
+                LatencyHistogram latencies = new LatencyHistogram();
+                Random random = new Random(42);
+                // The first tenth warms up the connections and the JIT and is not measured
+                for (int i = -screens / 10; i < screens; i++) {
+                    long start = System.nanoTime();
+                    ProfileScreen.load(screenExecutor, emails.get(random.nextInt(emails.size())));
+                    if (i >= 0) {
+                        latencies.record(System.nanoTime() - start);
+                    }
+                }
+                System.out.printf("%-10s %s%n", mode, latencies.summary());
+            }
+        } catch (SQLException | IOException e) {
+            System.out.println("Exception: " + e.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
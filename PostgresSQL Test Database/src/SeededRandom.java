@@ -0,0 +1,43 @@
+// Small counter-based random number generator (SplitMix64) used by the data generator.
+// Unlike java.util.Random it can be repositioned to any (seed, stream, index) triple in O(1),
+// so every generated row can be recomputed on its own from its key. This is what allows the generator
+// to produce foreign keys without remembering parent rows and to generate any key range independently.
+public final class SeededRandom
+{
+    private long state;
+
+    public SeededRandom(long seed)
+    {
+        this.state = seed;
+    }
+
+    // Repositions the generator to the start of the sequence belonging to the given row of the given stream.
+    public SeededRandom reset(long seed, long stream, long index)
+    {
+        state = mix(seed ^ mix(stream * 0x9E3779B97F4A7C15L + index));
+        return this;
+    }
+
+    public long nextLong()
+    {
+        return mix(state += 0x9E3779B97F4A7C15L);
+    }
+
+    public int nextInt(int bound)
+    {
+        return (int) ((nextLong() >>> 33) * bound >>> 31);
+    }
+
+    // Returns a value in [0, 1)
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
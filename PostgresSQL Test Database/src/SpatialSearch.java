@@ -0,0 +1,127 @@
+import org.postgresql.geometric.PGpoint;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// "Parties near me" and map viewport searches over party_location.coordinates (x = longitude, y = latitude).
+// Both queries are answered by the GiST index on coordinates (see IndexAdvisor): the viewport search uses box containment
+// (<@) and the nearest search uses KNN ordering (<->), so the index returns the closest points first and the
+// scan stops after the limit instead of sorting every party in the radius.
+// The native POINT type measures distances in degrees, and a degree of longitude shrinks with cos(latitude), so <-> overrates
+// east-west distances. The KNN scan therefore fetches limit / cos(latitude) candidates (times a margin) inside the
+// bounding box of the radius, and the server drops those outside the great-circle radius and re-ranks the rest by it.
+// That can only miss a party when more than the fetched candidates are closer in degrees, which needs a very uneven
+// spread of parties around the position. Viewport searches can be answered by an in-memory PartyGrid instead.
+public class SpatialSearch implements AutoCloseable
+{
+    public record NearbyParty(UUID partyId, double longitude, double latitude, double distanceKm)
+    {
+    }
+
+    static final double KM_PER_DEGREE = 111.32;
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    // In degrees the radius is an ellipse covering cos(latitude) of the smallest <-> circle around it, twice that leaves room for uneven spreads
+    private static final double OVERFETCH = 2.0;
+
+    private final PreparedStatement nearest;
+    private final PreparedStatement withinBox;
+    private volatile PartyGrid grid;
+
+    public SpatialSearch(Connection connection) throws SQLException
+    {
+        // Same haversine formula as distanceKm(), coordinates[0] is the longitude and coordinates[1] the latitude
+        this.nearest = connection.prepareStatement("""
+                SELECT party_id, coordinates, distance FROM (
+                    SELECT party_id, coordinates, 2 * %s * asin(least(1, sqrt(
+                        sin(radians(coordinates[1] - ?) / 2) ^ 2
+                        + cos(radians(?)) * cos(radians(coordinates[1])) * sin(radians(coordinates[0] - ?) / 2) ^ 2))) AS distance
+                    FROM (SELECT party_id, coordinates FROM party_location
+                          WHERE coordinates <@ box(point(?, ?), point(?, ?))
+                          ORDER BY coordinates <-> point(?, ?) LIMIT ?) candidates
+                ) nearby
+                WHERE distance <= ? ORDER BY distance LIMIT ?
+                """.formatted(EARTH_RADIUS_KM));
+        this.withinBox = connection.prepareStatement("""
+                SELECT party_id, coordinates FROM party_location
+                WHERE coordinates <@ box(point(?, ?), point(?, ?)) LIMIT ?
+                """);
+    }
+
+    // Uses the given grid for viewport searches from now on, null goes back to the database.
+    public void useGrid(PartyGrid grid)
+    {
+        this.grid = grid;
+    }
+
+    // Up to limit parties within radiusKm of the given position, closest first.
+    public List<NearbyParty> nearest(double longitude, double latitude, double radiusKm, int limit) throws SQLException
+    {
+        double cos = Math.max(0.01, Math.cos(Math.toRadians(latitude)));
+        double dLat = radiusKm / KM_PER_DEGREE;
+        double dLon = radiusKm / (KM_PER_DEGREE * cos);
+        nearest.setDouble(1, latitude);
+        nearest.setDouble(2, latitude);
+        nearest.setDouble(3, longitude);
+        nearest.setDouble(4, longitude - dLon);
+        nearest.setDouble(5, latitude - dLat);
+        nearest.setDouble(6, longitude + dLon);
+        nearest.setDouble(7, latitude + dLat);
+        nearest.setDouble(8, longitude);
+        nearest.setDouble(9, latitude);
+        nearest.setInt(10, (int) Math.min(Integer.MAX_VALUE, Math.ceil(limit * OVERFETCH / cos)));
+        nearest.setDouble(11, radiusKm);
+        nearest.setInt(12, limit);
+        List<NearbyParty> parties = new ArrayList<>();
+        try (ResultSet rs = nearest.executeQuery()) {
+            while (rs.next()) {
+                PGpoint point = (PGpoint) rs.getObject(2);
+                parties.add(new NearbyParty(rs.getObject(1, UUID.class), point.x, point.y, rs.getDouble(3)));
+            }
+        }
+        return parties;
+    }
+
+    // Up to limit parties inside the map viewport, in no particular order.
+    public List<NearbyParty> withinBox(double minLongitude, double minLatitude, double maxLongitude, double maxLatitude, int limit) throws SQLException
+    {
+        PartyGrid cached = grid;
+        if (cached != null) {
+            return cached.withinBox(minLongitude, minLatitude, maxLongitude, maxLatitude, limit);
+        }
+        withinBox.setDouble(1, minLongitude);
+        withinBox.setDouble(2, minLatitude);
+        withinBox.setDouble(3, maxLongitude);
+        withinBox.setDouble(4, maxLatitude);
+        withinBox.setInt(5, limit);
+        List<NearbyParty> parties = new ArrayList<>();
+        try (ResultSet rs = withinBox.executeQuery()) {
+            while (rs.next()) {
+                PGpoint point = (PGpoint) rs.getObject(2);
+                parties.add(new NearbyParty(rs.getObject(1, UUID.class), point.x, point.y, 0));
+            }
+        }
+        return parties;
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        nearest.close();
+        withinBox.close();
+    }
+
+    // Great-circle distance using the haversine formula.
+    static double distanceKm(double longitude1, double latitude1, double longitude2, double latitude2)
+    {
+        double dLat = Math.toRadians(latitude2 - latitude1);
+        double dLon = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(latitude1)) * Math.cos(Math.toRadians(latitude2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,11 @@
+// Describes one Evenue table as it is filled by the DataGenerator: its name, the generated columns in row order
+// and the SQL expression each value is bound to when inserted through a PreparedStatement.
+// Expressions are a plain "?" or a cast like "?::PARTY_TYPE". COPY stores the values as they are, so no expression
+// may compute a value on the server: what the generator produces is exactly what ends up in the table.
+public record TableSpec(String name, String[] columns, String[] expressions)
+{
+    public String insertSql()
+    {
+        return "INSERT INTO " + name + " (" + String.join(", ", columns) + ") VALUES (" + String.join(", ", expressions) + ")";
+    }
+}
@@ -0,0 +1,110 @@
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// The parties each user has hosted and attended, stored as one user_activity row per user, activity and party.
+// Recording an activity inserts one small row into the primary key index and leaves everything else alone, while
+// appending to a UUID[] column rewrites the user's whole row, and its whole TOASTed array once it has grown past ~2 kB,
+// so every append to a user with thousands of parties copies thousands of ids. Recording the same activity twice is a no-op.
+// Lookups are range scans or single probes of the primary key (email, activity, party_id), usually as index only scans.
+// Not thread safe: like PartyRepository it keeps its prepared statements and belongs to one connection.
+public class UserActivity implements AutoCloseable
+{
+    private static final String INSERT = "INSERT INTO user_activity (email, activity, party_id) VALUES (?, ?::ACTIVITY_TYPE, ?) ON CONFLICT DO NOTHING";
+
+    private final Connection connection;
+    private final PreparedStatement insert;
+    private final PreparedStatement insertAll;
+    private final PreparedStatement parties;
+    private final PreparedStatement exists;
+
+    public UserActivity(Connection connection) throws SQLException
+    {
+        this.connection = connection;
+        this.insert = connection.prepareStatement(INSERT);
+        this.insertAll = connection.prepareStatement("INSERT INTO user_activity (email, activity, party_id) "
+                + "SELECT ?, ?::ACTIVITY_TYPE, unnest(?::uuid[]) ON CONFLICT DO NOTHING");
+        this.parties = connection.prepareStatement("SELECT party_id FROM user_activity WHERE email = ? AND activity = ?::ACTIVITY_TYPE ORDER BY party_id");
+        this.exists = connection.prepareStatement("SELECT EXISTS (SELECT 1 FROM user_activity WHERE email = ? AND activity = 'attended' AND party_id = ?)");
+    }
+
+    // Returns false if the attendance was already recorded.
+    public boolean recordAttendance(String email, UUID partyId) throws SQLException
+    {
+        return record(email, "attended", partyId);
+    }
+
+    public boolean recordHosted(String email, UUID partyId) throws SQLException
+    {
+        return record(email, "hosted", partyId);
+    }
+
+    // Records many attendances of one user with a single statement and round trip, returns the number of new ones.
+    public int recordAttendances(String email, Collection<UUID> partyIds) throws SQLException
+    {
+        Array ids = connection.createArrayOf("uuid", partyIds.toArray());
+        try {
+            insertAll.setString(1, email);
+            insertAll.setString(2, "attended");
+            insertAll.setArray(3, ids);
+            return insertAll.executeUpdate();
+        } finally {
+            ids.free();
+        }
+    }
+
+    public List<UUID> partiesHosted(String email) throws SQLException
+    {
+        return parties(email, "hosted");
+    }
+
+    public List<UUID> partiesAttended(String email) throws SQLException
+    {
+        return parties(email, "attended");
+    }
+
+    public boolean hasAttended(String email, UUID partyId) throws SQLException
+    {
+        exists.setString(1, email);
+        exists.setObject(2, partyId);
+        try (ResultSet rs = exists.executeQuery()) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException
+    {
+        insert.close();
+        insertAll.close();
+        parties.close();
+        exists.close();
+    }
+
+    private boolean record(String email, String activity, UUID partyId) throws SQLException
+    {
+        insert.setString(1, email);
+        insert.setString(2, activity);
+        insert.setObject(3, partyId);
+        return insert.executeUpdate() == 1;
+    }
+
+    private List<UUID> parties(String email, String activity) throws SQLException
+    {
+        List<UUID> ids = new ArrayList<>();
+        parties.setString(1, email);
+        parties.setString(2, activity);
+        try (ResultSet rs = parties.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getObject(1, UUID.class));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,273 @@
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Registration and bulk import of users with an EmailFilter in front of user_info, so an email that is certainly new
+// costs no lookup. Only emails the filter might contain are looked up in the database (one = ANY query per import
+// batch). The filter is built from user_info by loadFilter() and every email written here is added to it.
+// Users registered by other processes after loadFilter() are not in the filter. Writes stay correct, the filter only
+// saves lookups there: register() inserts with ON CONFLICT DO NOTHING, and an import batch whose COPY hits an existing
+// email is inserted again row by row with ON CONFLICT DO NOTHING. isTaken() has no such fallback and misses those users,
+// so it is only a hint. Without a filter every email is looked up, like before.
+public class UserRegistry
+{
+    // Column order of DataGenerator.USER_INFO
+    public record User(String email, String firstName, String lastName, short age, String country)
+    {
+        Object[] row()
+        {
+            return new Object[]{email, firstName, lastName, age, country};
+        }
+    }
+
+    public record ImportResult(long inserted, long duplicates, long lookedUp)
+    {
+    }
+
+    private static final String EXISTS_SQL = "SELECT EXISTS (SELECT 1 FROM user_info WHERE email = ?)";
+    private static final String EXISTING_SQL = "SELECT email FROM user_info WHERE email = ANY (?)";
+    private static final String INSERT_SQL = "INSERT INTO user_info (email, first_name, last_name, age, country) VALUES (?, ?, ?, ?, ?) "
+            + "ON CONFLICT (email) DO NOTHING";
+
+    private final ConnectionPool pool;
+    private final EmailFilter filter;
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong skippedLookups = new AtomicLong();
+
+    // filter may be null, then every email is looked up
+    public UserRegistry(ConnectionPool pool, EmailFilter filter)
+    {
+        this.pool = pool;
+        this.filter = filter;
+    }
+
+    // Streams all emails of user_info into a new filter sized for the current number of users
+    public static EmailFilter loadFilter(Connection connection, double falsePositiveRate) throws SQLException
+    {
+        long users;
+        try (PreparedStatement statement = connection.prepareStatement("SELECT reltuples::bigint FROM pg_class WHERE oid = 'user_info'::regclass");
+             ResultSet rs = statement.executeQuery()) {
+            rs.next();
+            // reltuples is -1 before the first ANALYZE, the filter grows if the estimate is too low
+            users = Math.max(rs.getLong(1), 100_000);
+        }
+        EmailFilter filter = new EmailFilter(users, falsePositiveRate);
+        try (PreparedStatement statement = connection.prepareStatement("SELECT email FROM user_info")) {
+            ResultStreamer.forEach(connection, statement, 50_000, row -> filter.add(row.getString(1)));
+        }
+        return filter;
+    }
+
+    // True if a user with the email exists, for the availability check while the user types. Only a hint: an email
+    // registered by another process since the filter was loaded is reported as free, register() is what decides.
+    public boolean isTaken(String email) throws SQLException
+    {
+        if (filter != null && !filter.mightContain(email)) {
+            skippedLookups.incrementAndGet();
+            return false;
+        }
+        lookups.incrementAndGet();
+        try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(EXISTS_SQL)) {
+            statement.setString(1, email);
+            try (ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                return rs.getBoolean(1);
+            }
+        }
+    }
+
+    // Returns false if the email is taken. The insert decides, so there is no lookup at all.
+    public boolean register(User user) throws SQLException
+    {
+        try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+            bind(statement, user);
+            boolean inserted = statement.executeUpdate() == 1;
+            if (inserted && filter != null) {
+                filter.add(user.email());
+            }
+            return inserted;
+        }
+    }
+
+    // Imports one batch of users in one transaction, users with a taken email (or an email that comes twice) are skipped.
+    // The new users are written with binary COPY.
+    public ImportResult importUsers(List<User> users) throws SQLException
+    {
+        List<User> accepted = new ArrayList<>(users.size());
+        Set<String> maybeTaken = new HashSet<>();
+        Set<String> batch = new HashSet<>();
+        for (User user : users) {
+            if (filter != null && !filter.mightContain(user.email()) && batch.add(user.email())) {
+                accepted.add(user);
+            } else {
+                maybeTaken.add(user.email());
+            }
+        }
+        int lookedUp = users.size() - accepted.size();
+        skippedLookups.addAndGet(accepted.size());
+        lookups.addAndGet(lookedUp);
+
+        try (Connection connection = pool.borrow()) {
+            Set<String> taken = new HashSet<>();
+            if (!maybeTaken.isEmpty()) {
+                Array emails = connection.createArrayOf("varchar", maybeTaken.toArray());
+                try (PreparedStatement statement = connection.prepareStatement(EXISTING_SQL)) {
+                    statement.setArray(1, emails);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) {
+                            taken.add(rs.getString(1));
+                        }
+                    }
+                }
+                // In the order of the batch, the first of several users with the same new email wins
+                for (User user : users) {
+                    if (maybeTaken.contains(user.email()) && !taken.contains(user.email()) && batch.add(user.email())) {
+                        accepted.add(user);
+                    }
+                }
+            }
+
+            long inserted = write(connection, accepted);
+            if (filter != null) {
+                for (User user : accepted) {
+                    filter.add(user.email());
+                }
+            }
+            return new ImportResult(inserted, users.size() - inserted, lookedUp);
+        }
+    }
+
+    public long lookups()
+    {
+        return lookups.get();
+    }
+
+    public long skippedLookups()
+    {
+        return skippedLookups.get();
+    }
+
+    // COPY in one transaction, or row by row with ON CONFLICT DO NOTHING if another writer was faster with an email
+    private static long write(Connection connection, List<User> users) throws SQLException
+    {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try {
+                CopyLoader copy = new CopyLoader(connection, true, new LoadStats("import"));
+                copy.begin(DataGenerator.USER_INFO);
+                for (User user : users) {
+                    copy.row(user.row());
+                }
+                copy.end();
+                connection.commit();
+                return users.size();
+            } catch (SQLException e) {
+                connection.rollback();
+                // unique_violation, anything else is a real error
+                if (!"23505".equals(e.getSQLState())) {
+                    throw e;
+                }
+            }
+            long inserted = 0;
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                for (User user : users) {
+                    bind(statement, user);
+                    statement.addBatch();
+                }
+                for (int count : statement.executeBatch()) {
+                    inserted += count;
+                }
+            }
+            connection.commit();
+            return inserted;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static void bind(PreparedStatement statement, User user) throws SQLException
+    {
+        statement.setString(1, user.email());
+        statement.setString(2, user.firstName());
+        statement.setString(3, user.lastName());
+        statement.setShort(4, user.age());
+        statement.setString(5, user.country());
+    }
+
+    // Imports "users" (default 1000000) generated users after the existing ones, with "duplicates" (default 0.05) of them
+    // replaced by users that already exist, once with the filter and once (after deleting them again) with a lookup of every
+    // email, in batches of "batchSize" (default 10000). Prints the filter's build time, memory and false positive rate
+    // and the import throughput. Needs "first" (default: the number of users in user_info) to match the user keys of
+    // the data set, so generated emails don't collide with the existing users. Argument "rate" (default 0.01).
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        int users = Integer.parseInt(options.getOrDefault("users", "1000000"));
+        double duplicates = Double.parseDouble(options.getOrDefault("duplicates", "0.05"));
+        int batchSize = Integer.parseInt(options.getOrDefault("batchSize", "10000"));
+        double rate = Double.parseDouble(options.getOrDefault("rate", "0.01"));
+        DataGenerator generator = new DataGenerator(DataGenerator.Config.from(options));
+
+        try (ConnectionPool pool = new ConnectionPool(1, PartyRepository.driverProperties(), 60_000)) {
+            int first;
+            try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement("SELECT count(*) FROM user_info");
+                 ResultSet rs = statement.executeQuery()) {
+                rs.next();
+                first = Integer.parseInt(options.getOrDefault("first", Long.toString(rs.getLong(1))));
+            }
+
+            long start = System.nanoTime();
+            EmailFilter filter;
+            try (Connection connection = pool.borrow()) {
+                filter = loadFilter(connection, rate);
+            }
+            System.out.printf("Loaded %d emails into the filter in %d ms, %.1f MB in %d filter(s), expected false positive rate %.3f%%%n",
+                    filter.size(), (System.nanoTime() - start) / 1_000_000, filter.bytes() / 1e6, filter.stages(), 100 * filter.expectedFalsePositiveRate());
+
+            // New users, some of them replaced by existing ones
+            Random random = new Random(42);
+            List<User> imported = new ArrayList<>(users);
+            for (int i = 0; i < users; i++) {
+                int key = first > 0 && random.nextDouble() < duplicates ? random.nextInt(first) : first + i;
+                imported.add(new User(generator.email(key), "Import", "User" + i, (short) (18 + random.nextInt(50)), "DE"));
+            }
+
+            for (EmailFilter mode : new EmailFilter[]{filter, null}) {
+                UserRegistry registry = new UserRegistry(pool, mode);
+                long inserted = 0;
+                long skipped = 0;
+                start = System.nanoTime();
+                for (int from = 0; from < users; from += batchSize) {
+                    ImportResult result = registry.importUsers(imported.subList(from, Math.min(users, from + batchSize)));
+                    inserted += result.inserted();
+                    skipped += result.duplicates();
+                }
+                long nanos = System.nanoTime() - start;
+                System.out.printf("%-9s %d inserted, %d duplicates skipped, %d lookups, %d lookups saved, %.0f users/s%n",
+                        mode == null ? "lookups" : "filter", inserted, skipped, registry.lookups(), registry.skippedLookups(), users * 1e9 / nanos);
+                if (mode != null) {
+                    System.out.printf("          %.3f%% of the new emails were false positives%n",
+                            100.0 * (registry.lookups() - skipped) / Math.max(1, users - skipped));
+                }
+                try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement("DELETE FROM user_info WHERE first_name = 'Import'")) {
+                    statement.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+}
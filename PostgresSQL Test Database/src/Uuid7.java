@@ -0,0 +1,54 @@
+import java.security.SecureRandom;
+import java.util.UUID;
+
+// Time ordered version 7 UUIDs (RFC 9562): 48 bit Unix millisecond timestamp, 12 bits that count up within the same
+// millisecond, and 62 random bits. New ids sort after older ones, so B-tree inserts go to the rightmost leaf page
+// instead of a random one, which keeps the index of an append-only table compact and its hot pages in memory.
+public final class Uuid7
+{
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static long lastMillis;
+    private static int sequence;
+
+    private Uuid7()
+    {
+    }
+
+    // A new id for the current time, strictly increasing within this JVM even if many are created per millisecond.
+    public static UUID next()
+    {
+        long millis;
+        int counter;
+        synchronized (Uuid7.class) {
+            millis = Math.max(System.currentTimeMillis(), lastMillis);
+            if (millis == lastMillis) {
+                sequence++;
+                if (sequence > 0xFFF) {
+                    // Counter exhausted, borrow the next millisecond
+                    millis++;
+                    sequence = 0;
+                }
+            } else {
+                sequence = 0;
+            }
+            lastMillis = millis;
+            counter = sequence;
+        }
+        return of(millis, counter, RANDOM.nextLong());
+    }
+
+    // An id for the given time with the given random bits, e.g. for reproducible generated data.
+    public static UUID of(long unixMillis, int counter, long random)
+    {
+        long most = (unixMillis << 16) | 0x7000L | (counter & 0xFFF);
+        long least = (random & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(most, least);
+    }
+
+    // The creation time in Unix milliseconds of a version 7 UUID
+    public static long millis(UUID uuid)
+    {
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+}
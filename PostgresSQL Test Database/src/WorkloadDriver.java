@@ -0,0 +1,131 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs the ten queryDatabase() queries as a concurrent, app-like workload against an already loaded database.
+// Every simulated client picks a query according to the configured mix, binds random but existing parameter values
+// (see QueryParameters), borrows a connection from a bounded pool, runs the query and reads the whole result.
+// Latency is measured per query from the moment a client wants a connection until the last row is read,
+// so waiting for the pool is part of it, just like in the app.
+// Connections use the prepared statement settings of PartyRepository, so repeated queries skip parsing and planning.
+// Arguments: "clients" (default 1000), "duration" in seconds (default 30), "poolSize" (default 2 * cores),
+// "mix" as comma separated query:weight pairs (default "1:1,2:1,...,10:1") and any "pg.<name>" driver property.
+public class WorkloadDriver
+{
+    private final int clients;
+    private final long durationNanos;
+    private final int poolSize;
+    private final EvenueQuery[] queries;
+    private final int[] cumulativeWeights;
+    private final Map<EvenueQuery, LatencyHistogram> latencies = new EnumMap<>(EvenueQuery.class);
+    private final Map<EvenueQuery, AtomicLong> errors = new EnumMap<>(EvenueQuery.class);
+
+    public WorkloadDriver(Map<String, String> options)
+    {
+        this.clients = Integer.parseInt(options.getOrDefault("clients", "1000"));
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration", "30")));
+        this.poolSize = Integer.parseInt(options.getOrDefault("poolSize", String.valueOf(2 * Runtime.getRuntime().availableProcessors())));
+
+        String[] mix = options.getOrDefault("mix", "1:1,2:1,3:1,4:1,5:1,6:1,7:1,8:1,9:1,10:1").split(",");
+        this.queries = new EvenueQuery[mix.length];
+        this.cumulativeWeights = new int[mix.length];
+        int total = 0;
+        for (int i = 0; i < mix.length; i++) {
+            String[] entry = mix[i].split(":");
+            queries[i] = EvenueQuery.byNumber(Integer.parseInt(entry[0].trim()));
+            total += entry.length > 1 ? Integer.parseInt(entry[1].trim()) : 1;
+            cumulativeWeights[i] = total;
+            latencies.put(queries[i], new LatencyHistogram());
+            errors.put(queries[i], new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        Map<String, String> options = DatabaseTest.parseOptions(args);
+        try {
+            new WorkloadDriver(options).run(options);
+        } catch (SQLException e) {
+            System.out.println("Exception: " + e.getMessage());
+        }
+    }
+
+    public void run(Map<String, String> options) throws SQLException
+    {
+        QueryParameters parameters;
+        try (Connection connection = DatabaseTest.connect(DatabaseTest.driverProperties(options))) {
+            parameters = QueryParameters.load(connection, 10_000);
+        }
+
+        System.out.println("Running " + clients + " clients (" + (ClientExecutors.virtualThreadsAvailable() ? "virtual" : "platform")
+                + " threads) over " + poolSize + " connections for " + TimeUnit.NANOSECONDS.toSeconds(durationNanos) + " s");
+        Properties properties = PartyRepository.driverProperties();
+        properties.putAll(DatabaseTest.driverProperties(options));
+        try (ConnectionPool pool = new ConnectionPool(poolSize, properties, durationNanos / 1_000_000 + 60_000)) {
+            ExecutorService executor = ClientExecutors.newClientExecutor();
+            long deadline = System.nanoTime() + durationNanos;
+            for (int i = 0; i < clients; i++) {
+                executor.submit(() -> client(pool, parameters, deadline));
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(durationNanos + TimeUnit.MINUTES.toNanos(5), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        report();
+    }
+
+    private void client(ConnectionPool pool, QueryParameters parameters, long deadline)
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            EvenueQuery query = pick(random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]));
+            long start = System.nanoTime();
+            try (Connection connection = pool.borrow();
+                 PreparedStatement statement = connection.prepareStatement(query.sql)) {
+                parameters.bind(statement, query, random);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        // Reads the whole result, like the app would
+                    }
+                }
+                latencies.get(query).record(System.nanoTime() - start);
+            } catch (SQLException e) {
+                errors.get(query).incrementAndGet();
+            }
+        }
+    }
+
+    private EvenueQuery pick(int weight)
+    {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (weight < cumulativeWeights[i]) {
+                return queries[i];
+            }
+        }
+        return queries[queries.length - 1];
+    }
+
+    private void report()
+    {
+        double seconds = durationNanos / 1e9;
+        long total = 0;
+        for (EvenueQuery query : queries) {
+            LatencyHistogram histogram = latencies.get(query);
+            total += histogram.count();
+            System.out.printf("Query %2d  %10d ops  %10.1f ops/s  %6d errors  %s%n",
+                    query.number, histogram.count(), histogram.count() / seconds, errors.get(query).get(), histogram.summary());
+        }
+        System.out.printf("Total     %10d ops  %10.1f ops/s%n", total, total / seconds);
+    }
+}
@@ -0,0 +1,74 @@
+// Samples ranks 1..n following a Zipf distribution with the given exponent, i.e. P(k) ~ 1 / k^exponent.
+// Uses rejection-inversion sampling (W. Hörmann, G. Derflinger), so it needs O(1) memory and time per sample
+// regardless of n. That matters because n can be the number of users or parties, which is in the millions.
+// An exponent of 0 degenerates to a uniform distribution.
+public final class ZipfSampler
+{
+    private final int n;
+    private final double exponent;
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double s;
+
+    public ZipfSampler(int n, double exponent)
+    {
+        if (n < 1 || exponent < 0) {
+            throw new IllegalArgumentException("Zipf needs n >= 1 and exponent >= 0, got n=" + n + ", exponent=" + exponent);
+        }
+        this.n = n;
+        this.exponent = exponent;
+        this.hIntegralX1 = hIntegral(1.5) - 1;
+        this.hIntegralN = hIntegral(n + 0.5);
+        this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    // Returns a rank between 1 and n, rank 1 being the most likely.
+    public int sample(SeededRandom random)
+    {
+        while (true) {
+            double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            double x = hIntegralInverse(u);
+            int k = (int) (x + 0.5);
+            if (k < 1) {
+                k = 1;
+            } else if (k > n) {
+                k = n;
+            }
+            if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                return k;
+            }
+        }
+    }
+
+    private double hIntegral(double x)
+    {
+        double logX = Math.log(x);
+        return helper2((1 - exponent) * logX) * logX;
+    }
+
+    private double h(double x)
+    {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(double x)
+    {
+        double t = x * (1 - exponent);
+        if (t < -1) {
+            t = -1;
+        }
+        return Math.exp(helper1(t) * x);
+    }
+
+    // log(1 + x) / x, numerically stable around 0
+    private static double helper1(double x)
+    {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    // (exp(x) - 1) / x, numerically stable around 0
+    private static double helper2(double x)
+    {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+}